@@ -0,0 +1,100 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the OpenCSV engine with the byte level tokenizer. Scores are per row (rows/sec in throughput mode);
+ * run with {@code -prof gc} and read {@code gc.alloc.rate.norm} for the bytes allocated per row.
+ *
+ * <pre>java -jar build/libs/*-jmh.jar CsvEngineBenchmark -prof gc</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvEngineBenchmark {
+    private static final int ROWS = 10_000;
+    private static final int COLUMNS = 40;
+
+    @Param({"OPENCSV", "UTF8_BYTES"})
+    public String engineName;
+
+    private CsvEngine engine;
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        engine = "OPENCSV".equals(engineName) ? CsvEngine.OPENCSV : CsvEngine.UTF8_BYTES;
+
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder();
+        for (int column = 0; column < COLUMNS; column++) {
+            csv.append(column == 0 ? "" : ",").append("column_").append(column);
+        }
+        csv.append("\r\n");
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                if (column > 0) csv.append(',');
+                switch (column % 4) {
+                    case 0:
+                        csv.append(random.nextInt(1_000_000));
+                        break;
+                    case 1:
+                        csv.append("\"Account, ").append(random.nextInt(1000)).append(" Inc\"");
+                        break;
+                    case 2:
+                        csv.append("USD");
+                        break;
+                    default:
+                        csv.append(random.nextDouble() * 1000);
+                }
+            }
+            csv.append("\r\n");
+        }
+        content = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readAllFields(Blackhole blackhole) throws IOException {
+        try (CsvCursor cursor = engine.open(new ByteArrayInputStream(content))) {
+            while (cursor.next()) {
+                for (int i = 0; i < cursor.getFieldCount(); i++) {
+                    blackhole.consume(cursor.getField(i));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readThreeFields(Blackhole blackhole) throws IOException {
+        try (CsvCursor cursor = engine.open(new ByteArrayInputStream(content))) {
+            while (cursor.next()) {
+                blackhole.consume(cursor.getField(0));
+                blackhole.consume(cursor.getField(1));
+                blackhole.consume(cursor.getField(COLUMNS - 1));
+            }
+        }
+    }
+}
@@ -1,26 +1,85 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.csv.CsvBinder;
+import com.amazon.aws.monetization.filemgmt.csv.CsvCheckpoint;
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.csv.CsvCursor;
+import com.amazon.aws.monetization.filemgmt.csv.CsvEngine;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordIterator;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordMapper;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRowMapper;
+import com.amazon.aws.monetization.filemgmt.csv.ResumableCsvIterator;
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+import com.amazon.aws.monetization.filemgmt.utils.S3ObjectDiskCache;
+import com.amazon.aws.monetization.filemgmt.utils.S3Util;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
-import com.opencsv.CSVParser;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReaderHeaderAware;
-import com.opencsv.CSVReaderHeaderAwareBuilder;
-import com.opencsv.exceptions.CsvValidationException;
+import com.amazonaws.util.IOUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CsvReader {
+    public static final int DEFAULT_RESUME_RETRIES = 3;
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private AmazonS3 s3Client;
+    private final CsvEngine engine;
+    private final int dictionarySize;
+    private final S3ObjectDiskCache objectCache;
 
     public CsvReader(AmazonS3 s3Client) {
+        this(s3Client, CsvEngine.OPENCSV);
+    }
+
+    /**
+     * @param engine the tokenizer engine, e.g. {@link CsvEngine#UTF8_BYTES} to tokenize the raw bytes without
+     *               building strings for fields that are never read
+     */
+    public CsvReader(AmazonS3 s3Client, CsvEngine engine) {
+        this(s3Client, engine, 0);
+    }
+
+    /**
+     * @param engine the tokenizer engine
+     * @param dictionarySize when positive, repeated values of each column share one {@code String} instance per
+     *                       file read, until the column has more than this many distinct values, see
+     *                       {@link ColumnDictionary}. With {@link CsvEngine#UTF8_BYTES} repeated values are not
+     *                       even decoded.
+     */
+    public CsvReader(AmazonS3 s3Client, CsvEngine engine, int dictionarySize) {
+        this(s3Client, engine, dictionarySize, null);
+    }
+
+    /**
+     * @param objectCache serves the whole-file reads from a local disk cache, revalidated against the object's ETag,
+     *                    or null to download the file on every read. Checkpointed and ranged reads always go to S3.
+     */
+    public CsvReader(AmazonS3 s3Client, CsvEngine engine, int dictionarySize, S3ObjectDiskCache objectCache) {
         this.s3Client = s3Client;
+        this.engine = engine;
+        this.dictionarySize = dictionarySize;
+        this.objectCache = objectCache;
     }
 
     /**
@@ -31,52 +90,317 @@ public class CsvReader {
      */
     public List<Map<String, String>> getCsvRecordsFromS3(String bucket, String key, String expectedBucketOwner) {
         final List<Map<String, String>> records = new ArrayList<>();
-        try (CSVReaderHeaderAware reader = getCsvReader(bucket, key, expectedBucketOwner)) {
-            Map<String, String> values;
-
-            while ((values = reader.readMap()) != null) {
-                boolean isEmptyRow = values.values().stream().allMatch(s -> s == null || s.trim().isEmpty());
-                if (isEmptyRow) continue;
-
-                records.add(values);
-            }
+        try (Stream<IndexedRow> rows = streamCsvRowsFromS3(bucket, key, expectedBucketOwner, null)) {
+            rows.forEach(row -> records.add(row.toMap()));
             return records;
         }
-        catch (IOException e) {
+        catch (UncheckedIOException e) {
             String errorMessage = String.format("I/O exception occurred in getCsvRecordsFromS3 for bucket %s and key %s", bucket, key);
-            throw new RuntimeException(errorMessage, e);
-        } catch (CsvValidationException e) {
-            String errorMessage =
-                    String.format("Csv validation exception occurred in getCsvRecordsFromS3 for bucket %s and key %s", bucket, key);
-            throw new RuntimeException(errorMessage, e);
+            throw new RuntimeException(errorMessage, e.getCause());
         }
     }
 
     /**
-     * Builds CSV reader for the given S3 object.
+     * Pulls only the given columns of a csv file from an S3 bucket. The column names are resolved to indexes once
+     * from the header, and each map holds just the projected columns, so heap use scales with the projected width
+     * rather than the full file width.
      * @param bucket
      * @param key
-     * @return a csv reader
+     * @param columns the column names to keep
+     * @return a list of maps containing the projected columns from the csv file
      */
-    private CSVReaderHeaderAware getCsvReader(String bucket, String key, String expectedBucketOwner) {
-        S3Object s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
-        CSVParser csvParser = new CSVParserBuilder()
-                .withIgnoreLeadingWhiteSpace(true)
-                .build();
-        InputStreamReader inputReader = new InputStreamReader(s3Object.getObjectContent(), StandardCharsets.UTF_8);
+    public List<Map<String, String>> getCsvRecordsFromS3(String bucket,
+                                                         String key,
+                                                         String expectedBucketOwner,
+                                                         Collection<String> columns) {
+        return getCsvRecordsFromS3(bucket, key, expectedBucketOwner, columns, null);
+    }
+
+    /**
+     * Pulls the records of a csv file from an S3 bucket that match a filter. The filter is checked against the
+     * raw fields of each record, so rejected records are never turned into maps.
+     * @param bucket
+     * @param key
+     * @param columns the column names to keep, or null to keep every column
+     * @param rowFilter the filter records must match, or null to keep every record
+     * @return a list of maps containing the matching records from the csv file
+     */
+    public List<Map<String, String>> getCsvRecordsFromS3(String bucket,
+                                                         String key,
+                                                         String expectedBucketOwner,
+                                                         Collection<String> columns,
+                                                         RowFilter rowFilter) {
+        try (Stream<Map<String, String>> records =
+                     streamCsvRecordsFromS3(bucket, key, expectedBucketOwner, columns, rowFilter)) {
+            return records.collect(Collectors.toList());
+        }
+    }
 
-        return (CSVReaderHeaderAware) new CSVReaderHeaderAwareBuilder(inputReader)
-                .withCSVParser(csvParser)
-                .build();
+    /**
+     * Lazily streams data in a csv file from an S3 bucket, one map per row keyed by column name.
+     * Rows are parsed only as the stream is consumed and empty rows are dropped as they arrive, so memory stays
+     * flat regardless of the object size. The S3 object stays open until the stream is closed, so callers should
+     * consume it in a try-with-resources block.
+     * @param bucket
+     * @param key
+     * @return a stream of maps containing data from the csv file
+     */
+    public Stream<Map<String, String>> streamCsvRecordsFromS3(String bucket, String key, String expectedBucketOwner) {
+        return streamCsvRecordsFromS3(bucket, key, expectedBucketOwner, null);
     }
 
-    private S3Object getObjectFromS3(String bucket, String key, String expectedBucketOwner) {
-        GetObjectRequest request = new GetObjectRequest(bucket, key);
+    /**
+     * Lazily streams the given columns of a csv file from an S3 bucket, see
+     * {@link #streamCsvRecordsFromS3(String, String, String)}.
+     * @param bucket
+     * @param key
+     * @param columns the column names to keep, or null to keep every column
+     * @return a stream of maps containing the projected columns from the csv file
+     */
+    public Stream<Map<String, String>> streamCsvRecordsFromS3(String bucket,
+                                                              String key,
+                                                              String expectedBucketOwner,
+                                                              Collection<String> columns) {
+        return streamCsvRecordsFromS3(bucket, key, expectedBucketOwner, columns, null);
+    }
+
+    /**
+     * Lazily streams the records of a csv file from an S3 bucket that match a filter, see
+     * {@link #getCsvRecordsFromS3(String, String, String, Collection, RowFilter)}.
+     * @param bucket
+     * @param key
+     * @param columns the column names to keep, or null to keep every column
+     * @param rowFilter the filter records must match, or null to keep every record
+     * @return a stream of maps containing the matching records from the csv file
+     */
+    public Stream<Map<String, String>> streamCsvRecordsFromS3(String bucket,
+                                                              String key,
+                                                              String expectedBucketOwner,
+                                                              Collection<String> columns,
+                                                              RowFilter rowFilter) {
+        return streamCsvRowsFromS3(bucket, key, expectedBucketOwner, columns, rowFilter).map(IndexedRow::toMap);
+    }
+
+    /**
+     * Pulls data in a csv file from an S3 bucket as compact rows that share a single header dictionary,
+     * which takes a fraction of the heap of one map per row. Use {@link IndexedRow#asMap()} for a map view.
+     * @param bucket
+     * @param key
+     * @return a list of rows containing data from the csv file
+     */
+    public List<IndexedRow> getCsvRowsFromS3(String bucket, String key, String expectedBucketOwner) {
+        try (Stream<IndexedRow> rows = streamCsvRowsFromS3(bucket, key, expectedBucketOwner, null)) {
+            return rows.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Lazily streams a csv file from an S3 bucket as compact rows that share a single header dictionary.
+     * The S3 object stays open until the stream is closed.
+     * @param bucket
+     * @param key
+     * @param columns the column names to keep, or null to keep every column
+     * @return a stream of rows containing data from the csv file
+     */
+    public Stream<IndexedRow> streamCsvRowsFromS3(String bucket,
+                                                  String key,
+                                                  String expectedBucketOwner,
+                                                  Collection<String> columns) {
+        return streamCsvRowsFromS3(bucket, key, expectedBucketOwner, columns, null);
+    }
+
+    /**
+     * Lazily streams the records of a csv file from an S3 bucket that match a filter as compact rows.
+     * @param bucket
+     * @param key
+     * @param columns the column names to keep, or null to keep every column
+     * @param rowFilter the filter records must match, or null to keep every record
+     * @return a stream of rows containing the matching records from the csv file
+     */
+    public Stream<IndexedRow> streamCsvRowsFromS3(String bucket,
+                                                  String key,
+                                                  String expectedBucketOwner,
+                                                  Collection<String> columns,
+                                                  RowFilter rowFilter) {
+        return streamCsvFromS3(bucket, key, expectedBucketOwner,
+                header -> new CsvRowMapper(header, columns, newDictionary()), rowFilter);
+    }
+
+    /**
+     * Pulls data in a csv file from an S3 bucket and binds each row to a new instance of the given class, see
+     * {@link CsvBinder} for the supported field types.
+     * @param bucket
+     * @param key
+     * @param type a record, or a class with a no-arg constructor, with {@link com.amazon.aws.monetization.filemgmt.csv.CsvColumn} fields
+     * @return a list of objects containing data from the csv file
+     */
+    public <T> List<T> getCsvObjectsFromS3(String bucket, String key, String expectedBucketOwner, Class<T> type) {
+        return getCsvObjectsFromS3(bucket, key, expectedBucketOwner, type, null);
+    }
+
+    /**
+     * Pulls the records of a csv file from an S3 bucket that match a filter, bound to the given class.
+     * Rejected records are never bound.
+     * @param bucket
+     * @param key
+     * @param type a record, or a class with a no-arg constructor, with {@link com.amazon.aws.monetization.filemgmt.csv.CsvColumn} fields
+     * @param rowFilter the filter records must match, or null to keep every record
+     * @return a list of objects containing the matching records from the csv file
+     */
+    public <T> List<T> getCsvObjectsFromS3(String bucket,
+                                           String key,
+                                           String expectedBucketOwner,
+                                           Class<T> type,
+                                           RowFilter rowFilter) {
+        try (Stream<T> objects = streamCsvObjectsFromS3(bucket, key, expectedBucketOwner, type, rowFilter)) {
+            return objects.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Lazily streams a csv file from an S3 bucket, binding each row to a new instance of the given class.
+     * Columns are matched to fields once from the header; the S3 object stays open until the stream is closed.
+     * @param bucket
+     * @param key
+     * @param type a record, or a class with a no-arg constructor, with {@link com.amazon.aws.monetization.filemgmt.csv.CsvColumn} fields
+     * @return a stream of objects containing data from the csv file
+     */
+    public <T> Stream<T> streamCsvObjectsFromS3(String bucket, String key, String expectedBucketOwner, Class<T> type) {
+        return streamCsvObjectsFromS3(bucket, key, expectedBucketOwner, type, null);
+    }
+
+    /**
+     * Lazily streams the records of a csv file from an S3 bucket that match a filter, bound to the given class.
+     * @param bucket
+     * @param key
+     * @param type a record, or a class with a no-arg constructor, with {@link com.amazon.aws.monetization.filemgmt.csv.CsvColumn} fields
+     * @param rowFilter the filter records must match, or null to keep every record
+     * @return a stream of objects containing the matching records from the csv file
+     */
+    public <T> Stream<T> streamCsvObjectsFromS3(String bucket,
+                                                String key,
+                                                String expectedBucketOwner,
+                                                Class<T> type,
+                                                RowFilter rowFilter) {
+        CsvBinder<T> binder = CsvBinder.of(type);
+        return streamCsvFromS3(bucket, key, expectedBucketOwner, binder::bind, rowFilter);
+    }
+
+    private <T> Stream<T> streamCsvFromS3(String bucket,
+                                          String key,
+                                          String expectedBucketOwner,
+                                          Function<HeaderIndex, CsvRecordMapper<T>> mapperFactory,
+                                          RowFilter rowFilter) {
+        CsvRecordIterator<T> iterator = new CsvRecordIterator<>(
+                openCsvCursor(bucket, key, expectedBucketOwner), bucket, key, mapperFactory, rowFilter);
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Opens a csv file in an S3 bucket as a stream of rows that tracks a {@link CsvCheckpoint} just past every
+     * record. Transient S3 failures are recovered by reopening the object from the last record read, and the
+     * checkpoint from {@link ResumableCsvIterator#getCheckpoint()} can be persisted and passed to
+     * {@link #resumeCsvRowsFromS3(CsvCheckpoint, String)} to continue in a later run. Byte offsets are tracked by
+     * the UTF-8 byte tokenizer whichever engine this reader was built with. The iterator must be closed.
+     * @param bucket
+     * @param key
+     * @return an iterator of rows containing data from the csv file
+     * @throws IllegalArgumentException if the object is compressed, which cannot be read from a byte offset
+     */
+    public ResumableCsvIterator openResumableCsvRowsFromS3(String bucket, String key, String expectedBucketOwner) {
+        GetObjectMetadataRequest request = new GetObjectMetadataRequest(bucket, key);
+
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        ObjectMetadata metadata = s3Client.getObjectMetadata(request);
+        checkNotCompressed(key, metadata.getContentEncoding());
+        return resumeCsvRowsFromS3(new CsvCheckpoint(bucket, key, metadata.getETag(), 0, 0, null), expectedBucketOwner);
+    }
+
+    /**
+     * Resumes reading a csv file from a checkpoint, with ranged GETs pinned to the checkpoint's ETag. The read fails
+     * if the object has changed since the checkpoint was taken.
+     * @param checkpoint a checkpoint from {@link ResumableCsvIterator#getCheckpoint()}
+     * @return an iterator of the rows after the checkpoint
+     */
+    public ResumableCsvIterator resumeCsvRowsFromS3(CsvCheckpoint checkpoint, String expectedBucketOwner) {
+        checkNotCompressed(checkpoint.getKey(), null);
+        return new ResumableCsvIterator(checkpoint, from -> openAt(from, expectedBucketOwner), DEFAULT_RESUME_RETRIES);
+    }
+
+    private InputStream openAt(CsvCheckpoint checkpoint, String expectedBucketOwner) {
+        GetObjectRequest request = new GetObjectRequest(checkpoint.getBucket(), checkpoint.getKey())
+                .withMatchingETagConstraint(checkpoint.getETag());
+        if (checkpoint.getOffset() > 0) {
+            request.withRange(checkpoint.getOffset());
+        }
 
         if (null != expectedBucketOwner) {
             request.setExpectedBucketOwner(expectedBucketOwner);
         }
 
-        return s3Client.getObject(request);
+        S3Object s3Object;
+        try {
+            s3Object = s3Client.getObject(request);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+                // The checkpoint is at the end of the object
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            throw e;
+        }
+
+        // A null object means the ETag constraint failed, i.e. the object changed since the checkpoint
+        if (s3Object == null) {
+            throw new IllegalStateException(String.format("Object %s/%s changed since checkpoint %s",
+                    checkpoint.getBucket(), checkpoint.getKey(), checkpoint));
+        }
+        return s3Object.getObjectContent();
+    }
+
+    private static void checkNotCompressed(String key, String contentEncoding) {
+        if (CsvCompression.detect(key, contentEncoding) != CsvCompression.NONE) {
+            throw new IllegalArgumentException(String.format("Compressed csv %s cannot be read from a byte offset", key));
+        }
+    }
+
+    private ColumnDictionary newDictionary() {
+        return dictionarySize > 0 ? new ColumnDictionary(dictionarySize) : null;
+    }
+
+    /**
+     * Opens a csv cursor over the given S3 object using the configured engine, leaving header handling to the caller.
+     * Gzip and zstd objects, detected from their Content-Encoding or key suffix, are decompressed as they are read.
+     * @param bucket
+     * @param key
+     * @return a csv cursor
+     */
+    private CsvCursor openCsvCursor(String bucket, String key, String expectedBucketOwner) {
+        S3Object s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
+        ObjectMetadata metadata = s3Object.getObjectMetadata();
+        CsvCompression compression =
+                CsvCompression.detect(key, metadata == null ? null : metadata.getContentEncoding());
+
+        try {
+            return engine.open(compression.decode(s3Object.getObjectContent()));
+        } catch (IOException e) {
+            IOUtils.closeQuietly(s3Object, null);
+            String errorMessage = String.format("I/O exception occurred decompressing csv for bucket %s and key %s", bucket, key);
+            throw new RuntimeException(errorMessage, e);
+        }
+    }
+
+    private S3Object getObjectFromS3(String bucket, String key, String expectedBucketOwner) {
+        try {
+            return S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner, objectCache);
+        } catch (IOException e) {
+            String errorMessage = String.format("I/O exception occurred caching csv for bucket %s and key %s", bucket, key);
+            throw new RuntimeException(errorMessage, e);
+        }
     }
 }
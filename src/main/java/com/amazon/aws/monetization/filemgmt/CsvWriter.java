@@ -1,55 +1,175 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordProducer;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.AsyncUploadExecutor;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazon.aws.monetization.filemgmt.utils.StagingMemoryBudget;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.*;
-import com.opencsv.CSVWriter;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public class CsvWriter {
     private AmazonS3 s3Client;
+    private final int partSize;
+    private final int maxInFlightParts;
+    private final AsyncUploadExecutor asyncExecutor;
+    private final StagingMemoryBudget stagingBudget;
 
     public CsvWriter(AmazonS3 s3Client) {
+        this(s3Client, S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
+    /**
+     * @param asyncExecutor runs the {@code writeRecordsToS3Async} uploads
+     */
+    public CsvWriter(AmazonS3 s3Client, AsyncUploadExecutor asyncExecutor) {
+        this(s3Client, S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS, asyncExecutor);
+    }
+
+    /**
+     * @param partSize         the multipart part size used when writing records from an iterator, stream or producer
+     * @param maxInFlightParts how many of those parts may upload at once before the record source is paused
+     */
+    public CsvWriter(AmazonS3 s3Client, int partSize, int maxInFlightParts) {
+        this(s3Client, partSize, maxInFlightParts, AsyncUploadExecutor.getDefault());
+    }
+
+    public CsvWriter(AmazonS3 s3Client, int partSize, int maxInFlightParts, AsyncUploadExecutor asyncExecutor) {
+        this(s3Client, partSize, maxInFlightParts, asyncExecutor, null);
+    }
+
+    /**
+     * @param stagingBudget stages the records written from a list in direct memory from this budget, and in a temp
+     *                      file once it is used up, instead of on the heap; null to keep them on the heap
+     */
+    public CsvWriter(AmazonS3 s3Client,
+                     int partSize,
+                     int maxInFlightParts,
+                     AsyncUploadExecutor asyncExecutor,
+                     StagingMemoryBudget stagingBudget) {
         this.s3Client = s3Client;
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.asyncExecutor = asyncExecutor;
+        this.stagingBudget = stagingBudget;
+    }
+
+    /**
+     * Writes the records to S3 as csv. Keys ending in {@code .gz} or {@code .zst} are compressed accordingly.
+     *
+     * @return the object written, with the checksums computed while the records were encoded
+     */
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, List<String[]> records) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, records, CsvCompression.fromKey(key));
     }
 
-    public void writeRecordsToS3(String bucket, String key, String expectedBucketOwner, List<String[]> records) throws IOException {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        OutputStreamWriter streamWriter = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
-
-        // Retrieve s3 bucket SSE-KMS configuration
-        GetBucketEncryptionResult getBucketEncryptionResult = this.s3Client.getBucketEncryption(bucket);
-        ServerSideEncryptionByDefault serverSideEncryptionByDefault =
-                getBucketEncryptionResult.getServerSideEncryptionConfiguration().getRules().get(0).getApplyServerSideEncryptionByDefault();
-        String algorithm = serverSideEncryptionByDefault.getSSEAlgorithm();
-        String kmsMasterKeyId = serverSideEncryptionByDefault.getKMSMasterKeyID();
-
-        try (CSVWriter writer = new CSVWriter(streamWriter)) {
-            writer.writeAll(records, true);
-            writer.flush();
-            ObjectMetadata meta = new ObjectMetadata();
-            meta.setContentLength(stream.toByteArray().length);
-            meta.setSSEAlgorithm(algorithm);
-
-            PutObjectRequest putObjectRequest = new PutObjectRequest(
-                    bucket,
-                    key,
-                    new ByteArrayInputStream(stream.toByteArray()),
-                    meta
-            );
-
-            if(null != expectedBucketOwner) {
-                putObjectRequest.setExpectedBucketOwner(expectedBucketOwner);
+    /**
+     * Writes the records to S3 as csv, compressing them with the given codec as they are encoded.
+     * The object's Content-Encoding is set for compressed output so readers can detect the codec.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket,
+                                 String key,
+                                 String expectedBucketOwner,
+                                 List<String[]> records,
+                                 CsvCompression compression) throws IOException {
+        // Buffered on the heap unless a staging budget was given, then sent with a single put
+        S3CsvWriter writer = stagingBudget == null
+                ? new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, compression)
+                : new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, compression, stagingBudget);
+        try {
+            for (String[] record : records) {
+                writer.append(record);
             }
+            return writer.write();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
 
-            putObjectRequest.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsMasterKeyId));
+    /**
+     * Writes the records to S3 as csv, pulling them from the iterator only as fast as they can be encoded and
+     * uploaded, so the records never have to be in memory all at once. Keys ending in {@code .gz} or {@code .zst}
+     * are compressed accordingly.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, Iterator<String[]> records) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, records, CsvCompression.fromKey(key));
+    }
 
-            this.s3Client.putObject(putObjectRequest);
+    public S3WriteResult writeRecordsToS3(String bucket,
+                                 String key,
+                                 String expectedBucketOwner,
+                                 Iterator<String[]> records,
+                                 CsvCompression compression) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, sink -> {
+            while (records.hasNext()) {
+                sink.accept(records.next());
+            }
+        }, compression);
+    }
+
+    /**
+     * Same as the iterator overload; the stream is closed once written.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, Stream<String[]> records) throws IOException {
+        try (Stream<String[]> stream = records) {
+            return writeRecordsToS3(bucket, key, expectedBucketOwner, stream.iterator(), CsvCompression.fromKey(key));
+        }
+    }
+
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, CsvRecordProducer producer) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, producer, CsvCompression.fromKey(key));
+    }
+
+    /**
+     * Writes the records handed to the producer's sink to S3 as csv. Each record is encoded as it arrives and the
+     * output is uploaded with a multipart upload; the sink blocks once {@code maxInFlightParts} parts are waiting
+     * on S3, so memory stays bounded by the part size however many records are written. If the producer throws,
+     * the upload is aborted and no object is created.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket,
+                                 String key,
+                                 String expectedBucketOwner,
+                                 CsvRecordProducer producer,
+                                 CsvCompression compression) throws IOException {
+        S3CsvWriter writer = new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, compression, partSize, maxInFlightParts);
+        try {
+            producer.produce(writer::append);
+        } catch (IOException | RuntimeException | Error e) {
+            writer.abort();
+            throw e;
         }
+        writer.close();
+        return writer.getWriteResult();
+    }
+
+    /**
+     * Asynchronous {@link #writeRecordsToS3(String, String, String, List)}: encodes and uploads the records on the
+     * writer's {@link AsyncUploadExecutor}. The list must not be modified until the future completes.
+     */
+    public CompletableFuture<S3WriteResult> writeRecordsToS3Async(String bucket, String key, String expectedBucketOwner, List<String[]> records) {
+        return writeRecordsToS3Async(bucket, key, expectedBucketOwner, records, CsvCompression.fromKey(key));
+    }
+
+    public CompletableFuture<S3WriteResult> writeRecordsToS3Async(String bucket,
+                                                                  String key,
+                                                                  String expectedBucketOwner,
+                                                                  List<String[]> records,
+                                                                  CsvCompression compression) {
+        return asyncExecutor.submit(() -> writeRecordsToS3(bucket, key, expectedBucketOwner, records, compression));
+    }
+
+    /**
+     * Asynchronous {@link #writeRecordsToS3(String, String, String, CsvRecordProducer)}; the producer is called on
+     * the executor's thread.
+     */
+    public CompletableFuture<S3WriteResult> writeRecordsToS3Async(String bucket, String key, String expectedBucketOwner, CsvRecordProducer producer) {
+        return asyncExecutor.submit(() -> writeRecordsToS3(bucket, key, expectedBucketOwner, producer, CsvCompression.fromKey(key)));
     }
 }
@@ -1,13 +1,23 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.excel.poi.ExcelCellFormatter;
+import com.amazon.aws.monetization.filemgmt.excel.poi.ExcelEngine;
+import com.amazon.aws.monetization.filemgmt.excel.poi.ExcelRowFields;
+import com.amazon.aws.monetization.filemgmt.excel.poi.FormulaCellException;
+import com.amazon.aws.monetization.filemgmt.excel.poi.StreamingExcelReader;
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+import com.amazon.aws.monetization.filemgmt.utils.S3ObjectDiskCache;
+import com.amazon.aws.monetization.filemgmt.utils.S3Util;
 import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.google.common.base.Strings;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.CellValue;
-import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
@@ -16,18 +26,69 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 
 public class ExcelReader {
     private final AmazonS3 s3Client;
+    private final int dictionarySize;
+    private final StreamingExcelReader streaming;
+    private final S3ObjectDiskCache objectCache;
 
     public ExcelReader(AmazonS3 s3Client) {
+        this(s3Client, 0);
+    }
+
+    /**
+     * @param dictionarySize when positive, repeated cell values of each column share one {@code String} instance
+     *                       per workbook read, until the column has more than this many distinct values, see
+     *                       {@link ColumnDictionary}
+     */
+    public ExcelReader(AmazonS3 s3Client, int dictionarySize) {
+        this(s3Client, ExcelEngine.DOM, dictionarySize);
+    }
+
+    /**
+     * @param engine how workbooks are loaded, e.g. {@link ExcelEngine#STREAMING} to read large workbooks in constant
+     *               memory. The streaming engines serve {@code getExcelRecordsFromS3},
+     *               {@code getExcelRecordsByColumnsFromS3} and {@code getExcelRecordsRowsFromS3}; the other methods
+     *               always load the workbook.
+     */
+    public ExcelReader(AmazonS3 s3Client, ExcelEngine engine, int dictionarySize) {
+        this(s3Client, engine, dictionarySize, null);
+    }
+
+    /**
+     * @param objectCache serves the workbooks from a local disk cache, revalidated against the object's ETag, or null
+     *                    to download them on every read
+     */
+    public ExcelReader(AmazonS3 s3Client, ExcelEngine engine, int dictionarySize, S3ObjectDiskCache objectCache) {
+        this(s3Client, engine, dictionarySize, objectCache, false);
+    }
+
+    /**
+     * @param readFormulasWithDom with a streaming engine, whether sheets with formula cells are read with the DOM so
+     *                            formulas read as with {@link ExcelEngine#DOM}, rather than by their cached result.
+     *                            Such reads hold the whole workbook in memory and log a warning.
+     */
+    public ExcelReader(AmazonS3 s3Client,
+                       ExcelEngine engine,
+                       int dictionarySize,
+                       S3ObjectDiskCache objectCache,
+                       boolean readFormulasWithDom) {
         this.s3Client = s3Client;
+        this.dictionarySize = dictionarySize;
+        this.objectCache = objectCache;
+        this.streaming = StreamingExcelReader.forEngine(s3Client, engine, dictionarySize, objectCache,
+                readFormulasWithDom);
     }
 
     /**
@@ -42,44 +103,45 @@ public class ExcelReader {
     public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
                                                            String key,
                                                            String expectedBucketOwner) throws IOException {
-        S3Object s3Object = null;
-        XSSFWorkbook workbook = null;
+        return getExcelRecordsFromS3(bucket, key, expectedBucketOwner, (RowFilter) null);
+    }
 
-        try {
+    /**
+     * Pulls the records of the first sheet of a xlsx/xls file from an S3 bucket that match a filter. The filter
+     * looks at the filtered cells only, so rejected rows are skipped before the rest of the row is formatted.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return a list of maps containing the matching rows from the xlsx/xls file
+     * @throws IOException from error reading Excel Files
+     */
+    public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
+                                                           String key,
+                                                           String expectedBucketOwner,
+                                                           RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsFromS3(bucket, key, expectedBucketOwner, null, rowFilter, false);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
             List<Map<String, String>> records = new ArrayList<>();
-
-            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
-            workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
             XSSFSheet sheet = workbook.getSheetAt(0);
 
-            List<String> headers = getRowData(sheet, 0);
-
-            for(int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex ++) {
+            List<String> headers = getRowData(formatter, sheet, 0);
+            Predicate<FieldSource> filter = rowFilter == null ? null : rowFilter.bind(HeaderIndex.of(headers));
+            forEachRow(sheet, formatter, null, filter, rowData -> {
                 AtomicInteger index = new AtomicInteger();
-                List<String> rowData = getRowData(sheet, rowIndex);
-                if( !isRowDataEmpty(rowData) ) {
-                    records.add(rowData.stream().collect(
-                            Collectors.toMap(s -> headers.get(index.getAndIncrement()), s -> s)));
-                }
-            }
-
-            workbook.close();
+                records.add(rowData.stream().collect(
+                        Collectors.toMap(s -> headers.get(index.getAndIncrement()), s -> s)));
+            });
             return records;
-
-        } catch  (IOException | SdkClientException e) {
-            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
-                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
-                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } finally {
-            if (workbook != null) {
-                workbook.close();
-            }
-            if (s3Object != null) {
-                s3Object.close();
-            }
-        }
+        });
     }
 
     /**
@@ -97,55 +159,176 @@ public class ExcelReader {
                                                            String key,
                                                            String expectedBucketOwner,
                                                            String sheetName) throws IOException {
-        S3Object s3Object = null;
-        XSSFWorkbook workbook = null;
-
-        try {
-            List<Map<String, String>> records = new ArrayList<>();
-
-            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
-            workbook = new XSSFWorkbook(s3Object.getObjectContent());
-
-            // Creating formula evaluator object
-            FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
+        return getExcelRecordsFromS3(bucket, key, expectedBucketOwner, sheetName, null);
+    }
 
+    /**
+     * Pulls the records of a sheet of a xlsx/xls file from an S3 bucket that match a filter, see
+     * {@link #getExcelRecordsFromS3(String, String, String, String)}. Empty column names are filtered by their
+     * index.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetName sheet name to be read
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return a list of maps containing the matching rows from the xlsx/xls file
+     * @throws IOException from error reading Excel Files
+     */
+    public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
+                                                           String key,
+                                                           String expectedBucketOwner,
+                                                           String sheetName,
+                                                           RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsFromS3(bucket, key, expectedBucketOwner, sheetName, rowFilter, true);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
             XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
-                workbook.close();
                 return null;
             }
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            return getSheetRecords(sheet, formatter, workbook.getCreationHelper().createFormulaEvaluator(), rowFilter);
+        });
+    }
+
+    /**
+     * Pulls the records of several sheets of a xlsx/xls file from an S3 bucket, see
+     * {@link #getExcelRecordsFromS3(String, String, String, String)}. The file is downloaded and loaded once for all
+     * the sheets; with a streaming {@link ExcelEngine} the sheets are also parsed in parallel.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetNames sheet names to be read
+     * @return the records of each sheet by sheet name, in the order given; sheets that do not exist are left out
+     * @throws IOException from error reading Excel Files
+     */
+    public Map<String, List<Map<String, String>>> getExcelRecordsBySheetFromS3(String bucket,
+                                                                             String key,
+                                                                             String expectedBucketOwner,
+                                                                             Collection<String> sheetNames) throws IOException {
+        return getExcelRecordsBySheetFromS3(bucket, key, expectedBucketOwner, sheetNames, null);
+    }
 
-            List<String> headers = getRowData(sheet, 0);
+    /**
+     * Pulls the records of several sheets of a xlsx/xls file from an S3 bucket that match a filter, see
+     * {@link #getExcelRecordsBySheetFromS3(String, String, String, Collection)}.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetNames sheet names to be read
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return the matching records of each sheet by sheet name; sheets that do not exist are left out
+     * @throws IOException from error reading Excel Files
+     */
+    public Map<String, List<Map<String, String>>> getExcelRecordsBySheetFromS3(String bucket,
+                                                                             String key,
+                                                                             String expectedBucketOwner,
+                                                                             Collection<String> sheetNames,
+                                                                             RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsBySheetFromS3(bucket, key, expectedBucketOwner, sheetNames, rowFilter, true);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
 
-            for(int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex ++) {
-                AtomicInteger index = new AtomicInteger();
-                List<String> rowData = getRowData(sheet, rowIndex, formulaEval);
-                if( !isRowDataEmpty(rowData) ) {
-                    //In case of Empty Headers use index to prevent merge conflicts
-                    records.add(rowData.stream().collect(
-                            Collectors.toMap(s ->
-                                    Strings.isNullOrEmpty(headers.get(index.get()))
-                                            ? String.valueOf(index.getAndIncrement())
-                                            : headers.get(index.getAndIncrement()), s -> s)));
+            Map<String, List<Map<String, String>>> records = new LinkedHashMap<>();
+            for (String sheetName : sheetNames) {
+                XSSFSheet sheet = workbook.getSheet(sheetName);
+                if (sheet != null) {
+                    records.put(sheetName, getSheetRecords(sheet, formatter, formulaEval, rowFilter));
                 }
             }
-
-            workbook.close();
             return records;
-        } catch  (IOException | SdkClientException e) {
-            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
-                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
-                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } finally {
-            if (workbook != null) {
-                workbook.close();
-            }
-            if (s3Object != null) {
-                s3Object.close();
+        });
+    }
+
+    /**
+     * Reads the rows of a sheet after its header, keyed by column name or by index for empty column names.
+     */
+    private List<Map<String, String>> getSheetRecords(XSSFSheet sheet,
+                                                      ExcelCellFormatter formatter,
+                                                      FormulaEvaluator formulaEval,
+                                                      RowFilter rowFilter) {
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> headers = getRowData(formatter, sheet, 0);
+        Predicate<FieldSource> filter = rowFilter == null ? null : rowFilter.bind(toFilterHeader(headers));
+        forEachRow(sheet, formatter, formulaEval, filter, rowData -> {
+            AtomicInteger index = new AtomicInteger();
+            //In case of Empty Headers use index to prevent merge conflicts
+            records.add(rowData.stream().collect(
+                    Collectors.toMap(s ->
+                            Strings.isNullOrEmpty(headers.get(index.get()))
+                                    ? String.valueOf(index.getAndIncrement())
+                                    : headers.get(index.getAndIncrement()), s -> s)));
+        });
+        return records;
+    }
+
+    /**
+     * Pulls data in a xlsx/xls file from an S3 bucket as compact rows that share a single header dictionary,
+     * instead of one map per row. Use {@link IndexedRow#asMap()} for a map view of a row.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @return a list of rows containing data from the xlsx/xls file
+     * @throws IOException from error reading Excel Files
+     */
+    public List<IndexedRow> getExcelRowsFromS3(String bucket,
+                                               String key,
+                                               String expectedBucketOwner) throws IOException {
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            XSSFSheet sheet = workbook.getSheetAt(0);
+
+            HeaderIndex header = HeaderIndex.ofUnique(getRowData(formatter, sheet, 0));
+            List<IndexedRow> rows = new ArrayList<>();
+            forEachRow(sheet, formatter, null, null, rowData -> rows.add(toIndexedRow(header, rowData)));
+            return rows;
+        });
+    }
+
+    /**
+     * Pulls data in a xlsx/xls file from an S3 bucket by Sheet Name as compact rows that share a single header
+     * dictionary. If a column name is empty then the index of the column is used as its name.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetName sheet name to be read
+     * @return a list of rows containing data from the xlsx/xls file, or null if the sheet does not exist
+     * @throws IOException from error reading Excel Files
+     */
+    public List<IndexedRow> getExcelRowsFromS3(String bucket,
+                                               String key,
+                                               String expectedBucketOwner,
+                                               String sheetName) throws IOException {
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
+            XSSFSheet sheet = workbook.getSheet(sheetName);
+            if (sheet == null) {
+                return null;
             }
-        }
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
+
+            HeaderIndex header = HeaderIndex.ofUnique(indexEmpty(getRowData(formatter, sheet, 0)));
+            List<IndexedRow> rows = new ArrayList<>();
+            forEachRow(sheet, formatter, formulaEval, null, rowData -> rows.add(toIndexedRow(header, rowData)));
+            return rows;
+        });
     }
 
     /**
@@ -160,93 +343,150 @@ public class ExcelReader {
     public Map<String, List<String>> getExcelRecordsByColumnsFromS3(String bucket,
                                                                     String key,
                                                                     String expectedBucketOwner) throws IOException {
-        S3Object s3Object = null;
-        XSSFWorkbook workbook = null;
-        try {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsByColumnsFromS3(bucket, key, expectedBucketOwner, null, false, false);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
+        return readWorkbook(bucket, key, expectedBucketOwner, workbook -> {
             Map<String, List<String>> records = new HashMap<>();
-
-            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
-            workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
             XSSFSheet sheet = workbook.getSheetAt(0);
 
-            List<String> headers = getRowData(sheet, 0);
-
-            for(int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex ++) {
-                List<String> rowData = getRowData(sheet, rowIndex);
-                if( !isRowDataEmpty(rowData) ) {
-                    for(int colIndex = 0; colIndex < rowData.size(); colIndex ++) {
-                        String columnName = headers.get(colIndex);
-                        if(!records.containsKey(columnName)) {
-                            records.put(columnName, new ArrayList<>());
-                        }
-                        records.get(columnName).add(rowData.get(colIndex));
+            List<String> headers = getRowData(formatter, sheet, 0);
+            forEachRow(sheet, formatter, null, null, rowData -> {
+                for(int colIndex = 0; colIndex < rowData.size(); colIndex ++) {
+                    String columnName = headers.get(colIndex);
+                    if(!records.containsKey(columnName)) {
+                        records.put(columnName, new ArrayList<>());
                     }
+                    records.get(columnName).add(rowData.get(colIndex));
                 }
-            }
-
-            workbook.close();
+            });
             return records;
-        } catch  (IOException | SdkClientException e) {
-            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
-                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
-                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
-        } finally {
-            if (workbook != null) {
-                workbook.close();
-            }
-            if (s3Object != null) {
-                s3Object.close();
-            }
-        }
-
+        });
     }
 
 
     public List<List<String>> getExcelRecordsRowsFromS3(String bucket, String key, String expectedBucketOwner)
             throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsRowsFromS3(bucket, key, expectedBucketOwner);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
 
         List<List<String>> records = new ArrayList<>();
 
         S3Object s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
         XSSFWorkbook workbook = new XSSFWorkbook(s3Object.getObjectContent());
+        ExcelCellFormatter formatter = new ExcelCellFormatter();
         XSSFSheet sheet = workbook.getSheetAt(0);
 
         // Creating formula evaluator object
         FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
 
+        ColumnDictionary dictionary = newDictionary();
         for(int rowIndex = 0; rowIndex < sheet.getLastRowNum() + 1; rowIndex ++) {
-            records.add(getRowData(sheet, rowIndex, formulaEval));
+            records.add(getRowData(formatter, sheet, rowIndex, formulaEval, dictionary));
         }
 
         workbook.close();
         return records;
     }
 
-    private List<String> getRowData(XSSFSheet sheet, int rowIndex) {
+    /**
+     * Downloads the workbook, reads it and closes it, wrapping failures the same way for every read.
+     */
+    private <T> T readWorkbook(String bucket,
+                               String key,
+                               String expectedBucketOwner,
+                               WorkbookRead<T> read) throws IOException {
+        S3Object s3Object = null;
+        XSSFWorkbook workbook = null;
+
+        try {
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
+            workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            return read.apply(workbook);
+        } catch  (IOException | SdkClientException e) {
+            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
+                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
+                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } finally {
+            if (workbook != null) {
+                workbook.close();
+            }
+            if (s3Object != null) {
+                s3Object.close();
+            }
+        }
+    }
+
+    /**
+     * Passes the rows of a sheet after its header that match the filter and are not empty to the action.
+     *
+     * @param formulaEval evaluates formula cells, or null to read them as formatted
+     * @param filter      the filter rows must match, or null to keep every row
+     */
+    private void forEachRow(XSSFSheet sheet,
+                            ExcelCellFormatter formatter,
+                            FormulaEvaluator formulaEval,
+                            Predicate<FieldSource> filter,
+                            Consumer<List<String>> action) {
+        ExcelRowFields fields = new ExcelRowFields(formatter, formulaEval);
+
+        ColumnDictionary dictionary = newDictionary();
+        for(int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex ++) {
+            if (filter != null && !filter.test(fields.reset(sheet.getRow(rowIndex)))) continue;
+
+            List<String> rowData = formulaEval == null
+                    ? getRowData(formatter, sheet, rowIndex, dictionary)
+                    : getRowData(formatter, sheet, rowIndex, formulaEval, dictionary);
+            if( !isRowDataEmpty(rowData) ) {
+                action.accept(rowData);
+            }
+        }
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex) {
+        return getRowData(fmt, sheet, rowIndex, (ColumnDictionary) null);
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    ColumnDictionary dictionary) {
         List<String> rowData = new ArrayList<>();
         XSSFRow row = sheet.getRow(rowIndex);
         if(row != null) {
-            DataFormatter fmt = new DataFormatter();
             for (int colIndex = 0; colIndex < row.getLastCellNum(); colIndex++) {
                 XSSFCell cell = row.getCell(colIndex);
                 String valueAsSeenInExcel = fmt.formatCellValue(cell);
                 if (null == valueAsSeenInExcel || valueAsSeenInExcel.isEmpty())
                     rowData.add("");
                 else {
-                    rowData.add(valueAsSeenInExcel.trim());
+                    rowData.add(intern(dictionary, colIndex, valueAsSeenInExcel.trim()));
                 }
             }
         }
         return rowData;
     }
 
-    private List<String> getRowData(XSSFSheet sheet, int rowIndex, FormulaEvaluator formulaEval) {
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    FormulaEvaluator formulaEval) {
+        return getRowData(fmt, sheet, rowIndex, formulaEval, null);
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    FormulaEvaluator formulaEval, ColumnDictionary dictionary) {
         List<String> rowData = new ArrayList<>();
         XSSFRow row = sheet.getRow(rowIndex);
         if(row != null) {
-            DataFormatter fmt = new DataFormatter();
             for (int colIndex = 0; colIndex < row.getLastCellNum(); colIndex++) {
                 XSSFCell cell = row.getCell(colIndex);
                 String valueAsSeenInExcel;
@@ -267,13 +507,46 @@ public class ExcelReader {
                 if (null == valueAsSeenInExcel || valueAsSeenInExcel.isEmpty())
                     rowData.add("");
                 else {
-                    rowData.add(valueAsSeenInExcel.trim());
+                    rowData.add(intern(dictionary, colIndex, valueAsSeenInExcel.trim()));
                 }
             }
         }
         return rowData;
     }
 
+    private IndexedRow toIndexedRow(HeaderIndex header, List<String> rowData) {
+        if (rowData.size() > header.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Row has %d cells but the header has %d columns", rowData.size(), header.size()));
+        }
+        return new IndexedRow(header, rowData.toArray(new String[0]));
+    }
+
+    private HeaderIndex toFilterHeader(List<String> headers) {
+        return HeaderIndex.of(indexEmpty(headers));
+    }
+
+    /**
+     * @return the column names, with the index of the column as the name of columns with an empty name
+     */
+    private static List<String> indexEmpty(List<String> headers) {
+        List<String> names = new ArrayList<>(headers);
+        for (int colIndex = 0; colIndex < names.size(); colIndex++) {
+            if (Strings.isNullOrEmpty(names.get(colIndex))) {
+                names.set(colIndex, String.valueOf(colIndex));
+            }
+        }
+        return names;
+    }
+
+    private ColumnDictionary newDictionary() {
+        return dictionarySize > 0 ? new ColumnDictionary(dictionarySize) : null;
+    }
+
+    private static String intern(ColumnDictionary dictionary, int colIndex, String value) {
+        return dictionary == null ? value : dictionary.intern(colIndex, value);
+    }
+
     private boolean isRowDataEmpty(List<String> rowData) {
         for(String cellData: rowData) {
             if(null != cellData && !cellData.isEmpty())
@@ -283,14 +556,12 @@ public class ExcelReader {
     }
 
 
-    private S3Object getObjectFromS3(String bucket, String key, String expectedBucketOwner) {
-        GetObjectRequest request = new GetObjectRequest(bucket, key);
-
-        if (null != expectedBucketOwner) {
-            request.setExpectedBucketOwner(expectedBucketOwner);
-        }
+    private S3Object getObjectFromS3(String bucket, String key, String expectedBucketOwner) throws IOException {
+        return S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner, objectCache);
+    }
 
-        return s3Client.getObject(request);
+    private interface WorkbookRead<T> {
+        T apply(XSSFWorkbook workbook) throws IOException;
     }
 
 }
@@ -0,0 +1,140 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.excel.poi.DiskSharedStringsTable;
+import com.amazon.aws.monetization.filemgmt.excel.poi.StreamingSheetReader;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazon.aws.monetization.filemgmt.utils.S3Util;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Converts a sheet of an xlsx object in S3 into a csv object in S3 in one pass, without ever holding the workbook
+ * or the csv in memory. The workbook is streamed to a temp file, the sheet XML is read row by row with a
+ * {@link StreamingSheetReader}, and each row is encoded and uploaded by a multipart {@link S3CsvWriter} as soon as
+ * it is read. Memory is bounded by the workbook's shared strings and {@code maxInFlightParts} upload parts,
+ * whatever the number of rows. With a {@code sharedStringsCacheSize} the shared strings are kept on disk by a
+ * {@link DiskSharedStringsTable} as well, so memory no longer depends on the size of the workbook at all.
+ *
+ * Cell values are formatted and trimmed as {@link ExcelReader} does. The header row is written as is and empty
+ * rows are skipped; every row is padded to the width of the header.
+ */
+public class ExcelToCsvConverter {
+    private final AmazonS3 s3Client;
+    private final int partSize;
+    private final int maxInFlightParts;
+    private final int sharedStringsCacheSize;
+
+    public ExcelToCsvConverter(AmazonS3 s3Client) {
+        this(s3Client, S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
+    /**
+     * @param partSize         the multipart part size of the csv upload
+     * @param maxInFlightParts how many parts may upload at once before reading the sheet is paused
+     */
+    public ExcelToCsvConverter(AmazonS3 s3Client, int partSize, int maxInFlightParts) {
+        this(s3Client, partSize, maxInFlightParts, 0);
+    }
+
+    /**
+     * @param sharedStringsCacheSize when positive, the shared strings are kept on disk with this many cached in
+     *                               memory, e.g. {@link DiskSharedStringsTable#DEFAULT_CACHE_SIZE}; otherwise they
+     *                               are all loaded in memory
+     */
+    public ExcelToCsvConverter(AmazonS3 s3Client, int partSize, int maxInFlightParts, int sharedStringsCacheSize) {
+        this.s3Client = s3Client;
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.sharedStringsCacheSize = sharedStringsCacheSize;
+    }
+
+    /**
+     * Converts the first sheet of the workbook. Destination keys ending in {@code .gz} or {@code .zst} are
+     * compressed accordingly.
+     */
+    public S3WriteResult convert(String srcBucket, String srcKey, String destBucket, String destKey,
+                                 String expectedBucketOwner) throws IOException {
+        return convert(srcBucket, srcKey, null, destBucket, destKey, expectedBucketOwner);
+    }
+
+    /**
+     * Converts a sheet of the workbook by name.
+     *
+     * @param sheetName the sheet to convert, or null for the first sheet
+     * @return the csv object written, or null if the sheet does not exist, in which case nothing is written
+     * @throws IOException from error reading the workbook or writing the csv; a partly written csv is aborted
+     */
+    public S3WriteResult convert(String srcBucket, String srcKey, String sheetName, String destBucket, String destKey,
+                                 String expectedBucketOwner) throws IOException {
+        Path workbookFile = null;
+        S3CsvWriter writer = null;
+        try {
+            workbookFile = S3Util.downloadToTempFile(s3Client, srcBucket, srcKey, expectedBucketOwner, ".xlsx");
+            try (StreamingSheetReader reader = new StreamingSheetReader(workbookFile.toFile(), sharedStringsCacheSize)) {
+                writer = new S3CsvWriter(s3Client, destBucket, destKey, expectedBucketOwner,
+                        CsvCompression.fromKey(destKey), partSize, maxInFlightParts);
+                CsvRowSink sink = new CsvRowSink(writer);
+                if (!reader.readSheet(sheetName, sink::accept)) {
+                    writer.abort();
+                    return null;
+                }
+            }
+            writer.close();
+            return writer.getWriteResult();
+        } catch (IOException | SdkClientException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            throw new IOException(String.format("Error converting Excel [%s] to csv [%s] due to an S3/IO Error, " +
+                    " error message received was [%s]", srcBucket + "/" + srcKey, destBucket + "/" + destKey, e.getMessage()), e);
+        } catch (RuntimeException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            throw e;
+        } finally {
+            if (workbookFile != null) {
+                Files.deleteIfExists(workbookFile);
+            }
+        }
+    }
+
+    private static final class CsvRowSink {
+        private final S3CsvWriter writer;
+        private int width = -1;
+
+        private CsvRowSink(S3CsvWriter writer) {
+            this.writer = writer;
+        }
+
+        private void accept(int rowNum, List<String> cells) throws IOException {
+            if (width < 0) {
+                // The first row read is the header
+                width = cells.size();
+            } else if (isEmpty(cells)) {
+                return;
+            }
+            String[] record = new String[Math.max(width, cells.size())];
+            for (int i = 0; i < record.length; i++) {
+                record[i] = i < cells.size() ? cells.get(i) : "";
+            }
+            writer.append(record);
+        }
+
+        private static boolean isEmpty(List<String> cells) {
+            for (String cell : cells) {
+                if (!cell.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.csv.CsvEngine;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordBoundaryScanner;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordIterator;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRowMapper;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Reads large csv objects from S3 using concurrent ranged GETs and parses the ranges on a fork-join pool.
+ * Each range is cut back to its last record boundary (quoted newlines included) and the remainder is carried
+ * into the next range, so records never straddle two parse tasks. Ranges are processed in windows of twice the
+ * pool's parallelism, and the next window is fetched while the current one is parsed. Raw bytes held in memory are
+ * therefore bounded by {@code 2 * rangeSize * window}, plus any record carried over between ranges, instead of the
+ * object size. Compressed objects cannot be split into ranges and are decoded sequentially instead.
+ */
+public class ParallelCsvReader {
+    public static final long DEFAULT_RANGE_SIZE = 8L * 1024 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final ForkJoinPool parsePool;
+    private final long rangeSize;
+    private final int window;
+
+    public ParallelCsvReader(AmazonS3 s3Client) {
+        this(s3Client, ForkJoinPool.commonPool(), DEFAULT_RANGE_SIZE);
+    }
+
+    public ParallelCsvReader(AmazonS3 s3Client, ForkJoinPool parsePool, long rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException("rangeSize must be positive");
+        }
+        this.s3Client = s3Client;
+        this.parsePool = parsePool;
+        this.rangeSize = rangeSize;
+        this.window = Math.max(2, parsePool.getParallelism() * 2);
+    }
+
+    /**
+     * Pulls data in a csv file from an S3 bucket in parallel, and converts data into a list of maps,
+     * with each key maps to a column name. Records are returned in file order and empty rows are dropped.
+     * @param bucket
+     * @param key
+     * @return a list of maps containing data from the csv file
+     */
+    public List<Map<String, String>> getCsvRecordsFromS3(String bucket, String key, String expectedBucketOwner) {
+        List<Map<String, String>> records = new ArrayList<>();
+        forEachCsvRecordFromS3(bucket, key, expectedBucketOwner, records::add, true);
+        return records;
+    }
+
+    /**
+     * Reads a csv file from an S3 bucket in parallel and hands every non empty record to the consumer.
+     * When {@code ordered} is true the consumer is called on the calling thread in file order. Otherwise it is
+     * called concurrently from the parse pool as soon as a range is parsed, and must be thread safe.
+     * @param bucket
+     * @param key
+     * @param consumer receives one map per record, keyed by column name
+     * @param ordered whether records must be delivered in file order
+     */
+    public void forEachCsvRecordFromS3(String bucket,
+                                       String key,
+                                       String expectedBucketOwner,
+                                       Consumer<Map<String, String>> consumer,
+                                       boolean ordered) {
+        ObjectMetadata metadata = getObjectMetadata(bucket, key, expectedBucketOwner);
+        long length = metadata.getContentLength();
+        String eTag = metadata.getETag();
+
+        CsvCompression compression = CsvCompression.detect(key, metadata.getContentEncoding());
+        if (compression != CsvCompression.NONE) {
+            // A compressed object cannot be split at byte offsets, so it is decoded as one sequential stream
+            forEachCompressedRecord(bucket, key, expectedBucketOwner, eTag, compression, consumer);
+            return;
+        }
+
+        ExecutorService fetchPool = Executors.newFixedThreadPool(window);
+        try {
+            ReadState state = new ReadState();
+            List<Future<byte[]>> current = fetchBatch(fetchPool, bucket, key, expectedBucketOwner, eTag, 0, length);
+
+            for (long batchStart = 0; batchStart < length; batchStart += rangeSize * window) {
+                // Prefetch the next window while this one is scanned and parsed
+                List<Future<byte[]>> next =
+                        fetchBatch(fetchPool, bucket, key, expectedBucketOwner, eTag, batchStart + rangeSize * window, length);
+
+                List<byte[]> chunks = new ArrayList<>();
+                for (Future<byte[]> range : current) {
+                    chunks.add(range.get());
+                }
+                emit(toSegments(chunks, state), state, consumer, ordered);
+                current = next;
+            }
+
+            if (state.carry.length > 0) {
+                emit(Collections.singletonList(state.carry), state, consumer, ordered);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String errorMessage = String.format("Interrupted while reading csv records for bucket %s and key %s", bucket, key);
+            throw new RuntimeException(errorMessage, e);
+        } catch (ExecutionException e) {
+            String errorMessage = String.format("Exception occurred fetching csv ranges for bucket %s and key %s", bucket, key);
+            throw new RuntimeException(errorMessage, e.getCause());
+        } finally {
+            fetchPool.shutdownNow();
+        }
+    }
+
+    private void forEachCompressedRecord(String bucket, String key, String expectedBucketOwner, String eTag,
+                                         CsvCompression compression, Consumer<Map<String, String>> consumer) {
+        GetObjectRequest request = new GetObjectRequest(bucket, key).withMatchingETagConstraint(eTag);
+
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        S3Object s3Object = s3Client.getObject(request);
+        if (s3Object == null) {
+            throw new IllegalStateException(String.format("Object %s/%s changed while it was being read", bucket, key));
+        }
+
+        CsvRecordIterator<IndexedRow> iterator;
+        try {
+            iterator = new CsvRecordIterator<>(CsvEngine.OPENCSV.open(compression.decode(s3Object.getObjectContent())),
+                    bucket, key, header -> new CsvRowMapper(header, null));
+        } catch (IOException e) {
+            IOUtils.closeQuietly(s3Object, null);
+            String errorMessage = String.format("I/O exception occurred decompressing csv for bucket %s and key %s", bucket, key);
+            throw new RuntimeException(errorMessage, e);
+        }
+
+        try {
+            iterator.forEachRemaining(row -> consumer.accept(row.toMap()));
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private List<Future<byte[]>> fetchBatch(ExecutorService fetchPool, String bucket, String key, String expectedBucketOwner,
+                                            String eTag, long batchStart, long length) {
+        List<Future<byte[]>> ranges = new ArrayList<>();
+        for (int i = 0; i < window; i++) {
+            long start = batchStart + i * rangeSize;
+            if (start >= length) {
+                break;
+            }
+            long end = Math.min(start + rangeSize, length) - 1;
+            ranges.add(fetchPool.submit(() -> getRange(bucket, key, expectedBucketOwner, eTag, start, end)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Cuts each chunk at its last record boundary. Scanning runs in parallel for every possible start state,
+     * then the real state is threaded through the chunks in order, which is a cheap sequential pass.
+     */
+    private List<byte[]> toSegments(List<byte[]> chunks, ReadState state) {
+        List<ForkJoinTask<CsvRecordBoundaryScanner.Result[]>> scans = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            scans.add(parsePool.submit(() -> CsvRecordBoundaryScanner.scanAllStates(chunk)));
+        }
+
+        List<byte[]> segments = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            CsvRecordBoundaryScanner.Result result = scans.get(i).join()[state.parserState];
+            int boundary = result.getLastBoundary();
+
+            if (boundary < 0) {
+                state.carry = concat(state.carry, chunk, 0, chunk.length);
+            } else {
+                segments.add(concat(state.carry, chunk, 0, boundary));
+                state.carry = Arrays.copyOfRange(chunk, boundary, chunk.length);
+            }
+            state.parserState = result.getEndState();
+        }
+        return segments;
+    }
+
+    private void emit(List<byte[]> segments, ReadState state, Consumer<Map<String, String>> consumer, boolean ordered) {
+        int first = 0;
+        if (state.header == null && !segments.isEmpty()) {
+            // The header lives in the first segment, which is parsed up front so later segments can be mapped
+            List<String[]> rows = parse(segments.get(0));
+            if (!rows.isEmpty()) {
+                state.header = HeaderIndex.of(rows.get(0));
+                toRecords(rows.subList(1, rows.size()), state.header).forEach(consumer);
+            }
+            first = 1;
+        }
+
+        HeaderIndex header = state.header;
+        List<ForkJoinTask<List<Map<String, String>>>> tasks = new ArrayList<>();
+        for (byte[] segment : segments.subList(first, segments.size())) {
+            if (ordered) {
+                tasks.add(parsePool.submit(() -> toRecords(parse(segment), header)));
+            } else {
+                tasks.add(parsePool.submit(() -> {
+                    toRecords(parse(segment), header).forEach(consumer);
+                    return Collections.emptyList();
+                }));
+            }
+        }
+        for (ForkJoinTask<List<Map<String, String>>> task : tasks) {
+            task.join().forEach(consumer);
+        }
+    }
+
+    private static List<Map<String, String>> toRecords(List<String[]> rows, HeaderIndex header) {
+        List<Map<String, String>> records = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            if (row.length != header.size()) {
+                throw new RuntimeException(String.format(
+                        "Csv record has %d values but the header has %d columns", row.length, header.size()));
+            }
+            if (CsvRecordIterator.isEmptyRow(row)) continue;
+
+            records.add(new IndexedRow(header, row).toMap());
+        }
+        return records;
+    }
+
+    private static List<String[]> parse(byte[] segment) {
+        CSVParser csvParser = new CSVParserBuilder()
+                .withIgnoreLeadingWhiteSpace(true)
+                .build();
+        InputStreamReader inputReader = new InputStreamReader(new ByteArrayInputStream(segment), StandardCharsets.UTF_8);
+
+        List<String[]> rows = new ArrayList<>();
+        try (CSVReader reader = new CSVReaderBuilder(inputReader).withCSVParser(csvParser).build()) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                rows.add(row);
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException("I/O exception occurred parsing csv range", e);
+        } catch (CsvValidationException e) {
+            throw new RuntimeException("Csv validation exception occurred parsing csv range", e);
+        }
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail, int from, int to) {
+        byte[] result = Arrays.copyOf(head, head.length + (to - from));
+        System.arraycopy(tail, from, result, head.length, to - from);
+        return result;
+    }
+
+    private byte[] getRange(String bucket, String key, String expectedBucketOwner, String eTag, long start, long end)
+            throws IOException {
+        GetObjectRequest request = new GetObjectRequest(bucket, key)
+                .withRange(start, end)
+                .withMatchingETagConstraint(eTag);
+
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        // A null object means the ETag constraint failed, i.e. the object changed while it was being read
+        S3Object s3Object = s3Client.getObject(request);
+        if (s3Object == null) {
+            throw new IllegalStateException(String.format("Object %s/%s changed while it was being read", bucket, key));
+        }
+        try {
+            return IOUtils.toByteArray(s3Object.getObjectContent());
+        } finally {
+            s3Object.close();
+        }
+    }
+
+    private ObjectMetadata getObjectMetadata(String bucket, String key, String expectedBucketOwner) {
+        GetObjectMetadataRequest request = new GetObjectMetadataRequest(bucket, key);
+
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        return s3Client.getObjectMetadata(request);
+    }
+
+    private static final class ReadState {
+        private byte[] carry = new byte[0];
+        private int parserState = CsvRecordBoundaryScanner.OUTSIDE_QUOTES;
+        private HeaderIndex header;
+    }
+}
@@ -0,0 +1,191 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.csv.CsvRecordProducer;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazonaws.services.s3.AmazonS3;
+import com.opencsv.CSVWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Writes large csv exports to S3, encoding the records on a fork-join pool. Records are cut into chunks of
+ * {@code chunkRows}, each chunk is quoted and encoded to UTF-8 by its own task, and the encoded chunks are handed to
+ * a multipart {@link S3CsvWriter} strictly in input order, so the object is byte for byte what {@link CsvWriter}
+ * would write. At most {@code window} chunks are encoding at once; the record source is not pulled any further
+ * until the oldest one has been written, which together with the writer's bounded part uploads keeps memory flat.
+ * Compression, when the key asks for it, runs on the calling thread over the ordered chunks.
+ */
+public class ParallelCsvWriter {
+    public static final int DEFAULT_CHUNK_ROWS = 10_000;
+
+    private final AmazonS3 s3Client;
+    private final ForkJoinPool encodePool;
+    private final int chunkRows;
+    private final int partSize;
+    private final int maxInFlightParts;
+    private final int window;
+
+    public ParallelCsvWriter(AmazonS3 s3Client) {
+        this(s3Client, ForkJoinPool.commonPool(), DEFAULT_CHUNK_ROWS);
+    }
+
+    public ParallelCsvWriter(AmazonS3 s3Client, ForkJoinPool encodePool, int chunkRows) {
+        this(s3Client, encodePool, chunkRows, S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
+    public ParallelCsvWriter(AmazonS3 s3Client, ForkJoinPool encodePool, int chunkRows, int partSize, int maxInFlightParts) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be positive");
+        }
+        this.s3Client = s3Client;
+        this.encodePool = encodePool;
+        this.chunkRows = chunkRows;
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.window = Math.max(2, encodePool.getParallelism() * 2);
+    }
+
+    /**
+     * Writes the records to S3 as csv. Keys ending in {@code .gz} or {@code .zst} are compressed accordingly.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, Iterator<String[]> records) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, toProducer(records), CsvCompression.fromKey(key));
+    }
+
+    /**
+     * Same as the iterator overload; the stream is closed once written.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, Stream<String[]> records) throws IOException {
+        try (Stream<String[]> stream = records) {
+            return writeRecordsToS3(bucket, key, expectedBucketOwner, toProducer(stream.iterator()), CsvCompression.fromKey(key));
+        }
+    }
+
+    public S3WriteResult writeRecordsToS3(String bucket, String key, String expectedBucketOwner, CsvRecordProducer producer) throws IOException {
+        return writeRecordsToS3(bucket, key, expectedBucketOwner, producer, CsvCompression.fromKey(key));
+    }
+
+    /**
+     * Writes the records handed to the producer's sink to S3 as csv. The sink only collects records into the
+     * current chunk; it blocks while {@code window} chunks are already waiting to be encoded and written. If the
+     * producer or an encoding task fails, the upload is aborted and no object is created.
+     */
+    public S3WriteResult writeRecordsToS3(String bucket,
+                                 String key,
+                                 String expectedBucketOwner,
+                                 CsvRecordProducer producer,
+                                 CsvCompression compression) throws IOException {
+        S3CsvWriter writer = new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, compression, partSize, maxInFlightParts);
+        ChunkPipeline pipeline = new ChunkPipeline(writer, bucket, key);
+        try {
+            producer.produce(pipeline::add);
+            pipeline.finish();
+        } catch (IOException | RuntimeException | Error e) {
+            pipeline.cancel();
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+        return writer.getWriteResult();
+    }
+
+    private static CsvRecordProducer toProducer(Iterator<String[]> records) {
+        return sink -> {
+            while (records.hasNext()) {
+                sink.accept(records.next());
+            }
+        };
+    }
+
+    /**
+     * Encodes a chunk exactly as a {@link CSVWriter} over the whole file would, quoting every value.
+     */
+    static byte[] encode(List<String[]> chunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.size() * 64);
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (String[] record : chunk) {
+                csvWriter.writeNext(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("I/O exception occurred encoding csv chunk", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Collects records into chunks on the producer's thread and keeps the encoding tasks in input order.
+     */
+    private final class ChunkPipeline {
+        private final S3CsvWriter writer;
+        private final String bucket;
+        private final String key;
+        private final Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+
+        private List<String[]> chunk = new ArrayList<>(chunkRows);
+
+        private ChunkPipeline(S3CsvWriter writer, String bucket, String key) {
+            this.writer = writer;
+            this.bucket = bucket;
+            this.key = key;
+        }
+
+        private void add(String[] record) throws IOException {
+            chunk.add(record);
+            if (chunk.size() == chunkRows) {
+                submit();
+            }
+        }
+
+        private void submit() throws IOException {
+            if (pending.size() == window) {
+                writeOldest();
+            }
+            List<String[]> records = chunk;
+            pending.addLast(encodePool.submit(() -> encode(records)));
+            chunk = new ArrayList<>(chunkRows);
+        }
+
+        private void finish() throws IOException {
+            if (!chunk.isEmpty()) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException {
+            ForkJoinTask<byte[]> task = pending.removeFirst();
+            try {
+                writer.appendEncoded(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted while encoding csv for bucket %s and key %s", bucket, key));
+            } catch (ExecutionException e) {
+                String errorMessage = String.format("Exception occurred encoding csv for bucket %s and key %s", bucket, key);
+                throw new RuntimeException(errorMessage, e.getCause());
+            }
+        }
+
+        private void cancel() {
+            pending.forEach(task -> task.cancel(true));
+            pending.clear();
+        }
+    }
+}
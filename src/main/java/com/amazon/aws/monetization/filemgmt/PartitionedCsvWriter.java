@@ -0,0 +1,262 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.model.CsvManifest;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazonaws.services.s3.AmazonS3;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Builder;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Splits one logical csv export into many S3 objects. Each record is routed to a partition by the optional
+ * partitioner, and every partition is written by its own multipart {@link S3CsvWriter}; a file is completed and the
+ * next one started once it reaches {@code maxRowsPerFile} rows or about {@code maxBytesPerFile} bytes. Keys are
+ * {@code <keyPrefix>[<partition>/]part-00000.csv[.gz|.zst]}, and every file starts with the header when one is
+ * given. The part uploads of all open files share one pool of {@code uploadThreads} threads. Bytes are counted as
+ * the encoder flushes them, so a file can pass {@code maxBytesPerFile} by up to the encoder's buffer, about 8 KB.
+ *
+ * Every open file buffers up to one part, so with many partitions open at once a small part size keeps memory down.
+ * {@link #close()} completes the open files and {@link #getManifest()} then lists every file written. If a write
+ * fails the open files are aborted; files that were already completed stay in S3 and in the manifest.
+ */
+public class PartitionedCsvWriter implements Closeable {
+    public static final int DEFAULT_UPLOAD_THREADS = 8;
+
+    private final AmazonS3 s3Client;
+    private final String bucket;
+    private final String keyPrefix;
+    private final String expectedBucketOwner;
+    private final String[] header;
+    private final Function<String[], String> partitioner;
+    private final long maxRowsPerFile;
+    private final long maxBytesPerFile;
+    private final CsvCompression compression;
+    private final int partSize;
+    private final int maxInFlightParts;
+    private final int uploadThreads;
+
+    private final ExecutorService uploadPool;
+    private final Map<String, Shard> openShards = new LinkedHashMap<>();
+    private final Map<String, Integer> fileCounts = new HashMap<>();
+    private final List<CsvManifest.Entry> completed = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param keyPrefix       prefix of every key written, e.g. {@code exports/2024-01-01/}
+     * @param header          written as the first line of every file, or null for none
+     * @param partitioner     returns the partition of a record, or null to write a single partition
+     * @param maxRowsPerFile  rows per file before rolling to the next one, or 0 for no limit
+     * @param maxBytesPerFile approximate object size before rolling to the next file, or 0 for no limit
+     * @param compression     the codec of every file, defaults to none
+     * @param partSize        the multipart part size, defaults to {@link S3MultipartOutputStream#DEFAULT_PART_SIZE}
+     * @param maxInFlightParts parts each file may have uploading at once
+     * @param uploadThreads   threads shared by the part uploads of all files, defaults to {@link #DEFAULT_UPLOAD_THREADS}
+     */
+    @Builder
+    private PartitionedCsvWriter(@NonNull AmazonS3 s3Client,
+                                 @NonNull String bucket,
+                                 @NonNull String keyPrefix,
+                                 String expectedBucketOwner,
+                                 String[] header,
+                                 Function<String[], String> partitioner,
+                                 long maxRowsPerFile,
+                                 long maxBytesPerFile,
+                                 CsvCompression compression,
+                                 int partSize,
+                                 int maxInFlightParts,
+                                 int uploadThreads) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+        this.expectedBucketOwner = expectedBucketOwner;
+        this.header = header;
+        this.partitioner = partitioner;
+        this.maxRowsPerFile = maxRowsPerFile;
+        this.maxBytesPerFile = maxBytesPerFile;
+        this.compression = compression == null ? CsvCompression.NONE : compression;
+        this.partSize = partSize > 0 ? partSize : S3MultipartOutputStream.DEFAULT_PART_SIZE;
+        this.maxInFlightParts = maxInFlightParts > 0 ? maxInFlightParts : S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS;
+        this.uploadThreads = uploadThreads > 0 ? uploadThreads : DEFAULT_UPLOAD_THREADS;
+        this.uploadPool = Executors.newFixedThreadPool(this.uploadThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("partitioned-csv-upload-%d").build());
+    }
+
+    /**
+     * Partitions records by the value of a column, as {@code <column>=<value>}. Slashes in values are replaced and
+     * empty values go to {@code <column>=_empty_}.
+     */
+    public static Function<String[], String> byColumn(String[] header, String column) {
+        int index = columnIndex(header, column);
+        return record -> column + "=" + toPathSegment(index < record.length ? record[index] : null);
+    }
+
+    /**
+     * Spreads records over a fixed number of shards by the hash of a column, as {@code shard=007}. Records with the
+     * same value always land in the same shard.
+     */
+    public static Function<String[], String> byHash(String[] header, String column, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        int index = columnIndex(header, column);
+        return record -> {
+            String value = index < record.length ? record[index] : null;
+            return String.format("shard=%03d", Math.floorMod(value == null ? 0 : value.hashCode(), shards));
+        };
+    }
+
+    public synchronized void append(String[] record) throws IOException {
+        if (closed) {
+            throw new IOException(String.format("Partitioned csv writer for bucket %s and prefix %s is closed", bucket, keyPrefix));
+        }
+        String partition = partitioner == null ? "" : partitioner.apply(record);
+        Shard shard = openShards.get(partition);
+        try {
+            if (shard == null) {
+                shard = openShard(partition);
+            }
+            shard.writer.append(record);
+            shard.rows++;
+
+            if ((maxRowsPerFile > 0 && shard.rows >= maxRowsPerFile)
+                    || (maxBytesPerFile > 0 && shard.writer.getBytesWritten() >= maxBytesPerFile)) {
+                openShards.remove(partition);
+                completeShard(shard);
+            }
+        } catch (IOException | RuntimeException e) {
+            abortOpenShards();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes every open file concurrently. Closing again does nothing.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        List<Shard> shards = new ArrayList<>(openShards.values());
+        openShards.clear();
+
+        // Completing a file waits on its last part, so the files are completed on their own threads
+        ExecutorService closePool = Executors.newFixedThreadPool(Math.max(1, Math.min(shards.size(), uploadThreads)));
+        try {
+            List<Future<CsvManifest.Entry>> closing = new ArrayList<>();
+            for (Shard shard : shards) {
+                closing.add(closePool.submit(() -> {
+                    shard.writer.close();
+                    return shard.toEntry();
+                }));
+            }
+
+            IOException failure = null;
+            for (int i = 0; i < closing.size(); i++) {
+                try {
+                    completed.add(closing.get(i).get());
+                } catch (ExecutionException e) {
+                    shards.get(i).writer.abort();
+                    IOException cause = new IOException(String.format("Unable to complete %s in bucket %s", shards.get(i).key, bucket), e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    shards.forEach(shard -> shard.writer.abort());
+                    throw new InterruptedIOException(String.format("Interrupted completing csv files for bucket %s and prefix %s", bucket, keyPrefix));
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            closePool.shutdownNow();
+            uploadPool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the files completed so far; after {@link #close()} every file of the export
+     */
+    public synchronized CsvManifest getManifest() {
+        return new CsvManifest(bucket, completed);
+    }
+
+    private Shard openShard(String partition) throws IOException {
+        int file = fileCounts.merge(partition, 1, Integer::sum) - 1;
+        String key = String.format("%s%spart-%05d.csv%s",
+                keyPrefix, partition.isEmpty() ? "" : partition + "/", file, compression.getSuffix());
+
+        Shard shard = new Shard(key, partition,
+                new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, compression, partSize, maxInFlightParts, uploadPool));
+        openShards.put(partition, shard);
+        if (header != null) {
+            shard.writer.append(header);
+        }
+        return shard;
+    }
+
+    private void completeShard(Shard shard) throws IOException {
+        shard.writer.close();
+        completed.add(shard.toEntry());
+    }
+
+    private void abortOpenShards() {
+        closed = true;
+        openShards.values().forEach(shard -> shard.writer.abort());
+        openShards.clear();
+        uploadPool.shutdownNow();
+    }
+
+    private static int columnIndex(String[] header, String column) {
+        int index = HeaderIndex.of(header).indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException(String.format("Partition column %s is not in the header", column));
+        }
+        return index;
+    }
+
+    private static String toPathSegment(String value) {
+        if (value == null || value.isEmpty()) {
+            return "_empty_";
+        }
+        return value.replace('/', '_');
+    }
+
+    private static final class Shard {
+        private final String key;
+        private final String partition;
+        private final S3CsvWriter writer;
+        private long rows;
+
+        private Shard(String key, String partition, S3CsvWriter writer) {
+            this.key = key;
+            this.partition = partition;
+            this.writer = writer;
+        }
+
+        private CsvManifest.Entry toEntry() {
+            return new CsvManifest.Entry(key, partition, rows, writer.getBytesWritten());
+        }
+    }
+}
@@ -1,21 +1,42 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.AsyncUploadExecutor;
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazon.aws.monetization.filemgmt.utils.ChecksumOutputStream;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazon.aws.monetization.filemgmt.utils.StagingBuffer;
+import com.amazon.aws.monetization.filemgmt.utils.StagingMemoryBudget;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import com.opencsv.CSVWriter;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
-public class S3CsvWriter {
+public class S3CsvWriter implements Closeable {
     private final AmazonS3 s3Client;
     private final ByteArrayOutputStream stream;
+    private final S3MultipartOutputStream multipartStream;
+    private final StagingBuffer staging;
+    private final ChecksumOutputStream checksumStream;
+    private S3WriteResult writeResult;
 
     private final CSVWriter writer;
+    private final OutputStream encodedStream;
     private final OutputStreamWriter streamWriter;
+    private boolean pendingRows;
 
     private final String bucket;
 
@@ -23,48 +44,274 @@ public class S3CsvWriter {
 
     private final String expectedBucketOwner;
 
+    private final CsvCompression compression;
 
+    /**
+     * Keys ending in {@code .gz} or {@code .zst} are compressed accordingly.
+     */
     public S3CsvWriter(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) {
+        this(s3Client, bucket, key, expectedBucketOwner, CsvCompression.fromKey(key));
+    }
+
+    /**
+     * Compresses rows with the given codec as they are appended. With a compressing codec {@link #write()}
+     * finishes the compressed frame, so no rows can be appended afterwards.
+     */
+    public S3CsvWriter(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner, CsvCompression compression) {
         this.bucket = bucket;
         this.key = key;
         this.expectedBucketOwner = expectedBucketOwner;
         this.s3Client = s3Client;
+        this.compression = compression;
 
         this.stream = new ByteArrayOutputStream();
-        this.streamWriter = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        this.multipartStream = null;
+        this.staging = null;
+        this.checksumStream = new ChecksumOutputStream(stream);
+        this.encodedStream = newEncodedStream(checksumStream);
+        this.streamWriter = new OutputStreamWriter(encodedStream, StandardCharsets.UTF_8);
+        this.writer = new CSVWriter(streamWriter);
+    }
+
+    /**
+     * Staged mode: rows are buffered in direct memory chunks from the given budget instead of on the heap, and in a
+     * temp file once the budget is used up, then uploaded with a single put by {@link #write()}. The staged bytes
+     * are released by {@link #write()}, so no rows can be appended afterwards; call {@link #close()} to release
+     * them if the writer is abandoned.
+     *
+     * @param stagingBudget the direct memory budget, usually {@link StagingMemoryBudget#getDefault()} which is shared
+     *                      by every writer in the process
+     */
+    public S3CsvWriter(AmazonS3 s3Client,
+                       String bucket,
+                       String key,
+                       String expectedBucketOwner,
+                       CsvCompression compression,
+                       StagingMemoryBudget stagingBudget) {
+        this.bucket = bucket;
+        this.key = key;
+        this.expectedBucketOwner = expectedBucketOwner;
+        this.s3Client = s3Client;
+        this.compression = compression;
+
+        this.stream = null;
+        this.multipartStream = null;
+        this.staging = new StagingBuffer(stagingBudget);
+        this.checksumStream = new ChecksumOutputStream(staging);
+        this.encodedStream = newEncodedStream(checksumStream);
+        this.streamWriter = new OutputStreamWriter(encodedStream, StandardCharsets.UTF_8);
+        this.writer = new CSVWriter(streamWriter);
+    }
+
+    /**
+     * Multipart mode: rows are uploaded with an S3 multipart upload as they are appended, in parts of
+     * {@code partSize} bytes, while later rows are still being encoded. At most {@code maxInFlightParts} parts are
+     * held in memory, whatever the size of the file. The upload is completed by {@link #write()} or
+     * {@link #close()}, and aborted if any part fails.
+     *
+     * @param partSize         the multipart part size, at least {@link S3MultipartOutputStream#MIN_PART_SIZE}
+     * @param maxInFlightParts how many parts may upload at once before {@link #append(String[])} blocks
+     */
+    public S3CsvWriter(AmazonS3 s3Client,
+                       String bucket,
+                       String key,
+                       String expectedBucketOwner,
+                       CsvCompression compression,
+                       int partSize,
+                       int maxInFlightParts) {
+        this(s3Client, bucket, key, expectedBucketOwner, compression, partSize, maxInFlightParts, null);
+    }
+
+    /**
+     * Multipart mode with the part uploads run on the given pool, so that many writers can share a bounded number
+     * of upload threads. The pool is not shut down by the writer.
+     */
+    public S3CsvWriter(AmazonS3 s3Client,
+                       String bucket,
+                       String key,
+                       String expectedBucketOwner,
+                       CsvCompression compression,
+                       int partSize,
+                       int maxInFlightParts,
+                       ExecutorService uploadPool) {
+        this.bucket = bucket;
+        this.key = key;
+        this.expectedBucketOwner = expectedBucketOwner;
+        this.s3Client = s3Client;
+        this.compression = compression;
+
+        // Retrieve s3 bucket SSE-KMS configuration up front, the upload starts with the first full part
+        BucketEncryptionCache.BucketEncryption encryption = BucketEncryptionCache.getDefault().get(s3Client, bucket);
+        ObjectMetadata meta = new ObjectMetadata();
+        meta.setSSEAlgorithm(encryption.getSseAlgorithm());
+        if (compression.getContentEncoding() != null) {
+            meta.setContentEncoding(compression.getContentEncoding());
+        }
+
+        this.stream = null;
+        this.staging = null;
+        this.checksumStream = null;
+        this.multipartStream = new S3MultipartOutputStream(s3Client, bucket, key, expectedBucketOwner, meta,
+                encryption.getKmsMasterKeyId(), partSize, maxInFlightParts, uploadPool);
+        this.encodedStream = newEncodedStream(multipartStream);
+        this.streamWriter = new OutputStreamWriter(encodedStream, StandardCharsets.UTF_8);
         this.writer = new CSVWriter(streamWriter);
     }
 
+    /**
+     * Multipart mode with the default part size and number of parts in flight.
+     */
+    public static S3CsvWriter multipart(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) {
+        return new S3CsvWriter(s3Client, bucket, key, expectedBucketOwner, CsvCompression.fromKey(key),
+                S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
     public void append(String[] nextLine) throws IOException {
+        pendingRows = true;
         writer.writeNext(nextLine);
+        // CSVWriter keeps I/O errors to itself, which is where a failed part upload surfaces in multipart mode
+        if (writer.getException() != null) {
+            throw writer.getException();
+        }
     }
 
-    public void write() throws IOException {
-        writer.flush();
+    /**
+     * Appends rows that were already encoded as UTF-8 csv, e.g. by a {@link ParallelCsvWriter} encoding task.
+     * The bytes still go through the writer's compression and upload, after any rows appended before them.
+     */
+    void appendEncoded(byte[] csv) throws IOException {
+        if (pendingRows) {
+            // Only flush when needed, a flush also ends the current compressed block
+            writer.flush();
+            pendingRows = false;
+        }
+        encodedStream.write(csv);
+    }
 
-        GetBucketEncryptionResult getBucketEncryptionResult = this.s3Client.getBucketEncryption(bucket);
-        ServerSideEncryptionByDefault serverSideEncryptionByDefault =
-                getBucketEncryptionResult.getServerSideEncryptionConfiguration().getRules().get(0).getApplyServerSideEncryptionByDefault();
-        String algorithm = serverSideEncryptionByDefault.getSSEAlgorithm();
-        String kmsMasterKeyId = serverSideEncryptionByDefault.getKMSMasterKeyID();
+    /**
+     * Uploads the appended rows. In multipart mode this completes the upload, same as {@link #close()}.
+     *
+     * @return the object written, with the checksums its bytes were sent with
+     */
+    public S3WriteResult write() throws IOException {
+        if (multipartStream != null) {
+            close();
+            return writeResult;
+        }
 
+        if (compression == CsvCompression.NONE && staging == null) {
+            writer.flush();
+        } else {
+            writer.close();
+        }
+
+        BucketEncryptionCache.BucketEncryption encryption = BucketEncryptionCache.getDefault().get(s3Client, bucket);
+        String algorithm = encryption.getSseAlgorithm();
+        String kmsMasterKeyId = encryption.getKmsMasterKeyId();
+
+        // Checksummed while the rows were encoded, S3 verifies the bytes against the MD5
         ObjectMetadata meta = new ObjectMetadata();
-        meta.setContentLength(stream.toByteArray().length);
+        meta.setContentLength(staging != null ? staging.size() : stream.size());
+        meta.setContentMD5(checksumStream.getChecksum().getContentMd5());
         meta.setSSEAlgorithm(algorithm);
+        if (compression.getContentEncoding() != null) {
+            meta.setContentEncoding(compression.getContentEncoding());
+        }
+
+        try (InputStream content = staging != null ? staging.openInputStream() : new ByteArrayInputStream(stream.toByteArray())) {
+            PutObjectRequest putObjectRequest = new PutObjectRequest(
+                    bucket,
+                    key,
+                    content,
+                    meta
+            );
+
+            if(null != expectedBucketOwner) {
+                putObjectRequest.setExpectedBucketOwner(expectedBucketOwner);
+            }
+
+            putObjectRequest.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsMasterKeyId));
+
+            PutObjectResult result = this.s3Client.putObject(putObjectRequest);
+            writeResult = new S3WriteResult(bucket, key, result == null ? null : result.getETag(), meta.getContentLength(),
+                    meta.getContentMD5(), checksumStream.getChecksum().getCrc32c(), Collections.emptyList());
+            return writeResult;
+        } finally {
+            if (staging != null) {
+                staging.release();
+            }
+        }
+    }
 
-        PutObjectRequest putObjectRequest = new PutObjectRequest(
-                bucket,
-                key,
-                new ByteArrayInputStream(stream.toByteArray()),
-                meta
-        );
+    /**
+     * Runs {@link #write()} on the default {@link AsyncUploadExecutor}. No rows may be appended once called.
+     */
+    public CompletableFuture<S3WriteResult> writeAsync() {
+        return writeAsync(AsyncUploadExecutor.getDefault());
+    }
+
+    public CompletableFuture<S3WriteResult> writeAsync(AsyncUploadExecutor asyncExecutor) {
+        return asyncExecutor.submit(this::write);
+    }
 
-        if(null != expectedBucketOwner) {
-            putObjectRequest.setExpectedBucketOwner(expectedBucketOwner);
+    /**
+     * In multipart mode, uploads the remaining rows and completes the upload. Otherwise only releases the writer,
+     * rows that were not sent with {@link #write()} are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+            if (multipartStream != null) {
+                writeResult = multipartStream.getWriteResult();
+            }
+        } catch (IOException e) {
+            if (multipartStream != null) {
+                multipartStream.abort();
+            }
+            throw e;
+        } finally {
+            if (staging != null) {
+                staging.release();
+            }
         }
+    }
 
-        putObjectRequest.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsMasterKeyId));
+    /**
+     * @return the result of the last {@link #write()}, or in multipart mode of {@link #close()}; null before that
+     */
+    public S3WriteResult getWriteResult() {
+        return writeResult;
+    }
 
-        this.s3Client.putObject(putObjectRequest);
+    /**
+     * @return the bytes buffered or handed to S3 so far, after compression. Rows still buffered by the encoder are
+     * not counted until the writer is written or closed, at which point this is the size of the object.
+     */
+    public long getBytesWritten() {
+        if (multipartStream != null) {
+            return multipartStream.getBytesWritten();
+        }
+        return staging != null ? staging.size() : stream.size();
+    }
+
+    /**
+     * Drops the appended rows; in multipart mode the upload is aborted and no object is created.
+     */
+    public void abort() {
+        if (multipartStream != null) {
+            multipartStream.abort();
+        }
+        if (staging != null) {
+            staging.release();
+        }
+    }
+
+    private OutputStream newEncodedStream(OutputStream out) {
+        try {
+            return compression.encode(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to create %s encoder for key %s", compression, key), e);
+        }
     }
 }
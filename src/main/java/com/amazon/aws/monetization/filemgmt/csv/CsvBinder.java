@@ -0,0 +1,384 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Binds csv records to instances of a plain class with a no-arg constructor, or of a record.
+ *
+ * Fields annotated with {@link CsvColumn} are bound to the named column; a class without any annotated field has
+ * every non static, non final field bound by name to an optional column. Reflection only happens once per class,
+ * when the binder is built: fields are turned into method handles, and {@link #bind(HeaderIndex)} resolves column
+ * names to indexes once per file. The per record path is then a constructor call plus one typed setter per field,
+ * and {@code int}, {@code long} and {@code double} fields are parsed through {@link CsvCursor#getInt(int)} and
+ * friends without boxing or, with {@link CsvEngine#UTF8_BYTES}, building a {@code String}.
+ *
+ * Records are built through their canonical constructor instead, with the same rules applied to their components:
+ * the values are collected into an argument array, so primitive components are boxed on the way.
+ *
+ * Supported field types are {@code String}, {@code int}, {@code long}, {@code double}, {@code boolean} and their
+ * wrappers, {@link BigDecimal}, {@link LocalDate}, {@link LocalDateTime} and enums. Blank fields leave the field
+ * at its default value.
+ *
+ * @param <T> the bound type
+ */
+public final class CsvBinder<T> {
+    private static final ConcurrentMap<Class<?>, CsvBinder<?>> BINDERS = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final List<Property> properties;
+    /**
+     * The arguments of the canonical constructor of a record before any column is bound, or null for a class.
+     */
+    private final Object[] defaults;
+
+    private CsvBinder(Class<T> type) {
+        this.type = type;
+        if (type.isRecord()) {
+            this.constructor = findCanonicalConstructor(type);
+            this.properties = findComponents(type);
+            this.defaults = defaultArguments(type);
+        } else {
+            this.constructor = findConstructor(type);
+            this.properties = findProperties(type);
+            this.defaults = null;
+        }
+    }
+
+    /**
+     * @return the cached binder for the type
+     * @throws IllegalArgumentException if the type is not a record and has no no-arg constructor, or a field type is
+     *                                  not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CsvBinder<T> of(Class<T> type) {
+        return (CsvBinder<T>) BINDERS.computeIfAbsent(type, CsvBinder::new);
+    }
+
+    /**
+     * Resolves the bound columns against a header.
+     * @throws IllegalArgumentException if a required column is missing from the header
+     */
+    public CsvRecordMapper<T> bind(HeaderIndex header) {
+        List<String> missing = new ArrayList<>();
+        List<Property> bound = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (Property property : properties) {
+            int index = header.indexOf(property.column);
+            if (index >= 0) {
+                bound.add(property);
+                indexes.add(index);
+            } else if (property.required) {
+                missing.add(property.column);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException(String.format(
+                    "Columns %s required by %s are not present in the header", missing, type.getName()));
+        }
+
+        Setter[] setters = new Setter[bound.size()];
+        int[] columnIndexes = new int[bound.size()];
+        for (int i = 0; i < setters.length; i++) {
+            setters[i] = bound.get(i).setter;
+            columnIndexes[i] = indexes.get(i);
+        }
+        return cursor -> map(cursor, setters, columnIndexes);
+    }
+
+    private T map(CsvCursor cursor, Setter[] setters, int[] columnIndexes) {
+        Object target;
+        if (defaults != null) {
+            // A record: the setters fill in the constructor arguments
+            target = defaults.clone();
+        } else {
+            try {
+                target = (Object) constructor.invokeExact();
+            } catch (Throwable e) {
+                throw new RuntimeException(String.format("Unable to create an instance of %s", type.getName()), e);
+            }
+        }
+
+        for (int i = 0; i < setters.length; i++) {
+            int index = columnIndexes[i];
+            if (cursor.isBlank(index)) continue;
+
+            try {
+                setters[i].set(target, cursor, index);
+            } catch (Throwable e) {
+                throw new RuntimeException(String.format("Unable to bind column %d of csv record %d to %s: %s",
+                        index, cursor.getRecordNumber(), type.getName(), e.getMessage()), e);
+            }
+        }
+        if (defaults != null) {
+            try {
+                target = (Object) constructor.invokeExact((Object[]) target);
+            } catch (Throwable e) {
+                throw new RuntimeException(String.format("Unable to create an instance of %s from csv record %d",
+                        type.getName(), cursor.getRecordNumber()), e);
+            }
+        }
+        return type.cast(target);
+    }
+
+    private static MethodHandle findConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException(String.format("%s has no accessible no-arg constructor", type.getName()), e);
+        }
+    }
+
+    private static MethodHandle findCanonicalConstructor(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            parameterTypes[i] = components[i].getType();
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException(String.format("%s has no accessible canonical constructor", type.getName()), e);
+        }
+    }
+
+    private static Object[] defaultArguments(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        Object[] defaults = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            Class<?> componentType = components[i].getType();
+            // The zero value of primitives, null otherwise
+            defaults[i] = componentType.isPrimitive() ? Array.get(Array.newInstance(componentType, 1), 0) : null;
+        }
+        return defaults;
+    }
+
+    /**
+     * Binds the components of a record the way {@link #findProperties(Class)} binds fields. Annotations on a
+     * component are found on its private field.
+     */
+    private static List<Property> findComponents(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        List<Field> fields = new ArrayList<>();
+        boolean annotated = false;
+        for (RecordComponent component : components) {
+            Field field;
+            try {
+                field = type.getDeclaredField(component.getName());
+            } catch (NoSuchFieldException e) {
+                throw new IllegalArgumentException(String.format("Record component %s.%s has no field",
+                        type.getName(), component.getName()), e);
+            }
+            fields.add(field);
+            annotated |= field.isAnnotationPresent(CsvColumn.class);
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (int position = 0; position < fields.size(); position++) {
+            Field field = fields.get(position);
+            CsvColumn column = field.getAnnotation(CsvColumn.class);
+            if (annotated && column == null) continue;
+
+            String name = column == null || column.value().isEmpty() ? field.getName() : column.value();
+            String format = column == null ? "" : column.format();
+            boolean required = column != null && column.required();
+            ValueReader reader = toReader(field, format);
+            int argument = position;
+            properties.add(new Property(name, required, (target, cursor, index) -> {
+                ((Object[]) target)[argument] = reader.read(cursor, index);
+            }));
+        }
+        return properties;
+    }
+
+    private static List<Property> findProperties(Class<?> type) {
+        List<Field> annotated = new ArrayList<>();
+        List<Field> plain = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || field.isSynthetic()) continue;
+
+                if (field.isAnnotationPresent(CsvColumn.class)) {
+                    if (Modifier.isFinal(modifiers)) {
+                        throw new IllegalArgumentException(String.format("Csv column field %s.%s must not be final",
+                                c.getName(), field.getName()));
+                    }
+                    annotated.add(field);
+                } else if (!Modifier.isFinal(modifiers) && !Modifier.isTransient(modifiers)) {
+                    plain.add(field);
+                }
+            }
+        }
+
+        List<Property> properties = new ArrayList<>();
+        for (Field field : annotated.isEmpty() ? plain : annotated) {
+            CsvColumn column = field.getAnnotation(CsvColumn.class);
+            String name = column == null || column.value().isEmpty() ? field.getName() : column.value();
+            String format = column == null ? "" : column.format();
+            boolean required = column != null && column.required();
+            properties.add(new Property(name, required, toSetter(field, format)));
+        }
+        return properties;
+    }
+
+    private static Setter toSetter(Field field, String format) {
+        MethodHandle handle;
+        try {
+            field.setAccessible(true);
+            handle = MethodHandles.lookup().unreflectSetter(field);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException(String.format("Field %s.%s is not accessible",
+                    field.getDeclaringClass().getName(), field.getName()), e);
+        }
+
+        Class<?> fieldType = field.getType();
+        if (fieldType == int.class) {
+            MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, cursor.getInt(index));
+            };
+        }
+        if (fieldType == long.class) {
+            MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, cursor.getLong(index));
+            };
+        }
+        if (fieldType == double.class) {
+            MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, cursor.getDouble(index));
+            };
+        }
+        if (fieldType == boolean.class) {
+            MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, Boolean.parseBoolean(cursor.getField(index).trim()));
+            };
+        }
+
+        MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        if (fieldType == String.class) {
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, (Object) cursor.getField(index));
+            };
+        }
+        if (fieldType == Integer.class) {
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, (Object) cursor.getInt(index));
+            };
+        }
+        if (fieldType == Long.class) {
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, (Object) cursor.getLong(index));
+            };
+        }
+        if (fieldType == Double.class) {
+            return (target, cursor, index) -> {
+                setter.invokeExact(target, (Object) cursor.getDouble(index));
+            };
+        }
+
+        Function<String, Object> converter = toConverter(field, fieldType, format);
+        return (target, cursor, index) -> {
+            setter.invokeExact(target, converter.apply(cursor.getField(index).trim()));
+        };
+    }
+
+    /**
+     * @return a reader of the boxed value of a record component, parsed the same way as {@link #toSetter}
+     */
+    private static ValueReader toReader(Field field, String format) {
+        Class<?> fieldType = field.getType();
+        if (fieldType == int.class || fieldType == Integer.class) {
+            return CsvCursor::getInt;
+        }
+        if (fieldType == long.class || fieldType == Long.class) {
+            return CsvCursor::getLong;
+        }
+        if (fieldType == double.class || fieldType == Double.class) {
+            return CsvCursor::getDouble;
+        }
+        if (fieldType == boolean.class) {
+            return (cursor, index) -> Boolean.parseBoolean(cursor.getField(index).trim());
+        }
+        if (fieldType == String.class) {
+            return CsvCursor::getField;
+        }
+
+        Function<String, Object> converter = toConverter(field, fieldType, format);
+        return (cursor, index) -> converter.apply(cursor.getField(index).trim());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<String, Object> toConverter(Field field, Class<?> fieldType, String format) {
+        if (fieldType == Boolean.class) {
+            return Boolean::valueOf;
+        }
+        if (fieldType == BigDecimal.class) {
+            return BigDecimal::new;
+        }
+        if (fieldType == LocalDate.class) {
+            DateTimeFormatter formatter = format.isEmpty() ? DateTimeFormatter.ISO_LOCAL_DATE : DateTimeFormatter.ofPattern(format);
+            return value -> LocalDate.parse(value, formatter);
+        }
+        if (fieldType == LocalDateTime.class) {
+            DateTimeFormatter formatter = format.isEmpty() ? DateTimeFormatter.ISO_LOCAL_DATE_TIME : DateTimeFormatter.ofPattern(format);
+            return value -> LocalDateTime.parse(value, formatter);
+        }
+        if (fieldType.isEnum()) {
+            Class<? extends Enum> enumType = fieldType.asSubclass(Enum.class);
+            return value -> Enum.valueOf(enumType, value);
+        }
+        throw new IllegalArgumentException(String.format("Field %s.%s has unsupported type %s",
+                field.getDeclaringClass().getName(), field.getName(), fieldType.getName()));
+    }
+
+    @FunctionalInterface
+    private interface Setter {
+        void set(Object target, CsvCursor cursor, int index) throws Throwable;
+    }
+
+    @FunctionalInterface
+    private interface ValueReader {
+        Object read(CsvCursor cursor, int index) throws Throwable;
+    }
+
+    private static final class Property {
+        private final String column;
+        private final boolean required;
+        private final Setter setter;
+
+        private Property(String column, boolean required, Setter setter) {
+            this.column = column;
+            this.required = required;
+            this.setter = setter;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Position in a csv object just past a record, from which a read can be resumed with a ranged GET.
+ * The ETag pins the resumed read to the same version of the object. Checkpoints are serializable so long
+ * running ingests can persist them between attempts.
+ */
+public final class CsvCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String bucket;
+    private final String key;
+    private final String eTag;
+    private final long offset;
+    private final long recordNumber;
+    private final List<String> header;
+
+    /**
+     * @param offset the byte offset of the first record after the checkpoint
+     * @param recordNumber the number of records, header included, before the offset
+     * @param header the column names, or null when the header has not been read yet
+     */
+    public CsvCheckpoint(String bucket, String key, String eTag, long offset, long recordNumber, List<String> header) {
+        this.bucket = bucket;
+        this.key = key;
+        this.eTag = eTag;
+        this.offset = offset;
+        this.recordNumber = recordNumber;
+        this.header = header == null ? null : Collections.unmodifiableList(new ArrayList<>(header));
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    public List<String> getHeader() {
+        return header;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CsvCheckpoint)) return false;
+        CsvCheckpoint that = (CsvCheckpoint) o;
+        return offset == that.offset
+                && recordNumber == that.recordNumber
+                && Objects.equals(bucket, that.bucket)
+                && Objects.equals(key, that.key)
+                && Objects.equals(eTag, that.eTag)
+                && Objects.equals(header, that.header);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucket, key, eTag, offset, recordNumber, header);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CsvCheckpoint{%s/%s, eTag=%s, offset=%d, recordNumber=%d}",
+                bucket, key, eTag, offset, recordNumber);
+    }
+}
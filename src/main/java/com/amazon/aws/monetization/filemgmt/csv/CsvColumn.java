@@ -0,0 +1,29 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a field to a csv column for {@link CsvBinder}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CsvColumn {
+
+    /**
+     * @return the column name in the header, defaults to the field name
+     */
+    String value() default "";
+
+    /**
+     * @return the {@link java.time.format.DateTimeFormatter} pattern for date fields, defaults to ISO
+     */
+    String format() default "";
+
+    /**
+     * @return whether the column must be present in the header
+     */
+    boolean required() default true;
+}
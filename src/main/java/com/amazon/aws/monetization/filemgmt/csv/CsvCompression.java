@@ -0,0 +1,137 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming compression codecs for csv objects. A codec is picked from the {@code Content-Encoding} of an object
+ * or, failing that, from the suffix of its key, and is applied as a stream stage so the payload is never held
+ * uncompressed in a single buffer. Zstandard needs the optional {@code com.github.luben:zstd-jni} dependency,
+ * which is only loaded once a zstd object is actually read or written.
+ */
+public enum CsvCompression {
+    NONE(null, null) {
+        @Override
+        public InputStream decode(InputStream inputStream) {
+            return inputStream;
+        }
+
+        @Override
+        public OutputStream encode(OutputStream outputStream) {
+            return outputStream;
+        }
+    },
+    GZIP(".gz", "gzip") {
+        @Override
+        public InputStream decode(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream outputStream) throws IOException {
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+    },
+    ZSTD(".zst", "zstd") {
+        @Override
+        public InputStream decode(InputStream inputStream) throws IOException {
+            try {
+                return ZstdCodec.decode(inputStream);
+            } catch (NoClassDefFoundError e) {
+                throw new IllegalStateException("zstd-jni is required to read zstd compressed csv", e);
+            }
+        }
+
+        @Override
+        public OutputStream encode(OutputStream outputStream) throws IOException {
+            try {
+                return ZstdCodec.encode(outputStream);
+            } catch (NoClassDefFoundError e) {
+                throw new IllegalStateException("zstd-jni is required to write zstd compressed csv", e);
+            }
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String suffix;
+    private final String contentEncoding;
+
+    CsvCompression(String suffix, String contentEncoding) {
+        this.suffix = suffix;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Wraps a compressed stream so that reading it yields the decompressed bytes.
+     */
+    public abstract InputStream decode(InputStream inputStream) throws IOException;
+
+    /**
+     * Wraps a stream so that bytes written to it are compressed. Closing the returned stream finishes the
+     * compressed frame and closes the wrapped stream.
+     */
+    public abstract OutputStream encode(OutputStream outputStream) throws IOException;
+
+    /**
+     * @return the key suffix of objects written with this codec, e.g. {@code .gz}, or an empty string when uncompressed
+     */
+    public String getSuffix() {
+        return suffix == null ? "" : suffix;
+    }
+
+    /**
+     * @return the {@code Content-Encoding} value for objects written with this codec, or null when uncompressed
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return the codec matching the key suffix, e.g. {@code .csv.gz}, or {@link #NONE}
+     */
+    public static CsvCompression fromKey(String key) {
+        String lowerKey = key == null ? "" : key.toLowerCase(Locale.ROOT);
+        for (CsvCompression compression : values()) {
+            if (compression.suffix != null && lowerKey.endsWith(compression.suffix)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Picks the codec of an object, preferring its {@code Content-Encoding} over its key suffix.
+     * @param contentEncoding the content encoding of the object, may be null
+     */
+    public static CsvCompression detect(String key, String contentEncoding) {
+        if (contentEncoding != null) {
+            for (String encoding : contentEncoding.split(",")) {
+                String trimmed = encoding.trim().toLowerCase(Locale.ROOT);
+                for (CsvCompression compression : values()) {
+                    if (trimmed.equals(compression.contentEncoding)) {
+                        return compression;
+                    }
+                }
+            }
+        }
+        return fromKey(key);
+    }
+
+    /**
+     * Keeps the zstd-jni classes out of {@link CsvCompression}, so they are only resolved when zstd is used.
+     */
+    private static final class ZstdCodec {
+        private static InputStream decode(InputStream inputStream) throws IOException {
+            return new com.github.luben.zstd.ZstdInputStream(inputStream);
+        }
+
+        private static OutputStream encode(OutputStream outputStream) throws IOException {
+            return new com.github.luben.zstd.ZstdOutputStream(outputStream);
+        }
+    }
+}
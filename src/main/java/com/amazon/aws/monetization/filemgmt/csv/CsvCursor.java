@@ -0,0 +1,62 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only view over the records of a csv stream, produced by a {@link CsvEngine}.
+ * Field values are only valid until the next call to {@link #next()}; implementations are free to reuse
+ * their buffers between records and to defer building a {@code String} until {@link #getField(int)} is called.
+ */
+public interface CsvCursor extends FieldSource, Closeable {
+
+    /**
+     * Advances to the next record.
+     * @return false once the input is exhausted
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return the number of fields in the current record
+     */
+    int getFieldCount();
+
+    /**
+     * Returns the field, sharing one instance per distinct value of its column through the dictionary.
+     * Engines that hold raw bytes may override this to look repeated values up without decoding them.
+     */
+    default String getField(int index, ColumnDictionary dictionary) {
+        return dictionary.intern(index, getField(index));
+    }
+
+    /**
+     * Whether the field is empty or only holds characters that {@link String#trim()} would remove,
+     * without necessarily materialising the field.
+     */
+    boolean isBlank(int index);
+
+    /**
+     * Parses the field as an {@code int}, ignoring surrounding white space. Engines that hold raw bytes may
+     * override this to parse without building a {@code String}.
+     * @throws NumberFormatException if the field is not an int
+     */
+    default int getInt(int index) {
+        return Integer.parseInt(getField(index).trim());
+    }
+
+    /**
+     * Parses the field as a {@code long}, see {@link #getInt(int)}.
+     * @throws NumberFormatException if the field is not a long
+     */
+    default long getLong(int index) {
+        return Long.parseLong(getField(index).trim());
+    }
+
+    /**
+     * @return the number of records read so far, including the current one
+     */
+    long getRecordNumber();
+}
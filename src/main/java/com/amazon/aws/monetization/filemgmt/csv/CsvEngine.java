@@ -0,0 +1,22 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import java.io.InputStream;
+
+/**
+ * Tokenizer engine behind {@code CsvReader}. Both engines use the same parser settings: comma separator,
+ * double quote, backslash escape and leading white space ignored in front of quotes.
+ */
+public interface CsvEngine {
+    /**
+     * OpenCSV's {@code CSVParser} over a UTF-8 {@code InputStreamReader}. Builds every field of every line.
+     */
+    CsvEngine OPENCSV = OpenCsvCursor::new;
+
+    /**
+     * Byte level tokenizer working directly on the UTF-8 input with reused buffers. Only fields that are
+     * actually read are turned into strings.
+     */
+    CsvEngine UTF8_BYTES = Utf8CsvTokenizer::new;
+
+    CsvCursor open(InputStream inputStream);
+}
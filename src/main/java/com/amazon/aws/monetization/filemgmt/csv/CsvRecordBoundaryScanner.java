@@ -0,0 +1,88 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+/**
+ * Finds csv record boundaries in a raw chunk of UTF-8 bytes, using the same quote and escape rules as the
+ * default OpenCSV parser. Every unescaped quote toggles quoting (doubled quotes toggle twice, so the parity is the
+ * same), and a backslash swallows a following quote, backslash or comma wherever it appears.
+ * A chunk cut from the middle of an object can start in any parser state, so {@link #scanAllStates(byte[])}
+ * scans it once per possible start state; the caller resolves the real state once the previous chunk is known.
+ */
+public final class CsvRecordBoundaryScanner {
+    public static final int OUTSIDE_QUOTES = 0;
+    public static final int OUTSIDE_QUOTES_AFTER_ESCAPE = 1;
+    public static final int IN_QUOTES = 2;
+    public static final int IN_QUOTES_AFTER_ESCAPE = 3;
+    public static final int STATE_COUNT = 4;
+
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte SEPARATOR = ',';
+    private static final byte NEWLINE = '\n';
+
+    private CsvRecordBoundaryScanner() {
+    }
+
+    /**
+     * Outcome of scanning a chunk from one start state.
+     */
+    public static final class Result {
+        private final int lastBoundary;
+        private final int endState;
+
+        Result(int lastBoundary, int endState) {
+            this.lastBoundary = lastBoundary;
+            this.endState = endState;
+        }
+
+        /**
+         * @return the offset just past the last record terminating newline, or -1 if the chunk has none
+         */
+        public int getLastBoundary() {
+            return lastBoundary;
+        }
+
+        /**
+         * @return the parser state at the end of the chunk, which is the start state of the next chunk
+         */
+        public int getEndState() {
+            return endState;
+        }
+    }
+
+    public static Result[] scanAllStates(byte[] bytes) {
+        Result[] results = new Result[STATE_COUNT];
+        for (int state = 0; state < STATE_COUNT; state++) {
+            results[state] = scan(bytes, state);
+        }
+        return results;
+    }
+
+    public static Result scan(byte[] bytes, int startState) {
+        boolean inQuotes = startState >= IN_QUOTES;
+        boolean afterEscape = startState == OUTSIDE_QUOTES_AFTER_ESCAPE || startState == IN_QUOTES_AFTER_ESCAPE;
+        int lastBoundary = -1;
+
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+
+            if (afterEscape) {
+                afterEscape = false;
+                // The escape only applies to a quote, escape or separator on the same line
+                if (b == QUOTE || b == ESCAPE || b == SEPARATOR) {
+                    continue;
+                }
+            }
+
+            if (b == ESCAPE) {
+                afterEscape = true;
+            } else if (b == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (b == NEWLINE && !inQuotes) {
+                lastBoundary = i + 1;
+            }
+        }
+
+        int endState = inQuotes ? IN_QUOTES : OUTSIDE_QUOTES;
+        return new Result(lastBoundary, afterEscape ? endState + 1 : endState);
+    }
+}
@@ -0,0 +1,153 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lazily walks the records of a {@link CsvCursor}. The first line is read as the header and handed to the mapper
+ * factory, so any column lookups are resolved once per file; every following non empty record is then turned into
+ * a {@code T} by that mapper. Empty rows, and rows rejected by the optional {@link RowFilter}, are dropped as they
+ * are read, before the mapper runs. The underlying cursor (and the S3 stream
+ * behind it) stays open until {@link #close()} is called.
+ *
+ * @param <T> the type each record is mapped to
+ */
+public class CsvRecordIterator<T> implements Iterator<T>, Closeable {
+    private final CsvCursor cursor;
+    private final String bucket;
+    private final String key;
+
+    private int headerSize;
+    private CsvRecordMapper<T> mapper;
+    private Predicate<FieldSource> filter;
+
+    private T next;
+    private boolean done;
+
+    public CsvRecordIterator(CsvCursor cursor,
+                             String bucket,
+                             String key,
+                             Function<HeaderIndex, CsvRecordMapper<T>> mapperFactory) {
+        this(cursor, bucket, key, mapperFactory, null);
+    }
+
+    /**
+     * @param rowFilter the filter records must match, or null to keep every record
+     */
+    public CsvRecordIterator(CsvCursor cursor,
+                             String bucket,
+                             String key,
+                             Function<HeaderIndex, CsvRecordMapper<T>> mapperFactory,
+                             RowFilter rowFilter) {
+        this.cursor = cursor;
+        this.bucket = bucket;
+        this.key = key;
+        readHeader(mapperFactory, rowFilter);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            next = readNextNonEmpty();
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        next = null;
+        try {
+            cursor.close();
+        } catch (IOException e) {
+            String errorMessage = String.format("I/O exception occurred closing csv cursor for bucket %s and key %s", bucket, key);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+    }
+
+    public static boolean isEmptyRow(String[] values) {
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readHeader(Function<HeaderIndex, CsvRecordMapper<T>> mapperFactory, RowFilter rowFilter) {
+        String[] header = new String[0];
+        if (advance()) {
+            header = new String[cursor.getFieldCount()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = cursor.getField(i);
+            }
+        } else {
+            done = true;
+        }
+        headerSize = header.length;
+
+        try {
+            HeaderIndex headerIndex = HeaderIndex.of(header);
+            mapper = mapperFactory.apply(headerIndex);
+            filter = rowFilter == null ? null : rowFilter.bind(headerIndex);
+        } catch (RuntimeException e) {
+            close();
+            throw new IllegalArgumentException(String.format(
+                    "Unable to map the header of csv for bucket %s and key %s: %s", bucket, key, e.getMessage()), e);
+        }
+    }
+
+    private T readNextNonEmpty() {
+        while (advance()) {
+            int fieldCount = cursor.getFieldCount();
+            if (fieldCount != headerSize) {
+                throw new RuntimeException(String.format(
+                        "Csv record %d for bucket %s and key %s has %d values but the header has %d columns",
+                        cursor.getRecordNumber(), bucket, key, fieldCount, headerSize));
+            }
+            if (filter != null && !filter.test(cursor)) continue;
+            if (isEmptyRecord()) continue;
+
+            return mapper.map(cursor);
+        }
+        return null;
+    }
+
+    private boolean isEmptyRecord() {
+        for (int i = 0; i < cursor.getFieldCount(); i++) {
+            if (!cursor.isBlank(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean advance() {
+        try {
+            return cursor.next();
+        } catch (IOException e) {
+            String errorMessage = String.format("I/O exception occurred streaming csv records for bucket %s and key %s", bucket, key);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+/**
+ * Turns the current record of a {@link CsvCursor} into a {@code T}. Mappers are built once per header, so they
+ * can resolve column names to indexes up front and only read the fields they need.
+ *
+ * @param <T> the type each record is mapped to
+ */
+@FunctionalInterface
+public interface CsvRecordMapper<T> {
+    T map(CsvCursor cursor);
+}
@@ -0,0 +1,18 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import java.io.IOException;
+
+/**
+ * Pushes csv records into a {@link Sink} one at a time, for callers that generate rows from a callback rather than
+ * an iterator. The sink encodes each record as it is handed over and blocks while the upload behind it catches up,
+ * so a producer can never get more than a few upload parts ahead of S3.
+ */
+@FunctionalInterface
+public interface CsvRecordProducer {
+    void produce(Sink sink) throws IOException;
+
+    @FunctionalInterface
+    interface Sink {
+        void accept(String[] record) throws IOException;
+    }
+}
@@ -0,0 +1,81 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maps records to {@link IndexedRow}s sharing one {@link HeaderIndex}. When a projection is given, the wanted
+ * column names are resolved to indexes once and only those fields are read, so with a byte level engine the
+ * other fields are never turned into strings. With a {@link ColumnDictionary}, repeated values of a column share
+ * one instance.
+ */
+public class CsvRowMapper implements CsvRecordMapper<IndexedRow> {
+    private final HeaderIndex rowHeader;
+    private final int[] columnIndexes;
+    private final ColumnDictionary dictionary;
+
+    /**
+     * @param columns the column names to keep, or null to keep every column
+     * @throws IllegalArgumentException if a projected column is not in the header
+     */
+    public CsvRowMapper(HeaderIndex fileHeader, Collection<String> columns) {
+        this(fileHeader, columns, null);
+    }
+
+    /**
+     * @param columns the column names to keep, or null to keep every column
+     * @param dictionary deduplicates repeated values per column, or null to keep every value as read
+     * @throws IllegalArgumentException if a projected column is not in the header
+     */
+    public CsvRowMapper(HeaderIndex fileHeader, Collection<String> columns, ColumnDictionary dictionary) {
+        this.dictionary = dictionary;
+        if (columns == null) {
+            this.rowHeader = fileHeader;
+            this.columnIndexes = null;
+            return;
+        }
+
+        List<String> missing = new ArrayList<>();
+        String[] columnNames = columns.toArray(new String[0]);
+        this.columnIndexes = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            int index = fileHeader.indexOf(columnNames[i]);
+            if (index < 0) {
+                missing.add(columnNames[i]);
+            } else {
+                columnIndexes[i] = index;
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Columns %s are not present in the header", missing));
+        }
+        this.rowHeader = HeaderIndex.of(columnNames);
+    }
+
+    @Override
+    public IndexedRow map(CsvCursor cursor) {
+        String[] values;
+        if (columnIndexes == null) {
+            values = new String[cursor.getFieldCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getField(cursor, i);
+            }
+        } else {
+            values = new String[columnIndexes.length];
+            for (int i = 0; i < columnIndexes.length; i++) {
+                values[i] = getField(cursor, columnIndexes[i]);
+            }
+        }
+        return new IndexedRow(rowHeader, values);
+    }
+
+    private String getField(CsvCursor cursor, int index) {
+        return dictionary == null ? cursor.getField(index) : cursor.getField(index, dictionary);
+    }
+}
@@ -0,0 +1,66 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CsvCursor} backed by OpenCSV, see {@link CsvEngine#OPENCSV}.
+ */
+public class OpenCsvCursor implements CsvCursor {
+    private final CSVReader reader;
+    private String[] current;
+
+    public OpenCsvCursor(InputStream inputStream) {
+        CSVParser csvParser = new CSVParserBuilder()
+                .withIgnoreLeadingWhiteSpace(true)
+                .build();
+        InputStreamReader inputReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+
+        this.reader = new CSVReaderBuilder(inputReader)
+                .withCSVParser(csvParser)
+                .build();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        try {
+            current = reader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return current != null;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return current.length;
+    }
+
+    @Override
+    public String getField(int index) {
+        return current[index];
+    }
+
+    @Override
+    public boolean isBlank(int index) {
+        return current[index] == null || current[index].trim().isEmpty();
+    }
+
+    @Override
+    public long getRecordNumber() {
+        return reader.getRecordsRead();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
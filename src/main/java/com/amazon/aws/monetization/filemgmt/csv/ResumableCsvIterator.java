@@ -0,0 +1,215 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Streams the rows of a csv object while tracking the byte offset just past every record, using the positions of
+ * {@link Utf8CsvTokenizer}. When the connection fails mid-stream the object is reopened just past the last record
+ * read, up to {@code maxRetries} times in a row, so a transient S3 failure costs at most one record of rework
+ * rather than the whole read. {@link #getCheckpoint()} can also be persisted to resume from a later process.
+ */
+@Slf4j
+public class ResumableCsvIterator implements Iterator<IndexedRow>, Closeable {
+    private final CsvCheckpoint start;
+    private final Function<CsvCheckpoint, InputStream> opener;
+    private final int maxRetries;
+
+    private Utf8CsvTokenizer tokenizer;
+    private HeaderIndex header;
+    private CsvRowMapper mapper;
+
+    // Where the current stream starts, how far it has been read, and how far rows have been handed out
+    private long streamOffset;
+    private long streamRecordNumber;
+    private long readOffset;
+    private long readRecordNumber;
+    private long returnedOffset;
+    private long returnedRecordNumber;
+
+    private IndexedRow next;
+    private boolean done;
+
+    /**
+     * @param start where to start reading, with a null header to read the header from the stream
+     * @param opener opens the object at the checkpoint offset, pinned to the checkpoint ETag
+     * @param maxRetries how many consecutive failures to recover from by reopening the object
+     */
+    public ResumableCsvIterator(CsvCheckpoint start, Function<CsvCheckpoint, InputStream> opener, int maxRetries) {
+        this.start = start;
+        this.opener = opener;
+        this.maxRetries = maxRetries;
+        this.readOffset = this.returnedOffset = start.getOffset();
+        this.readRecordNumber = this.returnedRecordNumber = start.getRecordNumber();
+        if (start.getHeader() != null) {
+            setHeader(HeaderIndex.of(start.getHeader()));
+        }
+    }
+
+    /**
+     * @return the header, reading it from the stream when the read did not start from a checkpoint
+     */
+    public HeaderIndex getHeader() {
+        if (header == null) {
+            hasNext();
+        }
+        return header;
+    }
+
+    /**
+     * @return the checkpoint just past the last row returned by {@link #next()}, or the starting checkpoint
+     */
+    public CsvCheckpoint getCheckpoint() {
+        return new CsvCheckpoint(start.getBucket(), start.getKey(), start.getETag(), returnedOffset,
+                returnedRecordNumber, header == null ? null : header.getNames());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null || done) {
+            return next != null;
+        }
+
+        int failures = 0;
+        while (true) {
+            try {
+                next = readNextNonEmpty();
+                done = next == null;
+                if (done) {
+                    // Trailing empty rows were read past the last row, so a checkpoint resumes at the end
+                    returnedOffset = readOffset;
+                    returnedRecordNumber = readRecordNumber;
+                }
+                return next != null;
+            } catch (IOException | RuntimeException e) {
+                if (!isRetryable(e)) {
+                    close();
+                    throw e instanceof IOException ? new UncheckedIOException(failureMessage(), (IOException) e) : (RuntimeException) e;
+                }
+                if (failures++ >= maxRetries) {
+                    close();
+                    throw new RuntimeException(failureMessage() + " after " + maxRetries + " retries", e);
+                }
+                log.warn("Csv read of {}/{} failed, resuming from offset {} ({} of {} retries)",
+                        start.getBucket(), start.getKey(), readOffset, failures, maxRetries, e);
+                closeTokenizer();
+            }
+        }
+    }
+
+    @Override
+    public IndexedRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        IndexedRow row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        next = null;
+        closeTokenizer();
+    }
+
+    private IndexedRow readNextNonEmpty() throws IOException {
+        if (tokenizer == null) {
+            streamOffset = readOffset;
+            streamRecordNumber = readRecordNumber;
+            tokenizer = new Utf8CsvTokenizer(opener.apply(new CsvCheckpoint(start.getBucket(), start.getKey(),
+                    start.getETag(), readOffset, readRecordNumber, null)));
+        }
+
+        while (tokenizer.next()) {
+            if (header == null) {
+                String[] names = new String[tokenizer.getFieldCount()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = tokenizer.getField(i);
+                }
+                setHeader(HeaderIndex.of(names));
+                advance();
+                returnedOffset = readOffset;
+                returnedRecordNumber = readRecordNumber;
+                continue;
+            }
+
+            if (tokenizer.getFieldCount() != header.size()) {
+                throw new IllegalStateException(String.format(
+                        "Csv record %d for bucket %s and key %s has %d values but the header has %d columns",
+                        streamRecordNumber + tokenizer.getRecordNumber(), start.getBucket(), start.getKey(),
+                        tokenizer.getFieldCount(), header.size()));
+            }
+            advance();
+            if (isEmptyRecord()) continue;
+
+            IndexedRow row = mapper.map(tokenizer);
+            returnedOffset = readOffset;
+            returnedRecordNumber = readRecordNumber;
+            return row;
+        }
+        return null;
+    }
+
+    private void advance() {
+        readOffset = streamOffset + tokenizer.getPosition();
+        readRecordNumber = streamRecordNumber + tokenizer.getRecordNumber();
+    }
+
+    private void setHeader(HeaderIndex headerIndex) {
+        header = headerIndex;
+        mapper = new CsvRowMapper(headerIndex, null);
+    }
+
+    private boolean isEmptyRecord() {
+        for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+            if (!tokenizer.isBlank(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String failureMessage() {
+        return String.format("Exception occurred streaming csv records for bucket %s and key %s at offset %d",
+                start.getBucket(), start.getKey(), readOffset);
+    }
+
+    private void closeTokenizer() {
+        if (tokenizer != null) {
+            try {
+                tokenizer.close();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Ignoring failure to close csv stream of {}/{}", start.getBucket(), start.getKey(), e);
+            }
+            tokenizer = null;
+        }
+    }
+
+    /**
+     * I/O and client side failures are transient; service errors are only retried when S3 reports a server error.
+     * An {@link EOFException} is a malformed csv, e.g. an unterminated quote, and is not retried.
+     */
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof IOException) {
+            return !(e instanceof EOFException);
+        }
+        if (e instanceof AmazonServiceException) {
+            return ((AmazonServiceException) e).getStatusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+}
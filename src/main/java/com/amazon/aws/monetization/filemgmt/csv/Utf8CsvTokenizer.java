@@ -0,0 +1,396 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Allocation free csv tokenizer working directly on UTF-8 bytes, see {@link CsvEngine#UTF8_BYTES}.
+ *
+ * The unescaped bytes of the current record are copied into one reused output buffer and each field is kept as
+ * an offset range into it, so no {@code String} is built until {@link #getField(int)} is called. Quoting follows
+ * OpenCSV's default parser with {@code withIgnoreLeadingWhiteSpace(true)}, quirks included: quotes toggle quoting
+ * wherever they appear, a quote embedded past the start of an unquoted field is kept, {@code ""} inside a field is
+ * a literal quote, a backslash escapes a following quote, backslash or comma and is otherwise dropped, and the
+ * physical lines of a quoted field are joined with a single {@code \n}. Only ASCII white space counts as
+ * leading white space.
+ */
+public class Utf8CsvTokenizer implements CsvCursor {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int SEPARATOR = ',';
+    private static final int QUOTE = '"';
+    private static final int ESCAPE = '\\';
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    // OpenCSV only keeps an embedded quote once it is past the third character of the line
+    private static final int BEGINNING_OF_LINE = 3;
+
+    // Powers of ten that a double holds exactly, used by the fast path of getDouble
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final InputStream inputStream;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long bufferOffset;
+
+    private byte[] out = new byte[1024];
+    private int outLength;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private long recordNumber;
+
+    // Character index and previous byte on the current physical line, needed for the embedded quote rule
+    private int lineColumn;
+    private int linePrevious;
+
+    public Utf8CsvTokenizer(InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public Utf8CsvTokenizer(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        outLength = 0;
+        fieldCount = 0;
+        lineColumn = 0;
+        linePrevious = -1;
+
+        int c = read();
+        if (c < 0) {
+            return false;
+        }
+
+        boolean inQuotes = false;
+        boolean inField = false;
+        int fieldStart = 0;
+        boolean fieldWhiteSpace = true;
+
+        for (; ; c = read()) {
+            if (c < 0) {
+                if (inQuotes) {
+                    throw new EOFException(String.format("Unterminated quoted field at end of csv input after record %d", recordNumber));
+                }
+                break;
+            }
+
+            if (c == CR || c == LF) {
+                if (c == CR && peek() == LF) {
+                    read();
+                }
+                if (!inQuotes) {
+                    break;
+                }
+                // OpenCSV joins the physical lines of a quoted field with a single newline
+                append(LF);
+                lineColumn = 0;
+                linePrevious = -1;
+                continue;
+            }
+
+            int column = lineColumn;
+            int previous = linePrevious;
+            advance(c);
+
+            if (c == ESCAPE) {
+                inField = true;
+                int next = peek();
+                if (next == QUOTE || next == ESCAPE || next == SEPARATOR) {
+                    advance(read());
+                    append(next);
+                    fieldWhiteSpace = false;
+                }
+            } else if (c == QUOTE) {
+                if ((inQuotes || inField) && peek() == QUOTE) {
+                    advance(read());
+                    append(QUOTE);
+                    fieldWhiteSpace = false;
+                } else {
+                    inQuotes = !inQuotes;
+                    int next = peek();
+                    if (column + 1 > BEGINNING_OF_LINE && previous != SEPARATOR
+                            && next >= 0 && next != CR && next != LF && next != SEPARATOR) {
+                        if (outLength > fieldStart && fieldWhiteSpace) {
+                            outLength = fieldStart;
+                        } else {
+                            append(QUOTE);
+                            fieldWhiteSpace = false;
+                        }
+                    }
+                }
+                inField = !inField;
+            } else if (c == SEPARATOR && !inQuotes) {
+                endField(fieldStart);
+                fieldStart = outLength;
+                fieldWhiteSpace = true;
+                inField = false;
+            } else {
+                append(c);
+                inField = true;
+                fieldWhiteSpace &= isWhiteSpace(c);
+            }
+        }
+
+        endField(fieldStart);
+        recordNumber++;
+        return true;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getField(int index) {
+        checkIndex(index);
+        return new String(out, fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getField(int index, ColumnDictionary dictionary) {
+        checkIndex(index);
+        return dictionary.intern(index, out, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * Compares ASCII values byte for byte without decoding the field; other values fall back to {@link #getField(int)}.
+     */
+    @Override
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        int length = fieldEnds[index] - fieldStarts[index];
+        if (!isAscii(value)) {
+            return CsvCursor.super.fieldEquals(index, value);
+        }
+        return length == value.length() && regionMatches(fieldStarts[index], value);
+    }
+
+    @Override
+    public boolean fieldStartsWith(int index, String prefix) {
+        checkIndex(index);
+        int length = fieldEnds[index] - fieldStarts[index];
+        if (!isAscii(prefix)) {
+            return CsvCursor.super.fieldStartsWith(index, prefix);
+        }
+        return length >= prefix.length() && regionMatches(fieldStarts[index], prefix);
+    }
+
+    @Override
+    public boolean isBlank(int index) {
+        checkIndex(index);
+        for (int i = fieldStarts[index]; i < fieldEnds[index]; i++) {
+            // String.trim() strips every char up to and including the space; UTF-8 multi byte units are negative
+            if (out[i] < 0 || out[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getInt(int index) {
+        long value = getLong(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(String.format("Value out of int range: \"%s\"", getField(index)));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses decimal digits straight from the record bytes; anything else falls back to {@link Long#parseLong}.
+     */
+    @Override
+    public long getLong(int index) {
+        checkIndex(index);
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        boolean negative = start < end && out[start] == '-';
+        int i = negative || (start < end && out[start] == '+') ? start + 1 : start;
+        // 18 digits always fit in a long, so longer values go through the JDK for the overflow check
+        if (i == end || end - i > 18) {
+            return CsvCursor.super.getLong(index);
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = out[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return CsvCursor.super.getLong(index);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Plain decimals with at most 15 significant digits are computed exactly as {@code mantissa / 10^scale},
+     * which rounds the same as {@link Double#parseDouble}; exponents and longer values fall back to the JDK.
+     */
+    @Override
+    public double getDouble(int index) {
+        checkIndex(index);
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        boolean negative = start < end && out[start] == '-';
+        int i = negative || (start < end && out[start] == '+') ? start + 1 : start;
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            int c = out[i];
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || ++digits > 15) {
+                return CsvCursor.super.getDouble(index);
+            }
+            mantissa = mantissa * 10 + digit;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA) {
+            return CsvCursor.super.getDouble(index);
+        }
+
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * @return the number of input bytes consumed so far, i.e. the offset just past the current record
+     */
+    public long getPosition() {
+        return bufferOffset + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException(String.format("Field %d of a record with %d fields", index, fieldCount));
+        }
+    }
+
+    private boolean regionMatches(int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (out[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int trimStart(int index) {
+        int start = fieldStarts[index];
+        while (start < fieldEnds[index] && out[start] >= 0 && out[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int index, int start) {
+        int end = fieldEnds[index];
+        while (end > start && out[end - 1] >= 0 && out[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private void advance(int c) {
+        linePrevious = c;
+        // Count characters rather than bytes by skipping UTF-8 continuation bytes
+        if ((c & 0xC0) != 0x80) {
+            lineColumn++;
+        }
+    }
+
+    private void append(int c) {
+        if (outLength == out.length) {
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+        out[outLength++] = (byte) c;
+    }
+
+    private void endField(int start) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = outLength;
+        fieldCount++;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        bufferOffset += limit;
+        position = 0;
+        limit = 0;
+        int read;
+        while ((read = inputStream.read(buffer, 0, buffer.length)) == 0) {
+            // keep reading until data or end of stream
+        }
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Mirrors {@link Character#isWhitespace(int)} for the ASCII range.
+     */
+    private static boolean isWhiteSpace(int c) {
+        return c == ' ' || (c >= 0x09 && c <= 0x0D) || (c >= 0x1C && c <= 0x1F);
+    }
+}
@@ -0,0 +1,277 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared strings table of an xlsx kept on disk instead of the heap, for workbooks whose shared strings alone would
+ * not fit in memory. The shared strings part is streamed once into two temp files: the strings as UTF-8, and the
+ * offset of every string. A string index is resolved with positional reads of both files, through an LRU of the
+ * most recently used strings, so memory is bounded by the cache size however many unique strings the workbook has.
+ *
+ * Strings are read the way {@code ReadOnlySharedStringsTable} reads them: the text of every run of an item,
+ * without phonetic runs. Lookups are thread safe. {@link #close()} deletes the temp files.
+ */
+@Slf4j
+public class DiskSharedStringsTable implements SharedStrings, Closeable {
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private static final String NS_SPREADSHEETML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private final Path stringsFile;
+    private final Path offsetsFile;
+    private final FileChannel strings;
+    private final FileChannel offsets;
+    private final Map<Integer, String> cache;
+    private int count;
+    private int uniqueCount;
+
+    /**
+     * @param cacheSize the number of strings kept in memory
+     */
+    public DiskSharedStringsTable(OPCPackage pkg, int cacheSize) throws IOException, SAXException {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+        this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.stringsFile = Files.createTempFile("xlsx-strings", ".tmp");
+        Path offsetsPath = null;
+        FileChannel stringsChannel = null;
+        FileChannel offsetsChannel;
+        try {
+            offsetsPath = Files.createTempFile("xlsx-string-offsets", ".tmp");
+            List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+            try (IndexWriter writer = new IndexWriter(stringsFile, offsetsPath)) {
+                if (!parts.isEmpty()) {
+                    try (InputStream part = parts.get(0).getInputStream()) {
+                        parse(part, writer);
+                    }
+                }
+            }
+            stringsChannel = FileChannel.open(stringsFile, StandardOpenOption.READ);
+            offsetsChannel = FileChannel.open(offsetsPath, StandardOpenOption.READ);
+        } catch (IOException | SAXException | RuntimeException e) {
+            delete(stringsChannel, stringsFile);
+            delete(null, offsetsPath);
+            throw e;
+        }
+        this.strings = stringsChannel;
+        this.offsets = offsetsChannel;
+        this.offsetsFile = offsetsPath;
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        if (idx < 0 || idx >= uniqueCount) {
+            throw new IndexOutOfBoundsException(String.format("No shared string at index %d of %d", idx, uniqueCount));
+        }
+        synchronized (cache) {
+            String cached = cache.get(idx);
+            if (cached != null) {
+                return new XSSFRichTextString(cached);
+            }
+        }
+        String value;
+        try {
+            value = read(idx);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read shared string %d", idx), e);
+        }
+        synchronized (cache) {
+            cache.put(idx, value);
+        }
+        return new XSSFRichTextString(value);
+    }
+
+    /**
+     * @return the number of string cells in the workbook, as recorded in the shared strings part
+     */
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    @Override
+    public void close() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        delete(strings, stringsFile);
+        delete(offsets, offsetsFile);
+    }
+
+    private String read(int idx) throws IOException {
+        ByteBuffer bounds = ByteBuffer.allocate(2 * Long.BYTES);
+        readFully(offsets, bounds, (long) idx * Long.BYTES);
+        long start = bounds.getLong(0);
+        int length = (int) (bounds.getLong(Long.BYTES) - start);
+        ByteBuffer utf8 = ByteBuffer.allocate(length);
+        readFully(strings, utf8, start);
+        return new String(utf8.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(FileChannel channel, Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error(String.format("Unable to delete shared strings file %s", file), e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Shared strings file is truncated");
+            }
+        }
+    }
+
+    private void parse(InputStream part, IndexWriter writer) throws IOException, SAXException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new StringsHandler(writer));
+            parser.parse(new InputSource(part));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to create the shared strings parser", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        uniqueCount = writer.size;
+    }
+
+    /**
+     * Appends the strings to the strings file and their start offsets to the offsets file, which ends with the
+     * offset past the last string so the length of every string is the difference of two offsets.
+     */
+    private static final class IndexWriter implements Closeable {
+        private final OutputStream strings;
+        private final DataOutputStream offsets;
+        private long position;
+        private int size;
+
+        private IndexWriter(Path stringsFile, Path offsetsFile) throws IOException {
+            this.strings = new BufferedOutputStream(Files.newOutputStream(stringsFile));
+            this.offsets = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsetsFile)));
+        }
+
+        private void add(String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            offsets.writeLong(position);
+            strings.write(utf8);
+            position += utf8.length;
+            size++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (strings; offsets) {
+                offsets.writeLong(position);
+            }
+        }
+    }
+
+    private final class StringsHandler extends DefaultHandler {
+        private final IndexWriter writer;
+        private final StringBuilder characters = new StringBuilder(64);
+        private boolean inItem;
+        private boolean inText;
+        private boolean inPhonetic;
+
+        private StringsHandler(IndexWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (uri != null && !uri.equals(NS_SPREADSHEETML)) {
+                return;
+            }
+            if ("sst".equals(localName)) {
+                count = parseCount(attributes.getValue("count"));
+            } else if ("si".equals(localName)) {
+                characters.setLength(0);
+                inItem = true;
+            } else if ("t".equals(localName)) {
+                inText = true;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (uri != null && !uri.equals(NS_SPREADSHEETML)) {
+                return;
+            }
+            if ("si".equals(localName)) {
+                try {
+                    writer.add(characters.toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                inItem = false;
+            } else if ("t".equals(localName)) {
+                inText = false;
+            } else if ("rPh".equals(localName)) {
+                inPhonetic = false;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inItem && inText && !inPhonetic) {
+                characters.append(ch, start, length);
+            }
+        }
+
+        private int parseCount(String value) {
+            return value == null ? 0 : Integer.parseInt(value);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Date1904Support;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelNumberFormat;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.Arrays;
+
+/**
+ * Formats cells the way {@link DataFormatter#formatCellValue(Cell)} does, for all the cells of one workbook. A
+ * {@code DataFormatter} builds its locale formats when created and caches every number format it parses, so one is
+ * kept for the whole workbook instead of one per row. On top of that, the number format of each distinct cell style
+ * is resolved once into a table indexed by the style index, including whether it is a date format, so a numeric
+ * cell only costs a table lookup before its value is formatted.
+ *
+ * Not thread safe; use one per workbook and thread.
+ */
+public class ExcelCellFormatter {
+    private final DataFormatter formatter;
+    private StyleFormat[] styles = new StyleFormat[64];
+    private Boolean date1904;
+
+    public ExcelCellFormatter() {
+        this(new DataFormatter());
+    }
+
+    public ExcelCellFormatter(DataFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * @return the cell value as seen in Excel, or an empty string for a missing cell; formulas are shown as stored
+     */
+    public String formatCellValue(Cell cell) {
+        if (cell == null || cell.getCellType() != CellType.NUMERIC) {
+            return formatter.formatCellValue(cell);
+        }
+        StyleFormat style = styleFormat(cell.getCellStyle());
+        if (style == null) {
+            return formatter.formatCellValue(cell);
+        }
+        double value = cell.getNumericCellValue();
+        if (style.date && !DateUtil.isValidExcelDate(value)) {
+            // Out of range dates are formatted as numbers by the cell path, keep that
+            return formatter.formatCellValue(cell);
+        }
+        return formatter.formatRawCellContents(value, style.formatIndex, style.formatString, isDate1904(cell));
+    }
+
+    public DataFormatter getDataFormatter() {
+        return formatter;
+    }
+
+    private StyleFormat styleFormat(CellStyle cellStyle) {
+        if (cellStyle == null) {
+            return null;
+        }
+        int index = cellStyle.getIndex() & 0xFFFF;
+        if (index >= styles.length) {
+            styles = Arrays.copyOf(styles, Math.max(index + 1, styles.length * 2));
+        }
+        StyleFormat style = styles[index];
+        if (style == null) {
+            ExcelNumberFormat numberFormat = ExcelNumberFormat.from(cellStyle);
+            if (numberFormat == null) {
+                return null;
+            }
+            style = new StyleFormat(numberFormat);
+            styles[index] = style;
+        }
+        return style;
+    }
+
+    private boolean isDate1904(Cell cell) {
+        if (date1904 == null) {
+            Workbook workbook = cell.getSheet().getWorkbook();
+            date1904 = workbook instanceof Date1904Support && ((Date1904Support) workbook).isDate1904();
+        }
+        return date1904;
+    }
+
+    private static final class StyleFormat {
+        private final int formatIndex;
+        private final String formatString;
+        private final boolean date;
+
+        private StyleFormat(ExcelNumberFormat numberFormat) {
+            this.formatIndex = numberFormat.getIdx();
+            this.formatString = numberFormat.getFormat();
+            this.date = DateUtil.isADateFormat(formatIndex, formatString);
+        }
+    }
+}
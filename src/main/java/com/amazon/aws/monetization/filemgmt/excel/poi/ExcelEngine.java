@@ -0,0 +1,29 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+/**
+ * How the Excel readers load a workbook. All engines format cells the way Excel shows them and trim them, and keep
+ * the same header and empty row handling.
+ */
+public enum ExcelEngine {
+    /**
+     * Builds an {@code XSSFWorkbook} from the S3 stream. Formulas can be evaluated, but the whole workbook is held in
+     * memory, typically many times its file size.
+     */
+    DOM,
+
+    /**
+     * Streams the workbook to a temp file and reads the sheet XML row by row with a {@link StreamingSheetReader}.
+     * Memory is independent of the number of rows, apart from the records returned. Formulas read as the result
+     * cached in the file, and row filters compare numbers on the formatted value. The readers can instead be asked to
+     * read sheets with formula cells with {@link #DOM}, so formulas read the same as with it, at the cost of memory;
+     * a warning is logged for each such read.
+     */
+    STREAMING,
+
+    /**
+     * {@link #STREAMING}, with the shared strings table indexed into temp files by a {@link DiskSharedStringsTable}
+     * and only the most recently used strings kept in memory. For workbooks whose unique strings alone would not fit
+     * in memory; every other workbook reads faster with {@link #STREAMING}.
+     */
+    STREAMING_DISK_STRINGS
+}
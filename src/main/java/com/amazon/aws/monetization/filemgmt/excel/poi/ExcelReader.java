@@ -1,5 +1,10 @@
 package com.amazon.aws.monetization.filemgmt.excel.poi;
 
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+import com.amazon.aws.monetization.filemgmt.utils.S3ObjectDiskCache;
 import com.amazon.aws.monetization.filemgmt.utils.S3Util;
 import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
@@ -15,11 +20,14 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 
@@ -43,12 +51,91 @@ public class ExcelReader {
 
     private int beginRowIndex;
 
+    private final int dictionarySize;
+
+    private final StreamingExcelReader streaming;
+
+    private final WorkbookCache workbookCache;
+
+    private final S3ObjectDiskCache objectCache;
 
     public ExcelReader(AmazonS3 s3Client, String bucket, String bucketOwner) {
+        this(s3Client, bucket, bucketOwner, 0);
+    }
+
+    /**
+     * @param dictionarySize when positive, repeated cell values of each column share one {@code String} instance
+     *                       per workbook read, until the column has more than this many distinct values, see
+     *                       {@link ColumnDictionary}
+     */
+    public ExcelReader(AmazonS3 s3Client, String bucket, String bucketOwner, int dictionarySize) {
+        this(s3Client, bucket, bucketOwner, ExcelEngine.DOM, dictionarySize);
+    }
+
+    /**
+     * @param engine how workbooks are loaded, e.g. {@link ExcelEngine#STREAMING} to read large workbooks in constant
+     *               memory. The streaming engines serve {@code getExcelRecordsFromS3},
+     *               {@code getExcelRecordsByColumnsFromS3} and {@code getExcelRecordsRowsFromS3}; the workbook and
+     *               row accessors always load the workbook.
+     */
+    public ExcelReader(AmazonS3 s3Client, String bucket, String bucketOwner, ExcelEngine engine, int dictionarySize) {
+        this(s3Client, bucket, bucketOwner, engine, dictionarySize, null);
+    }
+
+    /**
+     * @param workbookCache serves {@code getWorkBook} and {@code readWorkBook} from workbooks kept across calls,
+     *                      revalidated against the object's ETag, or null to download them every time. Only
+     *                      {@code readWorkBook(key, reader)} shares the parsed workbook; the others parse a copy of the
+     *                      cached file on every call.
+     */
+    public ExcelReader(AmazonS3 s3Client, String bucket, String bucketOwner, WorkbookCache workbookCache) {
+        this(s3Client, bucket, bucketOwner, ExcelEngine.DOM, 0, workbookCache);
+    }
+
+    public ExcelReader(AmazonS3 s3Client,
+                       String bucket,
+                       String bucketOwner,
+                       ExcelEngine engine,
+                       int dictionarySize,
+                       WorkbookCache workbookCache) {
+        this(s3Client, bucket, bucketOwner, engine, dictionarySize, workbookCache, false);
+    }
+
+    /**
+     * @param readFormulasWithDom with a streaming engine, whether sheets with formula cells are read with the DOM so
+     *                            formulas read as with {@link ExcelEngine#DOM}, rather than by their cached result.
+     *                            Such reads hold the whole workbook in memory and log a warning.
+     */
+    public ExcelReader(AmazonS3 s3Client,
+                       String bucket,
+                       String bucketOwner,
+                       ExcelEngine engine,
+                       int dictionarySize,
+                       WorkbookCache workbookCache,
+                       boolean readFormulasWithDom) {
+        this(s3Client, bucket, bucketOwner, engine, dictionarySize, workbookCache, null, readFormulasWithDom);
+    }
 
+    /**
+     * @param objectCache serves the workbooks from a local disk cache, revalidated against the object's ETag, or null
+     *                    to download them every time. The streaming engines read a cached file in place.
+     */
+    public ExcelReader(AmazonS3 s3Client,
+                       String bucket,
+                       String bucketOwner,
+                       ExcelEngine engine,
+                       int dictionarySize,
+                       WorkbookCache workbookCache,
+                       S3ObjectDiskCache objectCache,
+                       boolean readFormulasWithDom) {
         this.s3Client = s3Client;
         this.bucket = bucket;
         this.bucketOwner = bucketOwner;
+        this.dictionarySize = dictionarySize;
+        this.streaming = StreamingExcelReader.forEngine(s3Client, engine, dictionarySize, objectCache,
+                readFormulasWithDom);
+        this.workbookCache = workbookCache;
+        this.objectCache = objectCache;
     }
 
     public XSSFWorkbook getWorkBook(String key) throws IOException {
@@ -56,9 +143,10 @@ public class ExcelReader {
         XSSFWorkbook workbook = null;
 
         try {
-            List<Map<String, String>> records = new ArrayList<>();
-
-            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, this.bucketOwner);
+            if (workbookCache != null) {
+                return workbookCache.copy(s3Client, bucket, key, bucketOwner);
+            }
+            s3Object = getObjectFromS3(bucket, key, bucketOwner);
             workbook = new XSSFWorkbook(s3Object.getObjectContent());
         } catch (IOException | SdkClientException e) {
             throw new IOException(String.format("Error getting Workbook [%s] due to an S3/IO Error, " +
@@ -73,17 +161,33 @@ public class ExcelReader {
 
 
     public XSSFWorkbook readWorkBook(String key) throws IOException {
-        S3Object s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, bucketOwner);
+        if (workbookCache != null) {
+            return workbookCache.copy(s3Client, bucket, key, bucketOwner);
+        }
+        S3Object s3Object = getObjectFromS3(bucket, key, bucketOwner);
         return new XSSFWorkbook(s3Object.getObjectContent());
     }
 
+    /**
+     * Runs the reader on the workbook without copying it. With a {@link WorkbookCache} the cached workbook is lent
+     * to the reader, which must not modify or close it; otherwise the workbook is downloaded for this call.
+     */
+    public <T> T readWorkBook(String key, WorkbookCache.WorkbookReader<T> reader) throws IOException {
+        if (workbookCache != null) {
+            return workbookCache.read(s3Client, bucket, key, bucketOwner, reader);
+        }
+        try (XSSFWorkbook workbook = getWorkBook(key)) {
+            return reader.read(workbook);
+        }
+    }
+
 
     public XSSFRow getRow(int index) {
         return worksheet.getRow(index);
     }
 
     private void setHeaders() {
-        List<String> rowData = getRowData(this.getRow(beginRowIndex));
+        List<String> rowData = getRowData(new ExcelCellFormatter(), this.getRow(beginRowIndex));
 
         ImmutableMap.Builder<String, Integer> strMap = ImmutableMap.builder();
         ImmutableMap.Builder<Integer, String> intMap = ImmutableMap.builder();
@@ -110,21 +214,52 @@ public class ExcelReader {
     public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
                                                            String key,
                                                            String expectedBucketOwner) throws IOException {
+        return getExcelRecordsFromS3(bucket, key, expectedBucketOwner, (RowFilter) null);
+    }
+
+    /**
+     * Pulls the records of the first sheet of a xlsx/xls file from an S3 bucket that match a filter. The filter
+     * looks at the filtered cells only, so rejected rows are skipped before the rest of the row is formatted.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return a list of maps containing the matching rows from the xlsx/xls file
+     * @throws IOException from error reading Excel Files
+     */
+    public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
+                                                           String key,
+                                                           String expectedBucketOwner,
+                                                           RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsFromS3(bucket, key, expectedBucketOwner, null, rowFilter, false);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
         S3Object s3Object = null;
         XSSFWorkbook workbook = null;
 
         try {
             List<Map<String, String>> records = new ArrayList<>();
 
-            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
             workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
             XSSFSheet sheet = workbook.getSheetAt(0);
 
-            List<String> headers = getRowData(sheet, 0);
+            List<String> headers = getRowData(formatter, sheet, 0);
+            Predicate<FieldSource> filter = rowFilter == null ? null : rowFilter.bind(HeaderIndex.of(headers));
+            ExcelRowFields fields = new ExcelRowFields(formatter, null);
 
+            ColumnDictionary dictionary = newDictionary();
             for (int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
+                if (filter != null && !filter.test(fields.reset(sheet.getRow(rowIndex)))) continue;
+
                 AtomicInteger index = new AtomicInteger();
-                List<String> rowData = getRowData(sheet, rowIndex);
+                List<String> rowData = getRowData(formatter, sheet, rowIndex, dictionary);
                 if (!isRowDataEmpty(rowData)) {
                     records.add(rowData.stream().collect(
                             Collectors.toMap(s -> headers.get(index.getAndIncrement()), s -> s)));
@@ -166,40 +301,121 @@ public class ExcelReader {
                                                            String key,
                                                            String expectedBucketOwner,
                                                            String sheetName) throws IOException {
+        return getExcelRecordsFromS3(bucket, key, expectedBucketOwner, sheetName, null);
+    }
+
+    /**
+     * Pulls the records of a sheet of a xlsx/xls file from an S3 bucket that match a filter, see
+     * {@link #getExcelRecordsFromS3(String, String, String, String)}. Empty column names are filtered by their
+     * index.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetName sheet name to be read
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return a list of maps containing the matching rows from the xlsx/xls file
+     * @throws IOException from error reading Excel Files
+     */
+    public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
+                                                           String key,
+                                                           String expectedBucketOwner,
+                                                           String sheetName,
+                                                           RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsFromS3(bucket, key, expectedBucketOwner, sheetName, rowFilter, true);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
         S3Object s3Object = null;
         XSSFWorkbook workbook = null;
 
         try {
-            List<Map<String, String>> records = new ArrayList<>();
-
-            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
             workbook = new XSSFWorkbook(s3Object.getObjectContent());
-
-            // Creating formula evaluator object
-            FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
-
             XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
-                workbook.close();
                 return null;
             }
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            return getSheetRecords(sheet, formatter, workbook.getCreationHelper().createFormulaEvaluator(), rowFilter);
+        } catch (IOException | SdkClientException e) {
+            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
+                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
+                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } finally {
+            if (workbook != null) {
+                workbook.close();
+            }
+            if (s3Object != null) {
+                s3Object.close();
+            }
+        }
+    }
 
-            List<String> headers = getRowData(sheet, 0);
+    /**
+     * Pulls the records of several sheets of a xlsx/xls file from an S3 bucket, see
+     * {@link #getExcelRecordsFromS3(String, String, String, String)}. The file is downloaded and loaded once for all
+     * the sheets; with a streaming {@link ExcelEngine} the sheets are also parsed in parallel.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetNames sheet names to be read
+     * @return the records of each sheet by sheet name, in the order given; sheets that do not exist are left out
+     * @throws IOException from error reading Excel Files
+     */
+    public Map<String, List<Map<String, String>>> getExcelRecordsBySheetFromS3(String bucket,
+                                                                             String key,
+                                                                             String expectedBucketOwner,
+                                                                             Collection<String> sheetNames) throws IOException {
+        return getExcelRecordsBySheetFromS3(bucket, key, expectedBucketOwner, sheetNames, null);
+    }
 
-            for (int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
-                AtomicInteger index = new AtomicInteger();
-                List<String> rowData = getRowData(sheet, rowIndex, formulaEval);
-                if (!isRowDataEmpty(rowData)) {
-                    //In case of Empty Headers use index to prevent merge conflicts
-                    records.add(rowData.stream().collect(
-                            Collectors.toMap(s ->
-                                    Strings.isNullOrEmpty(headers.get(index.get()))
-                                            ? String.valueOf(index.getAndIncrement())
-                                            : headers.get(index.getAndIncrement()), s -> s)));
-                }
+    /**
+     * Pulls the records of several sheets of a xlsx/xls file from an S3 bucket that match a filter, see
+     * {@link #getExcelRecordsBySheetFromS3(String, String, String, Collection)}.
+     *
+     * @param bucket the bucket to read from
+     * @param key the S3 key of the Excel to read
+     * @param expectedBucketOwner account ID of bucket owner
+     * @param sheetNames sheet names to be read
+     * @param rowFilter the filter rows must match, or null to keep every row
+     * @return the matching records of each sheet by sheet name; sheets that do not exist are left out
+     * @throws IOException from error reading Excel Files
+     */
+    public Map<String, List<Map<String, String>>> getExcelRecordsBySheetFromS3(String bucket,
+                                                                             String key,
+                                                                             String expectedBucketOwner,
+                                                                             Collection<String> sheetNames,
+                                                                             RowFilter rowFilter) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsBySheetFromS3(bucket, key, expectedBucketOwner, sheetNames, rowFilter, true);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
             }
+        }
+        S3Object s3Object = null;
+        XSSFWorkbook workbook = null;
 
-            workbook.close();
+        try {
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
+            workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
+
+            Map<String, List<Map<String, String>>> records = new LinkedHashMap<>();
+            for (String sheetName : sheetNames) {
+                XSSFSheet sheet = workbook.getSheet(sheetName);
+                if (sheet != null) {
+                    records.put(sheetName, getSheetRecords(sheet, formatter, formulaEval, rowFilter));
+                }
+            }
             return records;
         } catch (IOException | SdkClientException e) {
             throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
@@ -217,6 +433,37 @@ public class ExcelReader {
         }
     }
 
+    /**
+     * Reads the rows of a sheet after its header, keyed by column name or by index for empty column names.
+     */
+    private List<Map<String, String>> getSheetRecords(XSSFSheet sheet,
+                                                      ExcelCellFormatter formatter,
+                                                      FormulaEvaluator formulaEval,
+                                                      RowFilter rowFilter) {
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> headers = getRowData(formatter, sheet, 0);
+        Predicate<FieldSource> filter = rowFilter == null ? null : rowFilter.bind(toFilterHeader(headers));
+        ExcelRowFields fields = new ExcelRowFields(formatter, formulaEval);
+
+        ColumnDictionary dictionary = newDictionary();
+        for (int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
+            if (filter != null && !filter.test(fields.reset(sheet.getRow(rowIndex)))) continue;
+
+            AtomicInteger index = new AtomicInteger();
+            List<String> rowData = getRowData(formatter, sheet, rowIndex, formulaEval, dictionary);
+            if (!isRowDataEmpty(rowData)) {
+                //In case of Empty Headers use index to prevent merge conflicts
+                records.add(rowData.stream().collect(
+                        Collectors.toMap(s ->
+                                Strings.isNullOrEmpty(headers.get(index.get()))
+                                        ? String.valueOf(index.getAndIncrement())
+                                        : headers.get(index.getAndIncrement()), s -> s)));
+            }
+        }
+
+        return records;
+    }
+
     /**
      * Pulls data in a xlsx/xls file from an S3 bucket, and converts data into a Map of column Name and column data values
      *
@@ -229,19 +476,28 @@ public class ExcelReader {
     public Map<String, List<String>> getExcelRecordsByColumnsFromS3(String bucket,
                                                                     String key,
                                                                     String expectedBucketOwner) throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsByColumnsFromS3(bucket, key, expectedBucketOwner, null, false, false);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
         S3Object s3Object = null;
         XSSFWorkbook workbook = null;
         try {
             Map<String, List<String>> records = new HashMap<>();
 
-            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
             workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
             XSSFSheet sheet = workbook.getSheetAt(0);
 
-            List<String> headers = getRowData(sheet, 0);
+            List<String> headers = getRowData(formatter, sheet, 0);
 
+            ColumnDictionary dictionary = newDictionary();
             for (int rowIndex = 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
-                List<String> rowData = getRowData(sheet, rowIndex);
+                List<String> rowData = getRowData(formatter, sheet, rowIndex, dictionary);
                 if (!isRowDataEmpty(rowData)) {
                     for (int colIndex = 0; colIndex < rowData.size(); colIndex++) {
                         String columnName = headers.get(colIndex);
@@ -272,13 +528,16 @@ public class ExcelReader {
 
     }
 
-    private List<String> getRowData(XSSFRow row) {
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFRow row) {
+        return getRowData(fmt, row, null);
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFRow row, ColumnDictionary dictionary) {
         List<String> rowData = new ArrayList<>();
         if (row != null) {
-            DataFormatter fmt = new DataFormatter();
             for (int colIndex = row.getFirstCellNum(); colIndex < row.getLastCellNum(); colIndex++) {
                 XSSFCell cell = row.getCell(colIndex);
-                rowData.add(Optional.ofNullable(fmt.formatCellValue(cell)).orElse("").trim());
+                rowData.add(intern(dictionary, colIndex, Optional.ofNullable(fmt.formatCellValue(cell)).orElse("").trim()));
             }
         }
         return rowData;
@@ -297,12 +556,26 @@ public class ExcelReader {
                                                                     String key,
                                                                     String sheetName,
                                                                     String expectedBucketOwner) throws IOException {
+        if (streaming != null) {
+            try {
+                Map<String, List<String>> records =
+                        streaming.getExcelRecordsByColumnsFromS3(bucket, key, expectedBucketOwner, sheetName, true, true);
+                if (records == null) {
+                    throw new RuntimeException(String.format("Error: %s: bucket: {%s}, key:{%s}, sheet: {%s}",
+                            "Worksheet is null.", bucket, key, sheetName));
+                }
+                return records;
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
         S3Object s3Object = null;
         XSSFWorkbook workbook = null;
         try {
             Map<String, List<String>> records = new HashMap<>();
-            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+            s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
             workbook = new XSSFWorkbook(s3Object.getObjectContent());
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
 
 
             XSSFSheet sheet = workbook.getSheet(sheetName);
@@ -313,10 +586,11 @@ public class ExcelReader {
             }
 
             int firstRowNum = sheet.getFirstRowNum();
-            List<String> headers = getRowData(sheet.getRow(firstRowNum));
+            List<String> headers = getRowData(formatter, sheet.getRow(firstRowNum));
 
+            ColumnDictionary dictionary = newDictionary();
             for (int rowIndex = firstRowNum + 1; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
-                List<String> rowData = getRowData(sheet.getRow(rowIndex));
+                List<String> rowData = getRowData(formatter, sheet.getRow(rowIndex), dictionary);
                 if (!isRowDataEmpty(rowData)) {
                     for (int colIndex = 0; colIndex < rowData.size(); colIndex++) {
                         String columnName = headers.get(colIndex);
@@ -350,36 +624,49 @@ public class ExcelReader {
 
     public List<List<String>> getExcelRecordsRowsFromS3(String bucket, String key, String expectedBucketOwner)
             throws IOException {
+        if (streaming != null) {
+            try {
+                return streaming.getExcelRecordsRowsFromS3(bucket, key, expectedBucketOwner);
+            } catch (FormulaCellException e) {
+                // Asked to read formulas with the DOM, which is logged
+            }
+        }
 
         List<List<String>> records = new ArrayList<>();
 
-        S3Object s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+        S3Object s3Object = getObjectFromS3(bucket, key, expectedBucketOwner);
         XSSFWorkbook workbook = new XSSFWorkbook(s3Object.getObjectContent());
+        ExcelCellFormatter formatter = new ExcelCellFormatter();
         XSSFSheet sheet = workbook.getSheetAt(0);
 
         // Creating formula evaluator object
         FormulaEvaluator formulaEval = workbook.getCreationHelper().createFormulaEvaluator();
 
+        ColumnDictionary dictionary = newDictionary();
         for (int rowIndex = 0; rowIndex < sheet.getLastRowNum() + 1; rowIndex++) {
-            records.add(getRowData(sheet, rowIndex, formulaEval));
+            records.add(getRowData(formatter, sheet, rowIndex, formulaEval, dictionary));
         }
 
         workbook.close();
         return records;
     }
 
-    private List<String> getRowData(XSSFSheet sheet, int rowIndex) {
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex) {
+        return getRowData(fmt, sheet, rowIndex, (ColumnDictionary) null);
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    ColumnDictionary dictionary) {
         List<String> rowData = new ArrayList<>();
         XSSFRow row = sheet.getRow(rowIndex);
         if (row != null) {
-            DataFormatter fmt = new DataFormatter();
             for (int colIndex = 0; colIndex < row.getLastCellNum(); colIndex++) {
                 XSSFCell cell = row.getCell(colIndex);
                 String valueAsSeenInExcel = fmt.formatCellValue(cell);
                 if (null == valueAsSeenInExcel || valueAsSeenInExcel.isEmpty())
                     rowData.add("");
                 else {
-                    rowData.add(valueAsSeenInExcel.trim());
+                    rowData.add(intern(dictionary, colIndex, valueAsSeenInExcel.trim()));
                 }
             }
         }
@@ -387,11 +674,16 @@ public class ExcelReader {
     }
 
 
-    private List<String> getRowData(XSSFSheet sheet, int rowIndex, FormulaEvaluator formulaEval) {
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    FormulaEvaluator formulaEval) {
+        return getRowData(fmt, sheet, rowIndex, formulaEval, null);
+    }
+
+    private List<String> getRowData(ExcelCellFormatter fmt, XSSFSheet sheet, int rowIndex,
+                                    FormulaEvaluator formulaEval, ColumnDictionary dictionary) {
         List<String> rowData = new ArrayList<>();
         XSSFRow row = sheet.getRow(rowIndex);
         if (row != null) {
-            DataFormatter fmt = new DataFormatter();
             for (int colIndex = 0; colIndex < row.getLastCellNum(); colIndex++) {
                 XSSFCell cell = row.getCell(colIndex);
                 String valueAsSeenInExcel;
@@ -412,13 +704,31 @@ public class ExcelReader {
                 if (null == valueAsSeenInExcel || valueAsSeenInExcel.isEmpty())
                     rowData.add("");
                 else {
-                    rowData.add(valueAsSeenInExcel.trim());
+                    rowData.add(intern(dictionary, colIndex, valueAsSeenInExcel.trim()));
                 }
             }
         }
         return rowData;
     }
 
+    private HeaderIndex toFilterHeader(List<String> headers) {
+        List<String> names = new ArrayList<>(headers);
+        for (int colIndex = 0; colIndex < names.size(); colIndex++) {
+            if (Strings.isNullOrEmpty(names.get(colIndex))) {
+                names.set(colIndex, String.valueOf(colIndex));
+            }
+        }
+        return HeaderIndex.of(names);
+    }
+
+    private ColumnDictionary newDictionary() {
+        return dictionarySize > 0 ? new ColumnDictionary(dictionarySize) : null;
+    }
+
+    private static String intern(ColumnDictionary dictionary, int colIndex, String value) {
+        return dictionary == null ? value : dictionary.intern(colIndex, value);
+    }
+
     private boolean isRowDataEmpty(List<String> rowData) {
         for (String cellData : rowData) {
             if (null != cellData && !cellData.isEmpty())
@@ -427,4 +737,7 @@ public class ExcelReader {
         return true;
     }
 
-}
\ No newline at end of file
+    private S3Object getObjectFromS3(String bucket, String key, String expectedBucketOwner) throws IOException {
+        return S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner, objectCache);
+    }
+}
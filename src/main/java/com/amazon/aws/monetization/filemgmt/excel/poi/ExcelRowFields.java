@@ -0,0 +1,76 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Reusable {@link FieldSource} over the cells of one sheet row, so row filters can look at individual cells before
+ * the readers format the whole row. Cells are formatted the same way the readers format them: as seen in Excel,
+ * trimmed, with formulas evaluated when an evaluator is given and missing cells read as empty strings. Numeric
+ * cells are compared on their raw value.
+ */
+public class ExcelRowFields implements FieldSource {
+    private final ExcelCellFormatter formatter;
+    private final FormulaEvaluator formulaEvaluator;
+    private Row row;
+
+    /**
+     * @param formulaEvaluator evaluates formula cells, or null to format them as stored
+     */
+    public ExcelRowFields(DataFormatter formatter, FormulaEvaluator formulaEvaluator) {
+        this(new ExcelCellFormatter(formatter), formulaEvaluator);
+    }
+
+    /**
+     * @param formatter        the formatter the reader uses for the rest of the workbook
+     * @param formulaEvaluator evaluates formula cells, or null to format them as stored
+     */
+    public ExcelRowFields(ExcelCellFormatter formatter, FormulaEvaluator formulaEvaluator) {
+        this.formatter = formatter;
+        this.formulaEvaluator = formulaEvaluator;
+    }
+
+    /**
+     * Points this view at another row, which may be null for a missing row.
+     */
+    public ExcelRowFields reset(Row row) {
+        this.row = row;
+        return this;
+    }
+
+    @Override
+    public String getField(int index) {
+        Cell cell = row == null ? null : row.getCell(index);
+        String valueAsSeenInExcel;
+        if (formulaEvaluator != null && cell != null && cell.getCellType() == CellType.FORMULA) {
+            try {
+                CellValue c = formulaEvaluator.evaluate(cell);
+                valueAsSeenInExcel = c.formatAsString();
+            } catch (Exception e) {
+                //Sometimes errors out on very complicated formulas
+                valueAsSeenInExcel = formatter.formatCellValue(cell);
+            }
+        } else {
+            valueAsSeenInExcel = formatter.formatCellValue(cell);
+        }
+        return valueAsSeenInExcel == null ? "" : valueAsSeenInExcel.trim();
+    }
+
+    @Override
+    public double getDouble(int index) {
+        Cell cell = row == null ? null : row.getCell(index);
+        if (cell != null && cell.getCellType() == CellType.NUMERIC) {
+            return cell.getNumericCellValue();
+        }
+        if (cell != null && cell.getCellType() == CellType.FORMULA && formulaEvaluator == null
+                && cell.getCachedFormulaResultType() == CellType.NUMERIC) {
+            return cell.getNumericCellValue();
+        }
+        return FieldSource.super.getDouble(index);
+    }
+}
@@ -1,5 +1,6 @@
 package com.amazon.aws.monetization.filemgmt.excel.poi;
 
+import com.amazon.aws.monetization.filemgmt.utils.AsyncUploadExecutor;
 import com.amazon.aws.monetization.filemgmt.utils.S3Util;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.S3Object;
@@ -12,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -20,9 +22,18 @@ import org.apache.poi.ss.usermodel.Workbook;
 public class ExcelWriter {
 
     private final AmazonS3 s3Client;
+    private final AsyncUploadExecutor asyncExecutor;
 
     public ExcelWriter(AmazonS3 s3Client) {
+        this(s3Client, AsyncUploadExecutor.getDefault());
+    }
+
+    /**
+     * @param asyncExecutor runs the {@code writeAsync} uploads
+     */
+    public ExcelWriter(AmazonS3 s3Client, AsyncUploadExecutor asyncExecutor) {
         this.s3Client = s3Client;
+        this.asyncExecutor = asyncExecutor;
     }
 
     private Path writeToTempDirectory(String fileName, Workbook workbook) throws IOException {
@@ -53,4 +64,25 @@ public class ExcelWriter {
         S3Util.uploadtoS3(s3Client, writeToTempDirectory(s3key, workbook), bucketName, s3key, expectedAccountOwner);
     }
 
-}
\ No newline at end of file
+    /**
+     * Asynchronous {@link #write(String, String, String, String, String)}, run on the writer's {@link AsyncUploadExecutor}.
+     */
+    public CompletableFuture<Void> writeAsync(String srcBucket, String srcKey, String destBucket, String destKey, String expectedBucketOwner) {
+        return asyncExecutor.submit(() -> {
+            write(srcBucket, srcKey, destBucket, destKey, expectedBucketOwner);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #write(String, String, Workbook, String)}. The workbook must not be modified until the
+     * future completes.
+     */
+    public CompletableFuture<Void> writeAsync(String bucketName, String s3key, Workbook workbook, String expectedAccountOwner) {
+        return asyncExecutor.submit(() -> {
+            write(bucketName, s3key, workbook, expectedAccountOwner);
+            return null;
+        });
+    }
+
+}
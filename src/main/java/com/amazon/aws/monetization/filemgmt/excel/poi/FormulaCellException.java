@@ -0,0 +1,16 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link StreamingSheetReader} that rejects formulas when it reaches a formula cell. The sheet XML only
+ * holds the result Excel cached, if any, so Excel readers asked to read formulas with the DOM catch it and read the
+ * workbook with the DOM instead.
+ */
+public class FormulaCellException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public FormulaCellException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,373 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import com.amazon.aws.monetization.filemgmt.model.ColumnDictionary;
+import com.amazon.aws.monetization.filemgmt.model.FieldSource;
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+import com.amazon.aws.monetization.filemgmt.utils.S3ObjectDiskCache;
+import com.amazon.aws.monetization.filemgmt.utils.S3Util;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The {@link ExcelEngine#STREAMING} engine behind both Excel readers. Builds the same records as their DOM code
+ * from a {@link StreamingSheetReader}: the header is the first row of the sheet, missing and empty rows are
+ * skipped, and with a dictionary repeated values of a column share one {@code String}. The workbook is downloaded
+ * to a temp file that is deleted once read, or with a {@link S3ObjectDiskCache} read in place from the cached file.
+ *
+ * Formula cells read as the result Excel cached in the file, which is not what the DOM code returns: it reads
+ * formulas as their text or evaluates them. Readers that need the DOM's formula values can ask for every read to
+ * fail with a {@link FormulaCellException} at the first formula cell instead, and load the workbook with the DOM.
+ * A warning is logged each time, as that read is no longer in constant memory.
+ */
+@Slf4j
+public class StreamingExcelReader {
+    private static final int PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final AmazonS3 s3Client;
+    private final int dictionarySize;
+    private final int sharedStringsCacheSize;
+    private final S3ObjectDiskCache objectCache;
+    private final boolean readFormulasWithDom;
+
+    /**
+     * @param dictionarySize when positive, the size of the {@link ColumnDictionary} used per workbook read
+     */
+    public StreamingExcelReader(AmazonS3 s3Client, int dictionarySize) {
+        this(s3Client, dictionarySize, 0);
+    }
+
+    /**
+     * @param dictionarySize         when positive, the size of the {@link ColumnDictionary} used per workbook read
+     * @param sharedStringsCacheSize when positive, shared strings are kept on disk with this many cached in memory,
+     *                               see {@link DiskSharedStringsTable}
+     */
+    public StreamingExcelReader(AmazonS3 s3Client, int dictionarySize, int sharedStringsCacheSize) {
+        this(s3Client, dictionarySize, sharedStringsCacheSize, null);
+    }
+
+    /**
+     * @param objectCache copies the workbooks from a local disk cache, revalidated against the object's ETag, or
+     *                    null to download them on every read
+     */
+    public StreamingExcelReader(AmazonS3 s3Client,
+                                int dictionarySize,
+                                int sharedStringsCacheSize,
+                                S3ObjectDiskCache objectCache) {
+        this(s3Client, dictionarySize, sharedStringsCacheSize, objectCache, false);
+    }
+
+    /**
+     * @param readFormulasWithDom whether reading a sheet with formula cells fails with a {@link FormulaCellException}
+     *                            for the caller to read it with the DOM, rather than reading the cached results
+     */
+    public StreamingExcelReader(AmazonS3 s3Client,
+                                int dictionarySize,
+                                int sharedStringsCacheSize,
+                                S3ObjectDiskCache objectCache,
+                                boolean readFormulasWithDom) {
+        this.s3Client = s3Client;
+        this.dictionarySize = dictionarySize;
+        this.sharedStringsCacheSize = sharedStringsCacheSize;
+        this.objectCache = objectCache;
+        this.readFormulasWithDom = readFormulasWithDom;
+    }
+
+    /**
+     * @return the streaming reader for the engine, or null for {@link ExcelEngine#DOM}
+     */
+    public static StreamingExcelReader forEngine(AmazonS3 s3Client, ExcelEngine engine, int dictionarySize) {
+        return forEngine(s3Client, engine, dictionarySize, null);
+    }
+
+    public static StreamingExcelReader forEngine(AmazonS3 s3Client,
+                                                 ExcelEngine engine,
+                                                 int dictionarySize,
+                                                 S3ObjectDiskCache objectCache) {
+        return forEngine(s3Client, engine, dictionarySize, objectCache, false);
+    }
+
+    public static StreamingExcelReader forEngine(AmazonS3 s3Client,
+                                                 ExcelEngine engine,
+                                                 int dictionarySize,
+                                                 S3ObjectDiskCache objectCache,
+                                                 boolean readFormulasWithDom) {
+        switch (engine) {
+            case STREAMING:
+                return new StreamingExcelReader(s3Client, dictionarySize, 0, objectCache, readFormulasWithDom);
+            case STREAMING_DISK_STRINGS:
+                return new StreamingExcelReader(s3Client, dictionarySize, DiskSharedStringsTable.DEFAULT_CACHE_SIZE,
+                        objectCache, readFormulasWithDom);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads the rows of a sheet after the header as maps of column name to value.
+     *
+     * @param sheetName         the sheet to read, or null for the first sheet
+     * @param rowFilter         the filter rows must match, or null to keep every row
+     * @param indexEmptyHeaders whether columns with an empty name are keyed by their index
+     * @return the records, or null if the sheet does not exist
+     * @throws FormulaCellException if formulas are read with the DOM and the sheet has formula cells
+     */
+    public List<Map<String, String>> getExcelRecordsFromS3(String bucket,
+                                                           String key,
+                                                           String expectedBucketOwner,
+                                                           String sheetName,
+                                                           RowFilter rowFilter,
+                                                           boolean indexEmptyHeaders) throws IOException {
+        List<Map<String, String>> records = new ArrayList<>();
+        HeaderRows rows = recordRows(records, rowFilter, indexEmptyHeaders);
+        return readSheet(bucket, key, expectedBucketOwner, sheetName, rows) ? records : null;
+    }
+
+    /**
+     * Reads the rows of several sheets after their header as maps of column name to value, from one download of the
+     * workbook. The sheets are parsed in parallel, up to one thread per processor.
+     *
+     * @param sheetNames        the sheets to read
+     * @param rowFilter         the filter rows must match, or null to keep every row
+     * @param indexEmptyHeaders whether columns with an empty name are keyed by their index
+     * @return the records of each sheet by sheet name, in the order given; sheets that do not exist are left out
+     * @throws FormulaCellException if formulas are read with the DOM and any of the sheets has formula cells
+     */
+    public Map<String, List<Map<String, String>>> getExcelRecordsBySheetFromS3(String bucket,
+                                                                             String key,
+                                                                             String expectedBucketOwner,
+                                                                             Collection<String> sheetNames,
+                                                                             RowFilter rowFilter,
+                                                                             boolean indexEmptyHeaders) throws IOException {
+        Map<String, List<Map<String, String>>> records = new LinkedHashMap<>();
+        Map<String, StreamingSheetReader.RowHandler> handlers = new HashMap<>();
+        for (String sheetName : sheetNames) {
+            List<Map<String, String>> sheetRecords = new ArrayList<>();
+            records.put(sheetName, sheetRecords);
+            handlers.put(sheetName, recordRows(sheetRecords, rowFilter, indexEmptyHeaders));
+        }
+        Set<String> found = readWorkbook(bucket, key, expectedBucketOwner,
+                reader -> reader.readSheets(handlers, PARSE_THREADS));
+        records.keySet().retainAll(found);
+        return records;
+    }
+
+    /**
+     * Reads the rows of a sheet after the header as a map of column name to the column's values.
+     *
+     * @param sheetName        the sheet to read, or null for the first sheet
+     * @param firstRowIsHeader whether the header is the first row found in the sheet rather than row 1
+     * @param fromFirstCell    whether each row starts at its first cell rather than at column A
+     * @return the columns, or null if the sheet does not exist
+     * @throws FormulaCellException if formulas are read with the DOM and the sheet has formula cells
+     */
+    public Map<String, List<String>> getExcelRecordsByColumnsFromS3(String bucket,
+                                                                    String key,
+                                                                    String expectedBucketOwner,
+                                                                    String sheetName,
+                                                                    boolean firstRowIsHeader,
+                                                                    boolean fromFirstCell) throws IOException {
+        Map<String, List<String>> records = new HashMap<>();
+        ColumnDictionary dictionary = newDictionary();
+        HeaderRows rows = new HeaderRows(firstRowIsHeader ? -1 : 0) {
+            @Override
+            void row(List<String> headers, List<String> cells) {
+                List<String> rowData = intern(dictionary, cells);
+                if (isRowDataEmpty(rowData)) {
+                    return;
+                }
+                for (int colIndex = 0; colIndex < rowData.size(); colIndex++) {
+                    records.computeIfAbsent(headers.get(colIndex), columnName -> new ArrayList<>()).add(rowData.get(colIndex));
+                }
+            }
+        };
+        return readWorkbook(bucket, key, expectedBucketOwner, reader -> reader.readSheet(sheetName, fromFirstCell, rows))
+                ? records : null;
+    }
+
+    /**
+     * Reads every row of the first sheet, header included. Rows missing from the file are empty lists, so the
+     * list index is the row number.
+     *
+     * @throws FormulaCellException if formulas are read with the DOM and the sheet has formula cells
+     */
+    public List<List<String>> getExcelRecordsRowsFromS3(String bucket, String key, String expectedBucketOwner) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        ColumnDictionary dictionary = newDictionary();
+        readSheet(bucket, key, expectedBucketOwner, null, (rowNum, cells) -> {
+            while (records.size() < rowNum) {
+                records.add(new ArrayList<>());
+            }
+            records.add(intern(dictionary, cells));
+        });
+        return records;
+    }
+
+    private boolean readSheet(String bucket,
+                              String key,
+                              String expectedBucketOwner,
+                              String sheetName,
+                              StreamingSheetReader.RowHandler handler) throws IOException {
+        return readWorkbook(bucket, key, expectedBucketOwner, reader -> reader.readSheet(sheetName, handler));
+    }
+
+    private <T> T readWorkbook(String bucket,
+                               String key,
+                               String expectedBucketOwner,
+                               WorkbookRead<T> read) throws IOException {
+        Path workbookFile = null;
+        try {
+            StreamingSheetReader reader;
+            if (objectCache != null) {
+                reader = new StreamingSheetReader(objectCache.openChannel(s3Client, bucket, key, expectedBucketOwner),
+                        sharedStringsCacheSize, readFormulasWithDom);
+            } else {
+                workbookFile = S3Util.downloadToTempFile(s3Client, bucket, key, expectedBucketOwner, ".xlsx");
+                reader = new StreamingSheetReader(workbookFile.toFile(), sharedStringsCacheSize, readFormulasWithDom);
+            }
+            try (reader) {
+                return read.apply(reader);
+            }
+        } catch (FormulaCellException e) {
+            // Not a failure, the caller reads the workbook with the DOM
+            log.warn("Reading Excel [{}] with the DOM, not in constant memory: {}", bucket + "/" + key, e.getMessage());
+            throw e;
+        } catch (IOException | SdkClientException e) {
+            throw new IOException(String.format("Error Reading Excel Records at [%s] due to an S3/IO Error, " +
+                    " error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Error Reading Excel Records at [%s] due to errors which could include  " +
+                    "duplicate column header errors error message received was [%s]", bucket + "/" + key, e.getMessage()), e);
+        } finally {
+            if (workbookFile != null) {
+                Files.deleteIfExists(workbookFile);
+            }
+        }
+    }
+
+    /**
+     * @return a handler adding the rows of a sheet after its header to the records
+     */
+    private HeaderRows recordRows(List<Map<String, String>> records, RowFilter rowFilter, boolean indexEmptyHeaders) {
+        ColumnDictionary dictionary = newDictionary();
+        return new HeaderRows(0) {
+            private Predicate<FieldSource> filter;
+
+            @Override
+            void header(List<String> headers) {
+                HeaderIndex index = HeaderIndex.of(indexEmptyHeaders ? indexEmpty(headers) : headers);
+                filter = rowFilter == null ? null : rowFilter.bind(index);
+            }
+
+            @Override
+            void row(List<String> headers, List<String> cells) {
+                if (filter != null && !filter.test(colIndex -> colIndex < cells.size() ? cells.get(colIndex) : "")) {
+                    return;
+                }
+                List<String> rowData = intern(dictionary, cells);
+                if (isRowDataEmpty(rowData)) {
+                    return;
+                }
+                AtomicInteger index = new AtomicInteger();
+                if (indexEmptyHeaders) {
+                    //In case of Empty Headers use index to prevent merge conflicts
+                    records.add(rowData.stream().collect(
+                            Collectors.toMap(s ->
+                                    Strings.isNullOrEmpty(headers.get(index.get()))
+                                            ? String.valueOf(index.getAndIncrement())
+                                            : headers.get(index.getAndIncrement()), s -> s)));
+                } else {
+                    records.add(rowData.stream().collect(
+                            Collectors.toMap(s -> headers.get(index.getAndIncrement()), s -> s)));
+                }
+            }
+        };
+    }
+
+    private ColumnDictionary newDictionary() {
+        return dictionarySize > 0 ? new ColumnDictionary(dictionarySize) : null;
+    }
+
+    private static List<String> intern(ColumnDictionary dictionary, List<String> cells) {
+        List<String> rowData = new ArrayList<>(cells.size());
+        for (int colIndex = 0; colIndex < cells.size(); colIndex++) {
+            String value = cells.get(colIndex);
+            rowData.add(dictionary == null || value.isEmpty() ? value : dictionary.intern(colIndex, value));
+        }
+        return rowData;
+    }
+
+    private static List<String> indexEmpty(List<String> headers) {
+        List<String> names = new ArrayList<>(headers);
+        for (int colIndex = 0; colIndex < names.size(); colIndex++) {
+            if (Strings.isNullOrEmpty(names.get(colIndex))) {
+                names.set(colIndex, String.valueOf(colIndex));
+            }
+        }
+        return names;
+    }
+
+    private static boolean isRowDataEmpty(List<String> rowData) {
+        for (String cellData : rowData) {
+            if (null != cellData && !cellData.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    private interface WorkbookRead<T> {
+        T apply(StreamingSheetReader reader) throws IOException;
+    }
+
+    /**
+     * Splits the rows of a sheet into its header and the rows after it. When the header row is missing from the
+     * file the header is empty, as {@code getRowData} returns for a missing row.
+     */
+    private abstract static class HeaderRows implements StreamingSheetReader.RowHandler {
+        private final int headerRowNum;
+        private List<String> headers;
+
+        /**
+         * @param headerRowNum the row number of the header, or -1 for the first row found
+         */
+        private HeaderRows(int headerRowNum) {
+            this.headerRowNum = headerRowNum;
+        }
+
+        @Override
+        public void accept(int rowNum, List<String> cells) {
+            if (headers == null) {
+                if (headerRowNum < 0 || rowNum == headerRowNum) {
+                    headers = new ArrayList<>(cells);
+                    header(headers);
+                    return;
+                }
+                headers = Collections.emptyList();
+                header(headers);
+            }
+            row(headers, cells);
+        }
+
+        void header(List<String> headers) {
+        }
+
+        abstract void row(List<String> headers, List<String> cells);
+    }
+}
@@ -0,0 +1,386 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the rows of an xlsx sheet by streaming the sheet XML with SAX, instead of building the workbook DOM. Only
+ * the current row, the styles and the shared strings table are in memory, however many rows the sheet has. Cells
+ * are formatted by a {@link DataFormatter} the way Excel shows them, formulas by their cached result, and values
+ * are trimmed, the same as the DOM based readers. A row is as wide as its last cell in the file, blank styled cells
+ * included, again as in the DOM; rows that have no cells in the file are not reported. A reader can instead reject
+ * formulas, failing at the first formula cell with a {@link FormulaCellException}, for callers that must read them
+ * the way the DOM does.
+ *
+ * The shared strings table is held in memory by default. For workbooks with millions of unique strings it can be
+ * kept on disk instead with a {@link DiskSharedStringsTable}, so memory no longer grows with the strings either.
+ */
+public class StreamingSheetReader implements Closeable {
+    /**
+     * Entries up to this size are not checked for their inflate ratio, as {@link ZipSecureFile} allows.
+     */
+    private static final long GRACE_ENTRY_SIZE = 100 * 1024;
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final SharedStrings sharedStrings;
+    private final StylesTable styles;
+    private final boolean rejectFormulas;
+
+    /**
+     * Called for every row of the sheet in order, with the 0 based row number and the cell values. Missing cells
+     * before the last one are empty strings. The list is reused for the next row.
+     */
+    public interface RowHandler {
+        void accept(int rowNum, List<String> cells) throws IOException;
+    }
+
+    /**
+     * @param xlsx the workbook file; it is read in place, not loaded
+     */
+    public StreamingSheetReader(File xlsx) throws IOException {
+        this(xlsx, 0);
+    }
+
+    /**
+     * @param xlsx                   the workbook file; it is read in place, not loaded
+     * @param sharedStringsCacheSize when positive, the shared strings are indexed into temp files and this many are
+     *                               cached in memory; otherwise they are all loaded in memory
+     */
+    public StreamingSheetReader(File xlsx, int sharedStringsCacheSize) throws IOException {
+        this(xlsx, sharedStringsCacheSize, false);
+    }
+
+    /**
+     * @param rejectFormulas whether reading a sheet with a formula cell fails with a {@link FormulaCellException}
+     *                       rather than reporting the cached result
+     */
+    public StreamingSheetReader(File xlsx, int sharedStringsCacheSize, boolean rejectFormulas) throws IOException {
+        this(open(xlsx), xlsx, sharedStringsCacheSize, rejectFormulas);
+    }
+
+    /**
+     * Reads the workbook in place from a channel, such as a {@link java.nio.channels.FileChannel} over a cached file.
+     * The size limits of {@link ZipSecureFile} are checked against the sizes the zip declares.
+     *
+     * @param xlsx the workbook; it is closed with the reader, or if it can not be opened
+     */
+    public StreamingSheetReader(SeekableByteChannel xlsx, int sharedStringsCacheSize, boolean rejectFormulas)
+            throws IOException {
+        this(open(xlsx), xlsx, sharedStringsCacheSize, rejectFormulas);
+    }
+
+    private StreamingSheetReader(OPCPackage pkg, Object xlsx, int sharedStringsCacheSize, boolean rejectFormulas)
+            throws IOException {
+        this.pkg = pkg;
+        this.rejectFormulas = rejectFormulas;
+        try {
+            this.reader = new XSSFReader(pkg);
+            this.styles = reader.getStylesTable();
+            this.sharedStrings = sharedStringsCacheSize > 0
+                    ? new DiskSharedStringsTable(pkg, sharedStringsCacheSize)
+                    : new ReadOnlySharedStringsTable(pkg, false);
+        } catch (OpenXML4JException | SAXException | IOException | RuntimeException e) {
+            pkg.revert();
+            throw new IOException(String.format("Unable to read workbook %s", xlsx), e);
+        }
+    }
+
+    /**
+     * Streams the rows of a sheet to the handler.
+     *
+     * @param sheetName the sheet to read, or null for the first sheet
+     * @return false if the workbook has no such sheet
+     */
+    public boolean readSheet(String sheetName, RowHandler handler) throws IOException {
+        return readSheet(sheetName, false, handler);
+    }
+
+    /**
+     * Streams the rows of a sheet to the handler.
+     *
+     * @param sheetName     the sheet to read, or null for the first sheet
+     * @param fromFirstCell whether each row starts at its first cell in the file, as from {@code Row#getFirstCellNum()},
+     *                      rather than at column A
+     * @return false if the workbook has no such sheet
+     */
+    public boolean readSheet(String sheetName, boolean fromFirstCell, RowHandler handler) throws IOException {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    if (sheetName == null || sheetName.equals(sheets.getSheetName())) {
+                        parse(sheet, new RowCollector(handler, fromFirstCell));
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(String.format("Unable to read sheet %s", sheetName), e);
+        } catch (UncheckedIOException e) {
+            // Handler failures are tunnelled through the SAX callbacks
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Streams several sheets at once, each on its own thread with its own handler, so reading them takes about as
+     * long as the slowest sheet. The styles and shared strings are loaded once and shared by all the sheets.
+     *
+     * @param handlers the handler of each sheet to read, by sheet name
+     * @param threads  how many sheets may be parsed at the same time
+     * @return the names of the sheets found in the workbook; the other handlers are not called
+     */
+    public Set<String> readSheets(Map<String, RowHandler> handlers, int threads) throws IOException {
+        Map<String, InputStream> parts = new LinkedHashMap<>();
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream sheet = sheets.next();
+                String sheetName = sheets.getSheetName();
+                if (handlers.containsKey(sheetName) && !parts.containsKey(sheetName)) {
+                    parts.put(sheetName, sheet);
+                } else {
+                    sheet.close();
+                }
+            }
+        } catch (OpenXML4JException | IOException e) {
+            closeAll(parts.values());
+            throw new IOException(String.format("Unable to read sheets %s", handlers.keySet()), e);
+        }
+
+        ExecutorService parsePool = Executors.newFixedThreadPool(Math.max(1, Math.min(parts.size(), threads)));
+        try {
+            List<String> sheetNames = new ArrayList<>(parts.keySet());
+            List<Future<Void>> parsing = new ArrayList<>();
+            for (String sheetName : sheetNames) {
+                parsing.add(parsePool.submit(() -> {
+                    try (InputStream sheet = parts.get(sheetName)) {
+                        parse(sheet, new RowCollector(handlers.get(sheetName), false));
+                    }
+                    return null;
+                }));
+            }
+
+            IOException failure = null;
+            for (int i = 0; i < parsing.size(); i++) {
+                try {
+                    parsing.get(i).get();
+                } catch (ExecutionException e) {
+                    IOException cause = toIOException(sheetNames.get(i), e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("Interrupted reading sheets %s", sheetNames));
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return parts.keySet();
+        } finally {
+            parsePool.shutdownNow();
+            // Parts of sheets that never started are still open
+            closeAll(parts.values());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sharedStrings instanceof DiskSharedStringsTable) {
+            ((DiskSharedStringsTable) sharedStrings).close();
+        }
+        // Opened read only, so there is nothing to save
+        pkg.revert();
+    }
+
+    private static OPCPackage open(File xlsx) throws IOException {
+        try {
+            return OPCPackage.open(xlsx, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException(String.format("Unable to open workbook %s", xlsx), e);
+        }
+    }
+
+    private static OPCPackage open(SeekableByteChannel xlsx) throws IOException {
+        ZipFile zip;
+        try {
+            zip = ZipFile.builder().setSeekableByteChannel(xlsx).get();
+        } catch (IOException | RuntimeException e) {
+            xlsx.close();
+            throw e;
+        }
+        try {
+            checkEntrySizes(zip);
+            return OPCPackage.open(new ZipFileZipEntrySource(zip));
+        } catch (InvalidFormatException | IOException | RuntimeException e) {
+            zip.close();
+            throw new IOException(String.format("Unable to open workbook %s", xlsx), e);
+        }
+    }
+
+    private static void checkEntrySizes(ZipFile zip) throws IOException {
+        for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+            long size = entry.getSize();
+            if (size > ZipSecureFile.getMaxEntrySize()) {
+                throw new IOException(String.format("Zip entry %s of %d bytes is over the maximum of %d",
+                        entry.getName(), size, ZipSecureFile.getMaxEntrySize()));
+            }
+            if (size > GRACE_ENTRY_SIZE && (double) entry.getCompressedSize() / size < ZipSecureFile.getMinInflateRatio()) {
+                throw new IOException(String.format("Zip entry %s inflates %d bytes to %d, a possible zip bomb",
+                        entry.getName(), entry.getCompressedSize(), size));
+            }
+        }
+    }
+
+    private void parse(InputStream sheet, RowCollector rows) throws IOException, SAXException, ParserConfigurationException {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new SheetHandler(styles, sharedStrings, rows, rejectFormulas));
+        parser.parse(new InputSource(sheet));
+    }
+
+    private static IOException toIOException(String sheetName, Throwable failure) {
+        if (failure instanceof UncheckedIOException) {
+            // Handler failures are tunnelled through the SAX callbacks
+            return ((UncheckedIOException) failure).getCause();
+        }
+        if (failure instanceof IOException) {
+            return (IOException) failure;
+        }
+        return new IOException(String.format("Unable to read sheet %s", sheetName), failure);
+    }
+
+    private static void closeAll(Collection<InputStream> streams) {
+        for (InputStream stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Only read from, nothing is lost
+            }
+        }
+    }
+
+    /**
+     * POI only reports cells that have a value, so the cell elements are watched here to size rows the way
+     * {@code Row#getFirstCellNum()} and {@code Row#getLastCellNum()} do, and to find formula cells.
+     */
+    private static final class SheetHandler extends XSSFSheetXMLHandler {
+        private final RowCollector rows;
+        private final boolean rejectFormulas;
+        private String cellReference;
+
+        private SheetHandler(StylesTable styles, SharedStrings sharedStrings, RowCollector rows, boolean rejectFormulas) {
+            super(styles, null, sharedStrings, rows, new DataFormatter(), false);
+            this.rows = rows;
+            this.rejectFormulas = rejectFormulas;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("c".equals(localName)) {
+                cellReference = attributes.getValue("r");
+                rows.extendTo(cellReference);
+            } else if ("f".equals(localName) && rejectFormulas) {
+                throw new UncheckedIOException(new FormulaCellException(
+                        String.format("Formula cell %s can not be streamed", cellReference)));
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private final boolean fromFirstCell;
+        private final List<String> cells = new ArrayList<>();
+        private int first;
+        private int width;
+
+        private RowCollector(RowHandler handler, boolean fromFirstCell) {
+            this.handler = handler;
+            this.fromFirstCell = fromFirstCell;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            first = -1;
+            width = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            while (cells.size() < width) {
+                cells.add("");
+            }
+            if (fromFirstCell && first > 0) {
+                cells.subList(0, first).clear();
+            }
+            try {
+                handler.accept(rowNum, cells);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int colIndex = cellReference == null ? cells.size() : new CellReference(cellReference).getCol();
+            while (cells.size() < colIndex) {
+                cells.add("");
+            }
+            cells.add(formattedValue == null ? "" : formattedValue.trim());
+        }
+
+        private void extendTo(String cellReference) {
+            if (cellReference != null) {
+                int colIndex = new CellReference(cellReference).getCol();
+                first = first < 0 ? colIndex : Math.min(first, colIndex);
+                width = Math.max(width, colIndex + 1);
+            }
+        }
+    }
+}
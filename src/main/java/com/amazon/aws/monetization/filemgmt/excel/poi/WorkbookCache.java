@@ -0,0 +1,177 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import com.amazon.aws.monetization.filemgmt.utils.S3Util;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Caches xlsx workbooks by bucket and key, for templates and reference workbooks that are read over and over. Each
+ * entry keeps the object's ETag and is revalidated on every use with a conditional GET, which transfers nothing while
+ * the object is unchanged; a changed object is downloaded again. Entries are weighed by an estimate of the memory
+ * they retain, and the least recently used are evicted once the cache is over its maximum.
+ *
+ * {@link #read} parses the workbook once and shares it, lending it to one reader at a time, which must not modify or
+ * close it. {@link #copy} returns a workbook of the caller's own, parsed from the cached file on every call: it saves
+ * the download, not the parsing, and entries only ever copied keep just the file.
+ */
+public class WorkbookCache {
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 512L * 1024 * 1024;
+
+    /**
+     * Rough memory a workbook DOM retains per byte of its uncompressed XML parts.
+     */
+    private static final int RETAINED_BYTES_PER_XML_BYTE = 4;
+
+    /**
+     * Used when the part sizes are unknown; xlsx files typically compress their XML about tenfold.
+     */
+    private static final int RETAINED_BYTES_PER_FILE_BYTE = 10 * RETAINED_BYTES_PER_XML_BYTE;
+
+    private final Cache<String, Entry> cache;
+
+    /**
+     * @param maxRetainedBytes the estimated memory the cached workbooks may retain together
+     */
+    public WorkbookCache(long maxRetainedBytes) {
+        this.cache = CacheBuilder.newBuilder()
+                // A single segment, so eviction is least recently used over the whole cache and a large workbook
+                // is not held against a fraction of the maximum
+                .concurrencyLevel(1)
+                .maximumWeight(Math.max(1, maxRetainedBytes / 1024))
+                .weigher((String id, Entry entry) -> entry.weightKb)
+                .build();
+    }
+
+    /**
+     * Runs the reader on the cached workbook, loading or refreshing it first if needed. Readers of the same workbook
+     * run one at a time.
+     */
+    public <T> T read(AmazonS3 s3Client,
+                      String bucket,
+                      String key,
+                      String expectedBucketOwner,
+                      WorkbookReader<T> reader) throws IOException {
+        String id = bucket + "/" + key;
+        Entry entry = current(s3Client, id, bucket, key, expectedBucketOwner);
+        if (entry.workbook == null) {
+            Entry loaded = entry;
+            entry = loaded.parse();
+            // Concurrent first reads may both parse it; a newer version of the object is never replaced
+            cache.asMap().replace(id, loaded, entry);
+        }
+        synchronized (entry) {
+            return reader.read(entry.workbook);
+        }
+    }
+
+    /**
+     * @return a new workbook for the caller to use, modify and close, parsed from the cached copy of the file
+     */
+    public XSSFWorkbook copy(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) throws IOException {
+        Entry entry = current(s3Client, bucket + "/" + key, bucket, key, expectedBucketOwner);
+        return new XSSFWorkbook(new ByteArrayInputStream(entry.content));
+    }
+
+    public void invalidate(String bucket, String key) {
+        cache.invalidate(bucket + "/" + key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the number of workbooks cached
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private Entry current(AmazonS3 s3Client,
+                          String id,
+                          String bucket,
+                          String key,
+                          String expectedBucketOwner) throws IOException {
+        Entry cached = cache.getIfPresent(id);
+        S3Object s3Object = cached == null
+                ? S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner)
+                : S3Util.getObjectIfChanged(s3Client, bucket, key, expectedBucketOwner, cached.eTag);
+        if (s3Object == null) {
+            return cached;
+        }
+
+        try (S3Object changed = s3Object) {
+            ObjectMetadata metadata = changed.getObjectMetadata();
+            Entry entry = new Entry(metadata == null ? null : metadata.getETag(),
+                    IOUtils.toByteArray(changed.getObjectContent()), null);
+            if (entry.eTag != null) {
+                // Concurrent refreshes of one object may both load it; the last one stays cached
+                cache.put(id, entry);
+            } else {
+                // Without an ETag the entry could never be revalidated
+                cache.invalidate(id);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Reads a cached workbook, which must not be modified or closed.
+     */
+    public interface WorkbookReader<T> {
+        T read(XSSFWorkbook workbook) throws IOException;
+    }
+
+    private static final class Entry {
+        private final String eTag;
+        private final byte[] content;
+        private final XSSFWorkbook workbook;
+        private final int weightKb;
+
+        /**
+         * @param workbook the parsed content, or null until the workbook is first read
+         */
+        private Entry(String eTag, byte[] content, XSSFWorkbook workbook) {
+            this.eTag = eTag;
+            this.content = content;
+            this.workbook = workbook;
+            long retainedBytes = workbook == null ? 0 : estimateRetainedBytes();
+            this.weightKb = (int) Math.min(Integer.MAX_VALUE, (content.length + retainedBytes) / 1024);
+        }
+
+        private Entry parse() throws IOException {
+            return new Entry(eTag, content, new XSSFWorkbook(new ByteArrayInputStream(content)));
+        }
+
+        /**
+         * Sums the uncompressed sizes of the parts from the zip central directory, which is read without inflating
+         * anything.
+         */
+        private long estimateRetainedBytes() {
+            long xmlBytes = 0;
+            try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(content)).get()) {
+                for (ZipArchiveEntry part : Collections.list(zip.getEntries())) {
+                    if (part.getSize() < 0) {
+                        return (long) content.length * RETAINED_BYTES_PER_FILE_BYTE;
+                    }
+                    xmlBytes += part.getSize();
+                }
+            } catch (IOException e) {
+                return (long) content.length * RETAINED_BYTES_PER_FILE_BYTE;
+            }
+            return xmlBytes * RETAINED_BYTES_PER_XML_BYTE;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per column string dictionary used while reading one file, so that repeated values of low cardinality columns
+ * (currency, region, status, ...) share a single {@code String} instance. Each column keeps at most
+ * {@code maxValuesPerColumn} distinct values; once a column sees more than that its dictionary is dropped and
+ * its values are returned as they are, so high cardinality columns stop paying for lookups.
+ *
+ * Values can be interned either as strings or straight from UTF-8 bytes, in which case a repeated value is found
+ * without decoding it at all. A column should be fed through one of the two paths only. Not thread safe.
+ */
+public final class ColumnDictionary {
+    private final int maxValuesPerColumn;
+    private Column[] columns = new Column[16];
+
+    /**
+     * @param maxValuesPerColumn the number of distinct values a column may have before it falls back to plain strings
+     */
+    public ColumnDictionary(int maxValuesPerColumn) {
+        if (maxValuesPerColumn <= 0) {
+            throw new IllegalArgumentException("maxValuesPerColumn must be positive");
+        }
+        this.maxValuesPerColumn = maxValuesPerColumn;
+    }
+
+    /**
+     * @return the shared instance equal to the value, or the value itself once the column has fallen back
+     */
+    public String intern(int column, String value) {
+        if (value == null) {
+            return null;
+        }
+        Column dictionary = column(column);
+        if (dictionary.disabled) {
+            return value;
+        }
+
+        if (dictionary.strings == null) {
+            dictionary.strings = new HashMap<>();
+        }
+        String shared = dictionary.strings.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (dictionary.strings.size() == maxValuesPerColumn) {
+            dictionary.disable();
+            return value;
+        }
+        dictionary.strings.put(value, value);
+        return value;
+    }
+
+    /**
+     * Looks up a UTF-8 encoded value, decoding it only the first time it is seen in the column.
+     * @return the shared instance for the value, or a new string once the column has fallen back
+     */
+    public String intern(int column, byte[] utf8, int offset, int length) {
+        Column dictionary = column(column);
+        if (dictionary.disabled) {
+            return new String(utf8, offset, length, StandardCharsets.UTF_8);
+        }
+
+        if (dictionary.bytes == null) {
+            dictionary.bytes = new ByteTable();
+        }
+        ByteTable table = dictionary.bytes;
+        int hash = hash(utf8, offset, length);
+        int slot = table.find(utf8, offset, length, hash);
+        if (table.values[slot] != null) {
+            return table.values[slot];
+        }
+
+        String value = new String(utf8, offset, length, StandardCharsets.UTF_8);
+        if (table.size == maxValuesPerColumn) {
+            dictionary.disable();
+            return value;
+        }
+        table.put(slot, Arrays.copyOfRange(utf8, offset, offset + length), value, hash);
+        return value;
+    }
+
+    /**
+     * @return whether the column has passed the cardinality threshold and no longer deduplicates
+     */
+    public boolean isDisabled(int column) {
+        return column < columns.length && columns[column] != null && columns[column].disabled;
+    }
+
+    private Column column(int column) {
+        if (column >= columns.length) {
+            columns = Arrays.copyOf(columns, Math.max(column + 1, columns.length * 2));
+        }
+        Column dictionary = columns[column];
+        if (dictionary == null) {
+            dictionary = new Column();
+            columns[column] = dictionary;
+        }
+        return dictionary;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Column {
+        private boolean disabled;
+        private Map<String, String> strings;
+        private ByteTable bytes;
+
+        private void disable() {
+            disabled = true;
+            strings = null;
+            bytes = null;
+        }
+    }
+
+    /**
+     * Open addressing table from UTF-8 bytes to the decoded string.
+     */
+    private static final class ByteTable {
+        private byte[][] keys = new byte[16][];
+        private String[] values = new String[16];
+        private int[] hashes = new int[16];
+        private int size;
+
+        /**
+         * @return the slot holding the key, or the empty slot where it belongs
+         */
+        private int find(byte[] utf8, int offset, int length, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    return slot;
+                }
+                if (hashes[slot] == hash && key.length == length && regionEquals(key, utf8, offset)) {
+                    return slot;
+                }
+            }
+        }
+
+        private void put(int slot, byte[] key, String value, int hash) {
+            keys[slot] = key;
+            values[slot] = value;
+            hashes[slot] = hash;
+            size++;
+            if (size * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int[] oldHashes = hashes;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = oldHashes[i] & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        private static boolean regionEquals(byte[] key, byte[] bytes, int offset) {
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
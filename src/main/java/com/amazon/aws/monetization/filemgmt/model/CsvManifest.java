@@ -0,0 +1,71 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Lists the S3 objects one logical csv export was split into, in the order they were completed, so consumers can
+ * read them in parallel without listing the prefix.
+ */
+public final class CsvManifest {
+    private final String bucket;
+    private final List<Entry> entries;
+
+    public CsvManifest(String bucket, List<Entry> entries) {
+        this.bucket = bucket;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<String> getKeys() {
+        return entries.stream().map(Entry::getKey).collect(Collectors.toList());
+    }
+
+    public long getTotalRows() {
+        return entries.stream().mapToLong(Entry::getRowCount).sum();
+    }
+
+    public long getTotalBytes() {
+        return entries.stream().mapToLong(Entry::getByteCount).sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CsvManifest{bucket=%s, entries=%s}", bucket, entries);
+    }
+
+    /**
+     * One object of the export. The row count excludes the header line; the byte count is the object size, i.e.
+     * after compression.
+     */
+    @Getter
+    public static final class Entry {
+        private final String key;
+        private final String partition;
+        private final long rowCount;
+        private final long byteCount;
+
+        public Entry(String key, String partition, long rowCount, long byteCount) {
+            this.key = key;
+            this.partition = partition;
+            this.rowCount = rowCount;
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (partition %s, %d rows, %d bytes)", key, partition, rowCount, byteCount);
+        }
+    }
+}
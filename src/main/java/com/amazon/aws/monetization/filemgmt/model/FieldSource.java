@@ -0,0 +1,37 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+/**
+ * Positional access to the fields of the record a reader is currently on, before any row object is built for it.
+ * Readers that hold raw tokens or cells override the comparison methods to answer them without building a
+ * {@code String}; the defaults fall back to {@link #getField(int)}.
+ */
+public interface FieldSource {
+
+    /**
+     * @return the value of the field at the index in the current record
+     */
+    String getField(int index);
+
+    /**
+     * @return whether the field at the index equals the value
+     */
+    default boolean fieldEquals(int index, String value) {
+        return value.equals(getField(index));
+    }
+
+    /**
+     * @return whether the field at the index starts with the prefix
+     */
+    default boolean fieldStartsWith(int index, String prefix) {
+        String field = getField(index);
+        return field != null && field.startsWith(prefix);
+    }
+
+    /**
+     * Parses the field as a {@code double}, ignoring surrounding white space.
+     * @throws NumberFormatException if the field is not a number
+     */
+    default double getDouble(int index) {
+        return Double.parseDouble(getField(index).trim());
+    }
+}
@@ -0,0 +1,83 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable column dictionary shared by every {@link IndexedRow} read from the same file.
+ * When a column name repeats, lookups by name resolve to its last occurrence, matching OpenCSV's readMap.
+ */
+public final class HeaderIndex {
+    private final String[] names;
+    private final Map<String, Integer> indexByName;
+    private final int[] distinctIndexes;
+
+    private HeaderIndex(String[] names) {
+        this.names = names;
+        this.indexByName = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            indexByName.put(names[i], i);
+        }
+
+        int[] distinct = new int[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (indexByName.get(names[i]) == i) {
+                distinct[count++] = i;
+            }
+        }
+        this.distinctIndexes = Arrays.copyOf(distinct, count);
+    }
+
+    public static HeaderIndex of(String... names) {
+        return new HeaderIndex(names.clone());
+    }
+
+    public static HeaderIndex of(List<String> names) {
+        return new HeaderIndex(names.toArray(new String[0]));
+    }
+
+    /**
+     * Same as {@link #of(List)} but rejects repeated column names, as the Excel readers do.
+     * @throws IllegalArgumentException if a column name repeats
+     */
+    public static HeaderIndex ofUnique(List<String> names) {
+        HeaderIndex header = of(names);
+        if (header.distinctIndexes.length != header.names.length) {
+            throw new IllegalArgumentException(String.format("Duplicate column names in header %s", names));
+        }
+        return header;
+    }
+
+    /**
+     * @return the index of the column, or -1 when the header does not contain it
+     */
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    int[] getDistinctIndexes() {
+        return distinctIndexes;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
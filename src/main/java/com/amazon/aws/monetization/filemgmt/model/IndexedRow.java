@@ -0,0 +1,140 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact row representation: the column names live once in a shared {@link HeaderIndex} and each row only
+ * holds its values. A {@code Map} keyed by column name is available on demand through {@link #asMap()}, which is
+ * a read-only view and does not copy the values, or as a mutable copy through {@link #toMap()}.
+ */
+public final class IndexedRow {
+    private final HeaderIndex header;
+    private final String[] values;
+
+    public IndexedRow(HeaderIndex header, String[] values) {
+        this.header = header;
+        this.values = values;
+    }
+
+    public HeaderIndex getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the value at the column index, or null when the row is shorter than the header
+     */
+    public String get(int index) {
+        return index < values.length ? values[index] : null;
+    }
+
+    /**
+     * @return the value of the named column, or null when the column is unknown or missing from this row
+     */
+    public String get(String column) {
+        int index = header.indexOf(column);
+        return index < 0 ? null : get(index);
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Map<String, String> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * @return a mutable copy of the row keyed by column name, for callers that modify their records
+     */
+    public Map<String, String> toMap() {
+        return new HashMap<>(asMap());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IndexedRow)) return false;
+        IndexedRow other = (IndexedRow) o;
+        return header.getNames().equals(other.header.getNames()) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    /**
+     * Map view over the row. Columns the row has no value for are left out, as are all but the last of any
+     * repeated column names.
+     */
+    private final class MapView extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? IndexedRow.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    for (int index : header.getDistinctIndexes()) {
+                        if (IndexedRow.this.get(index) != null) count++;
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private final int[] indexes = header.getDistinctIndexes();
+        private int position = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return position < indexes.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int index = indexes[position];
+            position = advance(position + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(header.getName(index), values[index]);
+        }
+
+        private int advance(int from) {
+            int next = from;
+            while (next < indexes.length && get(indexes[next]) == null) {
+                next++;
+            }
+            return next;
+        }
+    }
+}
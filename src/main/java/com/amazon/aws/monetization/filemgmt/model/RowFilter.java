@@ -0,0 +1,149 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Column predicates that readers check against the raw fields of a record, through a {@link FieldSource},
+ * before building a row object for it. Column names are resolved once per file by {@link #bind(HeaderIndex)}, so
+ * a rejected row costs one or two field comparisons.
+ */
+public abstract class RowFilter {
+    // Up to this many values an in-set filter compares fields in place rather than building a String to hash
+    private static final int SMALL_SET_SIZE = 8;
+
+    private RowFilter() {
+    }
+
+    /**
+     * Resolves the filtered columns against a header.
+     * @throws IllegalArgumentException if a filtered column is not in the header
+     */
+    public abstract Predicate<FieldSource> bind(HeaderIndex header);
+
+    /**
+     * Keeps records whose column equals the value.
+     */
+    public static RowFilter equalTo(String column, String value) {
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                int index = indexOf(header, column);
+                return fields -> fields.fieldEquals(index, value);
+            }
+        };
+    }
+
+    /**
+     * Keeps records whose column equals one of the values.
+     */
+    public static RowFilter in(String column, Collection<String> values) {
+        Set<String> valueSet = ImmutableSet.copyOf(values);
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                int index = indexOf(header, column);
+                if (valueSet.size() > SMALL_SET_SIZE) {
+                    return fields -> valueSet.contains(fields.getField(index));
+                }
+                String[] valueArray = valueSet.toArray(new String[0]);
+                return fields -> {
+                    for (String value : valueArray) {
+                        if (fields.fieldEquals(index, value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+        };
+    }
+
+    /**
+     * Keeps records whose column is a number between min and max, both inclusive. Blank and non numeric values
+     * are rejected.
+     */
+    public static RowFilter between(String column, double min, double max) {
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                int index = indexOf(header, column);
+                return fields -> {
+                    try {
+                        double value = fields.getDouble(index);
+                        return value >= min && value <= max;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Keeps records whose column sorts between min and max, both inclusive, e.g. ISO dates or billing periods.
+     */
+    public static RowFilter between(String column, String min, String max) {
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                int index = indexOf(header, column);
+                return fields -> {
+                    String value = fields.getField(index);
+                    return value != null && value.compareTo(min) >= 0 && value.compareTo(max) <= 0;
+                };
+            }
+        };
+    }
+
+    /**
+     * Keeps records whose column starts with the prefix.
+     */
+    public static RowFilter startsWith(String column, String prefix) {
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                int index = indexOf(header, column);
+                return fields -> fields.fieldStartsWith(index, prefix);
+            }
+        };
+    }
+
+    /**
+     * Keeps records matching every filter, checked in the given order so the most selective should come first.
+     */
+    public static RowFilter allOf(RowFilter... filters) {
+        List<RowFilter> filterList = ImmutableList.copyOf(filters);
+        return new RowFilter() {
+            @Override
+            public Predicate<FieldSource> bind(HeaderIndex header) {
+                List<Predicate<FieldSource>> predicates = new ArrayList<>(filterList.size());
+                for (RowFilter filter : filterList) {
+                    predicates.add(filter.bind(header));
+                }
+                return fields -> {
+                    for (Predicate<FieldSource> predicate : predicates) {
+                        if (!predicate.test(fields)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+        };
+    }
+
+    private static int indexOf(HeaderIndex header, String column) {
+        int index = header.indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException(String.format("Filter column %s is not present in the header", column));
+        }
+        return index;
+    }
+}
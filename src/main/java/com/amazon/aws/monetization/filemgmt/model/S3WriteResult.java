@@ -0,0 +1,64 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a writer put in S3, with the checksums of the bytes it sent computed while they were encoded. The MD5 was
+ * sent as {@code Content-MD5}, for the whole object on a single put or for every part of a multipart upload, so S3
+ * has already verified it; consumers can compare the CRC32C against their own copy without downloading the object
+ * again. Checksums are base64, as in the S3 headers, and cover the stored bytes, i.e. after compression.
+ */
+@Getter
+public final class S3WriteResult {
+    private final String bucket;
+    private final String key;
+    private final String eTag;
+    private final long length;
+    private final String contentMd5;
+    private final String crc32c;
+    private final List<Part> parts;
+
+    /**
+     * @param parts the parts of a multipart upload, or empty for a single put
+     */
+    public S3WriteResult(String bucket, String key, String eTag, long length, String contentMd5, String crc32c, List<Part> parts) {
+        this.bucket = bucket;
+        this.key = key;
+        this.eTag = eTag;
+        this.length = length;
+        this.contentMd5 = contentMd5;
+        this.crc32c = crc32c;
+        this.parts = Collections.unmodifiableList(new ArrayList<>(parts));
+    }
+
+    public boolean isMultipart() {
+        return !parts.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("S3WriteResult{bucket=%s, key=%s, eTag=%s, length=%d, contentMd5=%s, crc32c=%s, parts=%d}",
+                bucket, key, eTag, length, contentMd5, crc32c, parts.size());
+    }
+
+    @Getter
+    public static final class Part {
+        private final int partNumber;
+        private final String eTag;
+        private final long length;
+        private final String contentMd5;
+        private final String crc32c;
+
+        public Part(int partNumber, String eTag, long length, String contentMd5, String crc32c) {
+            this.partNumber = partNumber;
+            this.eTag = eTag;
+            this.length = length;
+            this.contentMd5 = contentMd5;
+            this.crc32c = crc32c;
+        }
+    }
+}
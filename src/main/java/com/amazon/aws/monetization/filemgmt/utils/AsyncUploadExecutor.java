@@ -0,0 +1,111 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking S3 uploads off the caller's thread and hands back a {@link CompletableFuture}. At most
+ * {@code maxInFlight} uploads run at once; further uploads wait in a queue without holding a thread, and start as
+ * running ones finish. The default instance runs uploads on virtual threads when the JVM has them (Java 21+) and on
+ * a cached pool of daemon threads otherwise.
+ */
+public class AsyncUploadExecutor {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private static final AsyncUploadExecutor DEFAULT = new AsyncUploadExecutor(newDefaultExecutor(), DEFAULT_MAX_IN_FLIGHT);
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final Queue<QueuedUpload<?>> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param executor    runs the uploads; with a bounded pool, keep {@code maxInFlight} at or below its size
+     * @param maxInFlight how many uploads may run at once
+     */
+    public AsyncUploadExecutor(Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format("At least one upload must be allowed in flight, got %d", maxInFlight));
+        }
+        this.executor = executor;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    public static AsyncUploadExecutor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Queues the upload. The future completes with its result, or exceptionally with whatever it threw.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> upload) {
+        QueuedUpload<T> queued = new QueuedUpload<>(upload);
+        waiting.add(queued);
+        dispatch();
+        return queued.future;
+    }
+
+    /**
+     * @return how many uploads are queued behind the running ones
+     */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    private void dispatch() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            QueuedUpload<?> next = waiting.poll();
+            if (next == null) {
+                // Another thread took it between the check and the poll
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                next.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static ExecutorService newDefaultExecutor() {
+        try {
+            // Looked up reflectively so the library still runs on Java versions without virtual threads
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-upload-%d").build());
+        }
+    }
+
+    private final class QueuedUpload<T> implements Runnable {
+        private final Callable<T> upload;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private QueuedUpload(Callable<T> upload) {
+            this.upload = upload;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(upload.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                permits.release();
+                dispatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetBucketEncryptionResult;
+import com.amazonaws.services.s3.model.ServerSideEncryptionByDefault;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the default SSE configuration of S3 buckets, so writers do not call {@code GetBucketEncryption} before
+ * every object they put. Entries expire after a TTL so key changes on the bucket are eventually picked up, and
+ * concurrent lookups of the same bucket share a single request. Failed lookups are not cached. Call
+ * {@link #invalidate(String)} when a write is rejected because the bucket's encryption changed.
+ *
+ * The writers and {@link S3Util} all share {@link #getDefault()}.
+ */
+public class BucketEncryptionCache {
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+    public static final long DEFAULT_MAX_BUCKETS = 1000;
+
+    private static final BucketEncryptionCache DEFAULT = new BucketEncryptionCache(DEFAULT_TTL, DEFAULT_MAX_BUCKETS);
+
+    private final Cache<String, BucketEncryption> cache;
+
+    public BucketEncryptionCache(Duration ttl, long maxBuckets) {
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxBuckets)
+                .build();
+    }
+
+    public static BucketEncryptionCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the bucket's default encryption, read from S3 on the first call and once the entry expires
+     */
+    public BucketEncryption get(AmazonS3 s3Client, String bucket) {
+        try {
+            return cache.get(bucket, () -> load(s3Client, bucket));
+        } catch (UncheckedExecutionException | ExecutionError e) {
+            // Rethrow the SDK exception itself, as the writers did before the cache
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(String.format("Unable to read encryption configuration for bucket %s", bucket), e.getCause());
+        }
+    }
+
+    public void invalidate(String bucket) {
+        cache.invalidate(bucket);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static BucketEncryption load(AmazonS3 s3Client, String bucket) {
+        GetBucketEncryptionResult getBucketEncryptionResult = s3Client.getBucketEncryption(bucket);
+        ServerSideEncryptionByDefault serverSideEncryptionByDefault =
+                getBucketEncryptionResult.getServerSideEncryptionConfiguration().getRules().get(0).getApplyServerSideEncryptionByDefault();
+        return new BucketEncryption(serverSideEncryptionByDefault.getSSEAlgorithm(), serverSideEncryptionByDefault.getKMSMasterKeyID());
+    }
+
+    @Getter
+    public static final class BucketEncryption {
+        private final String sseAlgorithm;
+        private final String kmsMasterKeyId;
+
+        public BucketEncryption(String sseAlgorithm, String kmsMasterKeyId) {
+            this.sseAlgorithm = sseAlgorithm;
+            this.kmsMasterKeyId = kmsMasterKeyId;
+        }
+    }
+}
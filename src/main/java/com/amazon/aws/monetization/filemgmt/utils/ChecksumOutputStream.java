@@ -0,0 +1,33 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Checksums the bytes on their way to the underlying stream, so a staged object never has to be read again to
+ * find its MD5 or CRC32C.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+    private final ObjectChecksum checksum = new ObjectChecksum();
+
+    public ChecksumOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        checksum.update(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        checksum.update(b, off, len);
+    }
+
+    public ObjectChecksum getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,69 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+/**
+ * Running MD5 and CRC32C of an object's bytes, updated as the bytes are produced so the checksums are ready the
+ * moment the last byte is written. Values are base64 encoded the way S3 expects them, i.e. the MD5 is a
+ * {@code Content-MD5} header value and the CRC32C is the big-endian checksum. Not thread safe.
+ */
+public final class ObjectChecksum {
+    private final MessageDigest md5;
+    private final CRC32C crc32c = new CRC32C();
+    private long length;
+
+    public ObjectChecksum() {
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    public void update(int b) {
+        md5.update((byte) b);
+        crc32c.update(b);
+        length++;
+    }
+
+    public void update(byte[] b, int off, int len) {
+        md5.update(b, off, len);
+        crc32c.update(b, off, len);
+        length += len;
+    }
+
+    /**
+     * @return the number of bytes checksummed
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the base64 MD5 of the bytes so far; more bytes may still be added afterwards
+     */
+    public String getContentMd5() {
+        try {
+            return Base64.getEncoder().encodeToString(((MessageDigest) md5.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("MD5 digest can not be copied", e);
+        }
+    }
+
+    /**
+     * @return the base64 CRC32C of the bytes so far
+     */
+    public String getCrc32c() {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc32c.getValue()).array());
+    }
+
+    public void reset() {
+        md5.reset();
+        crc32c.reset();
+        length = 0;
+    }
+}
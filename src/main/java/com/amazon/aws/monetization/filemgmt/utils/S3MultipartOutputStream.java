@@ -0,0 +1,400 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Uploads everything written to it as one S3 object, cutting the bytes into multipart upload parts as they arrive.
+ *
+ * Each full part is handed to a background thread while the caller keeps writing into the next buffer, and at most
+ * {@code maxInFlightParts} parts are uploading at once: a writer that gets ahead of S3 blocks in {@link #write}
+ * until a part completes. Part buffers are recycled, so the heap used stays at {@code maxInFlightParts + 1} parts
+ * however large the object grows. {@link #close()} uploads the last part and completes the upload; an object that
+ * never fills a part is sent with a single put instead. Any failure aborts the multipart upload so no orphaned parts
+ * are left behind, and is rethrown from the next write or from {@link #close()}.
+ *
+ * The MD5 and CRC32C of every part and of the whole object are computed as bytes are copied into the part buffers.
+ * Each part, or the single put, is sent with its {@code Content-MD5} so S3 rejects corrupted bytes, and
+ * {@link #getWriteResult()} reports the checksums once the object is complete.
+ */
+@Slf4j
+public class S3MultipartOutputStream extends OutputStream {
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_IN_FLIGHT_PARTS = 4;
+
+    private static final int MAX_PARTS = 10000;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final String bucket;
+    private final String key;
+    private final String expectedBucketOwner;
+    private final ObjectMetadata metadata;
+    private final String kmsMasterKeyId;
+    private final int partSize;
+
+    private final Semaphore inFlight;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final ExecutorService uploadPool;
+    private final boolean ownsUploadPool;
+    private final List<Future<PartETag>> parts = new ArrayList<>();
+    private final List<ObjectChecksum> partChecksums = new ArrayList<>();
+    private final ObjectChecksum objectChecksum = new ObjectChecksum();
+    private ObjectChecksum partChecksum = new ObjectChecksum();
+
+    private byte[] buffer;
+    private int count;
+    private long bytesWritten;
+    private String uploadId;
+    private S3WriteResult writeResult;
+    private volatile Throwable failure;
+    private boolean closed;
+    private boolean aborted;
+
+    public S3MultipartOutputStream(AmazonS3 s3Client,
+                                   String bucket,
+                                   String key,
+                                   String expectedBucketOwner,
+                                   ObjectMetadata metadata,
+                                   String kmsMasterKeyId) {
+        this(s3Client, bucket, key, expectedBucketOwner, metadata, kmsMasterKeyId, DEFAULT_PART_SIZE, DEFAULT_MAX_IN_FLIGHT_PARTS);
+    }
+
+    /**
+     * @param metadata         the object metadata, e.g. SSE algorithm and Content-Encoding; the content length is
+     *                         not known up front and is ignored
+     * @param kmsMasterKeyId   the SSE-KMS key to encrypt the object with, or null for none
+     * @param partSize         the size of every part but the last, at least {@link #MIN_PART_SIZE}
+     * @param maxInFlightParts how many parts may upload concurrently before writes block
+     */
+    public S3MultipartOutputStream(AmazonS3 s3Client,
+                                   String bucket,
+                                   String key,
+                                   String expectedBucketOwner,
+                                   ObjectMetadata metadata,
+                                   String kmsMasterKeyId,
+                                   int partSize,
+                                   int maxInFlightParts) {
+        this(s3Client, bucket, key, expectedBucketOwner, metadata, kmsMasterKeyId, partSize, maxInFlightParts, null);
+    }
+
+    /**
+     * @param uploadPool runs the part uploads, e.g. a pool shared by many streams, or null to give this stream its
+     *                   own {@code maxInFlightParts} threads. A shared pool is not shut down on close.
+     */
+    public S3MultipartOutputStream(AmazonS3 s3Client,
+                                   String bucket,
+                                   String key,
+                                   String expectedBucketOwner,
+                                   ObjectMetadata metadata,
+                                   String kmsMasterKeyId,
+                                   int partSize,
+                                   int maxInFlightParts,
+                                   ExecutorService uploadPool) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException(String.format("Part size %d is below the S3 minimum of %d bytes", partSize, MIN_PART_SIZE));
+        }
+        if (maxInFlightParts < 1) {
+            throw new IllegalArgumentException(String.format("At least one part must be allowed in flight, got %d", maxInFlightParts));
+        }
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.expectedBucketOwner = expectedBucketOwner;
+        this.metadata = metadata == null ? new ObjectMetadata() : metadata;
+        this.kmsMasterKeyId = kmsMasterKeyId;
+        this.partSize = partSize;
+
+        this.inFlight = new Semaphore(maxInFlightParts);
+        this.freeBuffers = new ArrayBlockingQueue<>(maxInFlightParts + 1);
+        this.ownsUploadPool = uploadPool == null;
+        this.uploadPool = uploadPool != null ? uploadPool : Executors.newFixedThreadPool(maxInFlightParts,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("s3-multipart-upload-%d").build());
+        // Grown up to a full part as bytes arrive, so small objects never allocate a whole part
+        this.buffer = new byte[Math.min(partSize, INITIAL_BUFFER_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (count == buffer.length) {
+            makeRoom();
+        }
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+        partChecksum.update(b);
+        objectChecksum.update(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            if (count == buffer.length) {
+                makeRoom();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            partChecksum.update(b, off, n);
+            objectChecksum.update(b, off, n);
+            count += n;
+            off += n;
+            len -= n;
+            bytesWritten += n;
+        }
+    }
+
+    /**
+     * Uploads the buffered bytes and completes the object. Closing again only rethrows an earlier upload failure.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            checkFailure();
+            return;
+        }
+        closed = true;
+        try {
+            checkFailure();
+            if (uploadId == null) {
+                putSingleObject();
+            } else {
+                if (count > 0) {
+                    submitPart();
+                }
+                completeUpload();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            abort();
+            throw e;
+        } finally {
+            buffer = null;
+            freeBuffers.clear();
+            if (ownsUploadPool) {
+                uploadPool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far; once closed, the size of the object
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return what was uploaded and its checksums, or null until the stream has been closed successfully
+     */
+    public S3WriteResult getWriteResult() {
+        return writeResult;
+    }
+
+    /**
+     * @return the id of the multipart upload, or null while the output still fits in a single part
+     */
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Abandons the object: stops any running part uploads and aborts the multipart upload. Nothing is written to S3.
+     */
+    public void abort() {
+        closed = true;
+        stopUploads();
+        if (aborted || uploadId == null) {
+            return;
+        }
+        aborted = true;
+        try {
+            AbortMultipartUploadRequest request = new AbortMultipartUploadRequest(bucket, key, uploadId);
+            if (null != expectedBucketOwner) {
+                request.setExpectedBucketOwner(expectedBucketOwner);
+            }
+            s3Client.abortMultipartUpload(request);
+        } catch (RuntimeException e) {
+            log.error(String.format("Unable to abort multipart upload %s for bucket %s and key %s", uploadId, bucket, key), e);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException(String.format("Multipart upload stream for bucket %s and key %s is closed", bucket, key));
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            abort();
+            throw new IOException(String.format("Part upload failed for bucket %s and key %s", bucket, key), t);
+        }
+    }
+
+    private void stopUploads() {
+        if (ownsUploadPool) {
+            uploadPool.shutdownNow();
+        } else {
+            parts.forEach(part -> part.cancel(true));
+        }
+    }
+
+    private void makeRoom() throws IOException {
+        if (buffer.length < partSize) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(partSize, buffer.length * 2L));
+        } else {
+            flushPart();
+        }
+    }
+
+    private void flushPart() throws IOException {
+        if (uploadId == null) {
+            initiateUpload();
+        }
+        submitPart();
+        byte[] free = freeBuffers.poll();
+        buffer = free != null ? free : new byte[partSize];
+        count = 0;
+    }
+
+    private void initiateUpload() throws IOException {
+        InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucket, key, metadata);
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+        if (kmsMasterKeyId != null) {
+            request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsMasterKeyId));
+        }
+        try {
+            uploadId = s3Client.initiateMultipartUpload(request).getUploadId();
+        } catch (RuntimeException e) {
+            failure = e;
+            closed = true;
+            stopUploads();
+            throw new IOException(String.format("Unable to start multipart upload for bucket %s and key %s", bucket, key), e);
+        }
+    }
+
+    private void submitPart() throws IOException {
+        int partNumber = parts.size() + 1;
+        if (partNumber > MAX_PARTS) {
+            throw new IOException(String.format(
+                    "Object for bucket %s and key %s needs more than %d parts of %d bytes", bucket, key, MAX_PARTS, partSize));
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted waiting to upload part %d for bucket %s and key %s", partNumber, bucket, key));
+        }
+        checkFailure();
+
+        byte[] part = buffer;
+        int length = count;
+        ObjectChecksum checksum = partChecksum;
+        partChecksums.add(checksum);
+        partChecksum = new ObjectChecksum();
+        UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(bucket)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withPartSize(length)
+                .withMD5Digest(checksum.getContentMd5())
+                .withInputStream(new ByteArrayInputStream(part, 0, length));
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        parts.add(uploadPool.submit(() -> {
+            try {
+                return s3Client.uploadPart(request).getPartETag();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                freeBuffers.offer(part);
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void completeUpload() throws IOException {
+        List<PartETag> partETags = new ArrayList<>(parts.size());
+        List<S3WriteResult.Part> partResults = new ArrayList<>(parts.size());
+        for (Future<PartETag> part : parts) {
+            try {
+                partETags.add(part.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted completing multipart upload for bucket %s and key %s", bucket, key));
+            } catch (ExecutionException e) {
+                throw new IOException(String.format("Part upload failed for bucket %s and key %s", bucket, key), e.getCause());
+            }
+        }
+        partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+        for (PartETag partETag : partETags) {
+            ObjectChecksum checksum = partChecksums.get(partETag.getPartNumber() - 1);
+            partResults.add(new S3WriteResult.Part(partETag.getPartNumber(), partETag.getETag(),
+                    checksum.getLength(), checksum.getContentMd5(), checksum.getCrc32c()));
+        }
+
+        CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags);
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+        CompleteMultipartUploadResult result = s3Client.completeMultipartUpload(request);
+        writeResult = new S3WriteResult(bucket, key, result == null ? null : result.getETag(), bytesWritten,
+                objectChecksum.getContentMd5(), objectChecksum.getCrc32c(), partResults);
+    }
+
+    private void putSingleObject() {
+        metadata.setContentLength(count);
+        metadata.setContentMD5(objectChecksum.getContentMd5());
+        PutObjectRequest request = new PutObjectRequest(bucket, key, new ByteArrayInputStream(buffer, 0, count), metadata);
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+        if (kmsMasterKeyId != null) {
+            request.withSSEAwsKeyManagementParams(new SSEAwsKeyManagementParams(kmsMasterKeyId));
+        }
+        PutObjectResult result = s3Client.putObject(request);
+        writeResult = new S3WriteResult(bucket, key, result == null ? null : result.getETag(), bytesWritten,
+                objectChecksum.getContentMd5(), objectChecksum.getCrc32c(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,206 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local disk cache of S3 objects, for reference files that are read again and again. Objects are stored in a
+ * directory by bucket, key and ETag, and revalidated on every use with an {@code If-None-Match} conditional GET: an
+ * unchanged object is read from disk with no transfer, a changed one is downloaded again and replaces it. Once the
+ * cached files are over the size cap the least recently used are deleted.
+ *
+ * Hits are served as a {@link FileChannel} over the cached file, which can be memory mapped, or as an
+ * {@link S3Object} reading it with the metadata of the GET that cached it. A file is opened before it can be
+ * evicted, and an open file stays readable after it is deleted on POSIX file systems. The index of cached objects
+ * is kept in memory, so files left by an earlier process are deleted when the cache is created.
+ */
+@Slf4j
+public class S3ObjectDiskCache {
+    private static final String SUFFIX = ".s3cache";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * @param directory the directory the cache stores its files in, created if needed
+     * @param maxBytes  the total size the cached files may take
+     */
+    public S3ObjectDiskCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            for (Path file : stale) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * @return the object, read from disk unless it changed in S3; closing it closes the file
+     */
+    public S3Object getObject(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) throws IOException {
+        Opened opened = open(s3Client, bucket, key, expectedBucketOwner);
+        S3Object s3Object = new S3Object();
+        s3Object.setBucketName(bucket);
+        s3Object.setKey(key);
+        s3Object.setObjectMetadata(opened.metadata.clone());
+        s3Object.setObjectContent(new S3ObjectInputStream(Channels.newInputStream(opened.channel), null));
+        return s3Object;
+    }
+
+    /**
+     * @return a read only channel over the object, cached on disk unless it changed in S3; the caller closes it
+     */
+    public FileChannel openChannel(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) throws IOException {
+        return open(s3Client, bucket, key, expectedBucketOwner).channel;
+    }
+
+    /**
+     * @return the total size of the cached files
+     */
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    public void invalidate(String bucket, String key) {
+        synchronized (entries) {
+            Entry entry = entries.remove(bucket + "/" + key);
+            if (entry != null) {
+                cachedBytes -= entry.size;
+                delete(entry.file);
+            }
+        }
+    }
+
+    private Opened open(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner) throws IOException {
+        String id = bucket + "/" + key;
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(id);
+        }
+        S3Object s3Object = cached == null
+                ? S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner)
+                : S3Util.getObjectIfChanged(s3Client, bucket, key, expectedBucketOwner, cached.eTag);
+        if (s3Object == null) {
+            synchronized (entries) {
+                // Opened under the lock, so the file cannot be evicted before it is open
+                Entry current = entries.get(id);
+                if (current != null) {
+                    try {
+                        return new Opened(current.metadata, FileChannel.open(current.file, StandardOpenOption.READ));
+                    } catch (NoSuchFileException e) {
+                        log.warn(String.format("Cached file %s of %s is missing", current.file, id));
+                        entries.remove(id);
+                        cachedBytes -= current.size;
+                    }
+                }
+            }
+            // Evicted since it was validated
+            s3Object = S3Util.getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+        }
+        return store(id, s3Object);
+    }
+
+    private Opened store(String id, S3Object s3Object) throws IOException {
+        ObjectMetadata metadata = s3Object.getObjectMetadata() == null
+                ? new ObjectMetadata()
+                : s3Object.getObjectMetadata().clone();
+        String eTag = metadata.getETag();
+        Path file = Files.createTempFile(directory, fileName(id, eTag), SUFFIX);
+        try (S3Object downloaded = s3Object) {
+            Files.copy(downloaded.getObjectContent(), file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (eTag == null) {
+            // Could never be revalidated, so it is only kept until read
+            delete(file);
+            return new Opened(metadata, channel);
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(id, new Entry(eTag, file, channel.size(), metadata));
+            cachedBytes += channel.size();
+            if (previous != null) {
+                cachedBytes -= previous.size;
+                delete(previous.file);
+            }
+            evict();
+        }
+        return new Opened(metadata, channel);
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            cachedBytes -= entry.size;
+            delete(entry.file);
+        }
+    }
+
+    private static String fileName(String id, String eTag) {
+        String name = Hashing.sha256().hashString(id, StandardCharsets.UTF_8).toString().substring(0, 32);
+        return eTag == null ? name + "-" : name + "-" + eTag.replaceAll("[^A-Za-z0-9]", "") + "-";
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error(String.format("Unable to delete cached file %s", file), e);
+        }
+    }
+
+    private static final class Entry {
+        private final String eTag;
+        private final Path file;
+        private final long size;
+        private final ObjectMetadata metadata;
+
+        private Entry(String eTag, Path file, long size, ObjectMetadata metadata) {
+            this.eTag = eTag;
+            this.file = file;
+            this.size = size;
+            this.metadata = metadata;
+        }
+    }
+
+    private static final class Opened {
+        private final ObjectMetadata metadata;
+        private final FileChannel channel;
+
+        private Opened(ObjectMetadata metadata, FileChannel channel) {
+            this.metadata = metadata;
+            this.channel = channel;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.CopyObjectResult;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsResult;
-import com.amazonaws.services.s3.model.GetBucketEncryptionResult;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
@@ -14,13 +13,14 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.amazonaws.services.s3.model.ServerSideEncryptionByDefault;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -137,6 +137,52 @@ public class S3Util {
         return s3Client.getObject(request);
     }
 
+    /**
+     * Gets an object through a local disk cache, see {@link S3ObjectDiskCache}, or straight from S3 when no cache is
+     * given.
+     */
+    public static S3Object getObjectFromS3(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner,
+                                           S3ObjectDiskCache objectCache) throws IOException {
+        if (objectCache == null) {
+            return getObjectFromS3(s3Client, bucket, key, expectedBucketOwner);
+        }
+        return objectCache.getObject(s3Client, bucket, key, expectedBucketOwner);
+    }
+
+    /**
+     * Gets an object only if it no longer has the given ETag, with an {@code If-None-Match} conditional GET. An
+     * unchanged object costs a round trip but no transfer.
+     *
+     * @return the object, or null if its ETag still matches
+     */
+    public static S3Object getObjectIfChanged(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner,
+                                              String eTag) {
+        GetObjectRequest request = new GetObjectRequest(bucket, key).withNonmatchingETagConstraint(eTag);
+
+        if (null != expectedBucketOwner) {
+            request.setExpectedBucketOwner(expectedBucketOwner);
+        }
+
+        // The SDK returns null when the constraint is not met, i.e. on 304 Not Modified
+        return s3Client.getObject(request);
+    }
+
+    /**
+     * Streams an object into a new temp file, so large objects never have to fit in memory. The caller deletes the
+     * file once done with it.
+     */
+    public static Path downloadToTempFile(AmazonS3 s3Client, String bucket, String key, String expectedBucketOwner,
+                                          String suffix) throws IOException {
+        Path localFilePath = Files.createTempFile("s3-download", suffix);
+        try (S3Object s3Object = getObjectFromS3(s3Client, bucket, key, expectedBucketOwner)) {
+            Files.copy(s3Object.getObjectContent(), localFilePath, StandardCopyOption.REPLACE_EXISTING);
+            return localFilePath;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(localFilePath);
+            throw e;
+        }
+    }
+
     public static CopyObjectResult copyS3Object(AmazonS3 s3Client, String sourceBucket, String sourceKey,
                                                 String destinationBucket, String destinationKey,
                                                 String expectedBucketOwner, String fileContentType) throws SdkClientException{
@@ -206,11 +252,7 @@ public class S3Util {
 
     private static String getBucketKMSKey(AmazonS3 s3Client, String bucketName) throws SdkClientException {
         try{
-            GetBucketEncryptionResult getBucketEncryptionResult = s3Client.getBucketEncryption(bucketName);
-            ServerSideEncryptionByDefault serverSideEncryptionByDefault =
-                    getBucketEncryptionResult.getServerSideEncryptionConfiguration().getRules()
-                            .get(0).getApplyServerSideEncryptionByDefault();
-            String kmsMasterKeyId = serverSideEncryptionByDefault.getKMSMasterKeyID();
+            String kmsMasterKeyId = BucketEncryptionCache.getDefault().get(s3Client, bucketName).getKmsMasterKeyId();
             return kmsMasterKeyId;
         }catch (SdkClientException exception){
             System.out.println("Unable to read KMS data for bucket "+ bucketName);
@@ -220,11 +262,7 @@ public class S3Util {
 
     private static String getSSEAlgorithm(AmazonS3 s3Client, String bucketName) throws SdkClientException {
         try{
-            GetBucketEncryptionResult getBucketEncryptionResult = s3Client.getBucketEncryption(bucketName);
-            ServerSideEncryptionByDefault serverSideEncryptionByDefault =
-                    getBucketEncryptionResult.getServerSideEncryptionConfiguration().getRules()
-                            .get(0).getApplyServerSideEncryptionByDefault();
-            String algorithm = serverSideEncryptionByDefault.getSSEAlgorithm();
+            String algorithm = BucketEncryptionCache.getDefault().get(s3Client, bucketName).getSseAlgorithm();
             return algorithm;
         }catch (SdkClientException exception){
             System.out.println("Unable to read KMS data for bucket "+ bucketName);
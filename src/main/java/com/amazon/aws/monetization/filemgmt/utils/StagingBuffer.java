@@ -0,0 +1,213 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stages an object before it is uploaded, off the Java heap. Bytes go into direct chunks taken from a
+ * {@link StagingMemoryBudget}; once the budget has no chunk left, the rest of the object is written to a temp file
+ * instead. {@link #openInputStream()} reads the chunks followed by the file, so the upload streams straight from
+ * direct memory and the file channel. Closing the buffer only ends writing, so it can sit under encoders that close
+ * their stream when they finish; {@link #release()} returns the chunks to the budget and deletes the file, and must
+ * always be called once the bytes have been uploaded.
+ */
+@Slf4j
+public class StagingBuffer extends OutputStream {
+    private final StagingMemoryBudget budget;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+
+    private Path spillFile;
+    private FileChannel spillChannel;
+
+    private long size;
+    private boolean closed;
+    private boolean released;
+
+    public StagingBuffer() {
+        this(StagingMemoryBudget.getDefault());
+    }
+
+    public StagingBuffer(StagingMemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Staging buffer is closed");
+        }
+        size += len;
+        while (len > 0 && spillChannel == null) {
+            if (current == null || !current.hasRemaining()) {
+                current = budget.acquire();
+                if (current == null) {
+                    spill();
+                    break;
+                }
+                chunks.add(current);
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+        if (len > 0) {
+            ByteBuffer tail = ByteBuffer.wrap(b, off, len);
+            while (tail.hasRemaining()) {
+                spillChannel.write(tail);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes staged
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return whether part of the object had to be written to disk
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Reads the staged bytes from the start. The stream supports {@code mark}/{@code reset} over the whole object,
+     * so the SDK can retry a failed upload without buffering it again. It is only valid until this buffer is released.
+     */
+    public InputStream openInputStream() throws IOException {
+        if (released) {
+            throw new IOException("Staging buffer is released");
+        }
+        FileChannel spilled = spillFile == null ? null : FileChannel.open(spillFile, StandardOpenOption.READ);
+        List<ByteBuffer> filled = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            filled.add(chunk.duplicate().flip());
+        }
+        return new StagedInputStream(filled, spilled);
+    }
+
+    /**
+     * Ends writing; the staged bytes stay readable until {@link #release()}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Returns the chunks to the budget and deletes the spill file. Releasing again does nothing.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        closed = true;
+        released = true;
+        chunks.forEach(budget::release);
+        chunks.clear();
+        current = null;
+        if (spillFile != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                log.error(String.format("Unable to delete staging file %s", spillFile), e);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile("s3-staging", ".tmp");
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.WRITE);
+    }
+
+    private static final class StagedInputStream extends InputStream {
+        private final List<ByteBuffer> chunks;
+        private final FileChannel spilled;
+        private final long memoryBytes;
+        private final int chunkCapacity;
+
+        private long position;
+        private long mark;
+
+        private StagedInputStream(List<ByteBuffer> chunks, FileChannel spilled) {
+            this.chunks = chunks;
+            this.spilled = spilled;
+            this.memoryBytes = chunks.stream().mapToLong(ByteBuffer::limit).sum();
+            // Every chunk but the last is full, so a position maps straight to a chunk and offset
+            this.chunkCapacity = chunks.isEmpty() ? 1 : chunks.get(0).capacity();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            if (position < memoryBytes) {
+                ByteBuffer chunk = chunks.get((int) (position / chunkCapacity)).duplicate();
+                int offset = (int) (position % chunkCapacity);
+                n = Math.min(len, chunk.limit() - offset);
+                chunk.position(offset);
+                chunk.get(b, off, n);
+            } else if (spilled != null) {
+                n = spilled.read(ByteBuffer.wrap(b, off, len), position - memoryBytes);
+                if (n < 0) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+            }
+        }
+    }
+}
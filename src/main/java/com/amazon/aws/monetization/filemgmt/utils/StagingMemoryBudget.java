@@ -0,0 +1,83 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the direct memory that {@link StagingBuffer}s may hold across every writer in the process. Memory is handed
+ * out in fixed size direct chunks, which are pooled and reused once a buffer is released rather than freed, so
+ * allocation cost is paid once. Once the limit is reached, {@link #acquire()} returns null and buffers spill to disk.
+ */
+public class StagingMemoryBudget {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_LIMIT = 256L * 1024 * 1024;
+
+    private static final StagingMemoryBudget DEFAULT = new StagingMemoryBudget(DEFAULT_LIMIT, DEFAULT_CHUNK_SIZE);
+
+    private final long limit;
+    private final int chunkSize;
+    private final AtomicLong allocated = new AtomicLong();
+    private final Queue<ByteBuffer> freeChunks = new ConcurrentLinkedQueue<>();
+
+    public StagingMemoryBudget(long limit, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.limit = limit;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return a process wide budget, for writers that opt into staging without needing one of their own
+     */
+    public static StagingMemoryBudget getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return an empty chunk, or null when the budget is used up
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer chunk = freeChunks.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+        long current;
+        do {
+            current = allocated.get();
+            if (current + chunkSize > limit) {
+                return null;
+            }
+        } while (!allocated.compareAndSet(current, current + chunkSize));
+        return ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    public void release(ByteBuffer chunk) {
+        chunk.clear();
+        freeChunks.offer(chunk);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the direct memory allocated so far, whether in use or pooled
+     */
+    public long getAllocatedBytes() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the memory of the chunks currently held by buffers
+     */
+    public long getUsedBytes() {
+        return allocated.get() - (long) freeChunks.size() * chunkSize;
+    }
+}
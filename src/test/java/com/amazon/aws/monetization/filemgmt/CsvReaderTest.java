@@ -1,9 +1,18 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.csv.CsvCheckpoint;
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.csv.CsvEngine;
+import com.amazon.aws.monetization.filemgmt.csv.ResumableCsvIterator;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,13 +20,26 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
@@ -66,6 +88,142 @@ public class CsvReaderTest {
                 .put("Account: Account Name", "LMN Inc")
                 .build(), data.get(2));
     }
-}
 
+    @Test
+    public void testStreamCsvRecords() throws Exception {
+        File initialFile = new File("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.csv");
+        InputStream targetStream = new FileInputStream(initialFile);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(targetStream, null));
+
+        List<Map<String, String>> data;
+        try (Stream<Map<String, String>> records = csvReader.streamCsvRecordsFromS3("test_bucket", "key", "")) {
+            data = records.collect(Collectors.toList());
+        }
+        assertEquals(3, data.size());
+        assertEquals(ImmutableMap.<String, String>builder()
+                .put("Agreement Request Name", "CA-20170101-cccc-SNA")
+                .put("AWS Account ID", "222222222222")
+                .put("Account: Account Name", "LMN Inc")
+                .build(), data.get(2));
+        // Records stay mutable, as the list API always returned them
+        data.get(2).put("Note", "edited");
+        assertEquals("edited", data.get(2).remove("Note"));
+    }
+
+    @Test
+    public void testReadProjectedCsvRecords() throws Exception {
+        File initialFile = new File("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.csv");
+        InputStream targetStream = new FileInputStream(initialFile);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(targetStream, null));
+
+        List<Map<String, String>> data = csvReader.getCsvRecordsFromS3("test_bucket", "key", "",
+                Arrays.asList("AWS Account ID", "Agreement Request Name"));
+        assertEquals(3, data.size());
+        assertEquals(ImmutableMap.<String, String>builder()
+                .put("Agreement Request Name", "CA-20170101-bbbb-SNA")
+                .put("AWS Account ID", "111111111111")
+                .build(), data.get(1));
+        data.get(1).remove("AWS Account ID");
+        assertEquals(1, data.get(1).size());
+    }
 
+    @Test
+    public void testReadCompressedCsvRecords() throws Exception {
+        byte[] csv = Files.readAllBytes(Paths.get("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.csv"));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+
+        // gzip detected from the key suffix
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(
+                new ByteArrayInputStream(compress(CsvCompression.GZIP, csv)), null));
+        List<Map<String, String>> data = csvReader.getCsvRecordsFromS3("test_bucket", "key.csv.gz", "");
+        assertEquals(3, data.size());
+        assertEquals("XYZ Inc", data.get(1).get("Account: Account Name"));
+
+        // zstd detected from the Content-Encoding
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentEncoding("zstd");
+        when(s3Object.getObjectMetadata()).thenReturn(metadata);
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(
+                new ByteArrayInputStream(compress(CsvCompression.ZSTD, csv)), null));
+        assertEquals(data, csvReader.getCsvRecordsFromS3("test_bucket", "key", ""));
+    }
+
+    @Test
+    public void testReadFilteredCsvRecords() throws Exception {
+        Path path = Paths.get("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.csv");
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        RowFilter filter = RowFilter.allOf(
+                RowFilter.startsWith("Agreement Request Name", "CA-2017"),
+                RowFilter.between("AWS Account ID", 100000000000d, 300000000000d));
+
+        for (CsvEngine engine : new CsvEngine[]{CsvEngine.OPENCSV, CsvEngine.UTF8_BYTES}) {
+            when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(Files.newInputStream(path), null));
+            List<Map<String, String>> data = new CsvReader(s3Client, engine)
+                    .getCsvRecordsFromS3("test_bucket", "key", "", null, filter);
+            assertEquals(2, data.size());
+            assertEquals("XYZ Inc", data.get(0).get("Account: Account Name"));
+            assertEquals("LMN Inc", data.get(1).get("Account: Account Name"));
+
+            when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(Files.newInputStream(path), null));
+            data = new CsvReader(s3Client, engine).getCsvRecordsFromS3("test_bucket", "key", "",
+                    Arrays.asList("AWS Account ID"), RowFilter.equalTo("Account: Account Name", "XYZ Inc"));
+            assertEquals(ImmutableList.of(ImmutableMap.of("AWS Account ID", "111111111111")), data);
+        }
+    }
+
+    @Test
+    public void testReadCsvRecordsWithColumnDictionary() throws Exception {
+        String csv = "id,currency\n1,USD\n2,EUR\n3,USD\n";
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+
+        for (CsvEngine engine : new CsvEngine[]{CsvEngine.OPENCSV, CsvEngine.UTF8_BYTES}) {
+            when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(
+                    new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), null));
+            List<IndexedRow> rows = new CsvReader(s3Client, engine, 2).getCsvRowsFromS3("test_bucket", "key", "");
+
+            assertEquals(3, rows.size());
+            assertSame(rows.get(0).get("currency"), rows.get(2).get("currency"));
+            assertEquals("EUR", rows.get(1).get("currency"));
+            // the id column passes the threshold and falls back to plain strings
+            assertEquals("3", rows.get(2).get("id"));
+        }
+    }
+
+    @Test
+    public void testResumeCsvRowsFromCheckpoint() throws Exception {
+        byte[] csv = Files.readAllBytes(Paths.get("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.csv"));
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", "etag");
+        when(s3Client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0, GetObjectRequest.class);
+            assertEquals(Collections.singletonList("etag"), request.getMatchingETagConstraints());
+            int start = request.getRange() == null ? 0 : (int) request.getRange()[0];
+            S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(csv, start, csv.length - start));
+            return object;
+        });
+
+        CsvCheckpoint checkpoint;
+        try (ResumableCsvIterator rows = csvReader.openResumableCsvRowsFromS3("test_bucket", "key", "")) {
+            assertEquals("CA-20170101-aaaa-SNA", rows.next().get("Agreement Request Name"));
+            checkpoint = rows.getCheckpoint();
+        }
+
+        List<String> names = new ArrayList<>();
+        try (ResumableCsvIterator rows = csvReader.resumeCsvRowsFromS3(checkpoint, "")) {
+            rows.forEachRemaining(row -> names.add(row.get("Account: Account Name")));
+        }
+        assertEquals(Arrays.asList("XYZ Inc", "LMN Inc"), names);
+    }
+
+    private static byte[] compress(CsvCompression compression, byte[] content) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (OutputStream encoder = compression.encode(stream)) {
+            encoder.write(content);
+        }
+        return stream.toByteArray();
+    }
+}
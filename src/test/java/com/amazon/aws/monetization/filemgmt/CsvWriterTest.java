@@ -1,18 +1,40 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.AsyncUploadExecutor;
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazon.aws.monetization.filemgmt.utils.StagingMemoryBudget;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -44,6 +66,7 @@ public class CsvWriterTest {
 
     @BeforeEach
     public void setup() {
+        BucketEncryptionCache.getDefault().invalidateAll();
         csvWriter = new CsvWriter(s3Client);
         RECORDS.add(RECORD_ROW);
         RULES.add(serverSideEncryptionRule);
@@ -67,6 +90,257 @@ public class CsvWriterTest {
         csvWriter.writeRecordsToS3(BUCKET, KEY, EXPECTED_BUCKET_OWNER, RECORDS);
         Mockito.verify(s3Client, Mockito.times(1)).putObject(Mockito.any(PutObjectRequest.class));
     }
-}
 
+    @Test
+    public void testWriteCompressedCsvRecords() throws Exception {
+        mockBucketEncryption();
+
+        S3WriteResult result = csvWriter.writeRecordsToS3(BUCKET, KEY + ".csv.gz", EXPECTED_BUCKET_OWNER, RECORDS);
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        PutObjectRequest request = captor.getValue();
+        assertEquals("gzip", request.getMetadata().getContentEncoding());
+
+        byte[] content = IOUtils.toByteArray(request.getInputStream());
+        assertEquals(content.length, request.getMetadata().getContentLength());
+        // Checksums are of the compressed bytes that were sent
+        assertEquals(Md5Utils.md5AsBase64(content), request.getMetadata().getContentMD5());
+        assertEquals(Md5Utils.md5AsBase64(content), result.getContentMd5());
+        assertEquals(content.length, result.getLength());
+        String csv = new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(content))), StandardCharsets.UTF_8);
+        assertEquals("\"test_record\"\n", csv);
+    }
+
+    @Test
+    public void testBufferedS3CsvWriterChecksumsWholeObjectOnEveryWrite() throws Exception {
+        mockBucketEncryption();
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectResult result = new PutObjectResult();
+            result.setETag("etag");
+            return result;
+        });
+
+        S3CsvWriter writer = new S3CsvWriter(s3Client, BUCKET, KEY, EXPECTED_BUCKET_OWNER);
+        writer.append(RECORD_ROW);
+        writer.write();
+        writer.append(new String[]{"second_record"});
+        S3WriteResult result = writer.write();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(2)).putObject(captor.capture());
+        byte[] content = IOUtils.toByteArray(captor.getValue().getInputStream());
+        assertEquals("\"test_record\"\n\"second_record\"\n", new String(content, StandardCharsets.UTF_8));
+        assertEquals(Md5Utils.md5AsBase64(content), captor.getValue().getMetadata().getContentMD5());
+        assertEquals(Md5Utils.md5AsBase64(content), result.getContentMd5());
+        assertEquals("etag", result.getETag());
+        assertEquals(result, writer.getWriteResult());
+    }
+
+    @Test
+    public void testMultipartS3CsvWriterUploadsOnClose() throws Exception {
+        mockBucketEncryption();
+
+        try (S3CsvWriter writer = S3CsvWriter.multipart(s3Client, BUCKET, KEY + ".csv.gz", EXPECTED_BUCKET_OWNER)) {
+            writer.append(RECORD_ROW);
+            Mockito.verify(s3Client, Mockito.never()).putObject(Mockito.any(PutObjectRequest.class));
+        }
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        PutObjectRequest request = captor.getValue();
+        assertEquals("gzip", request.getMetadata().getContentEncoding());
+        assertEquals("algorithm", request.getMetadata().getSSEAlgorithm());
+        assertEquals("kms_key", request.getSSEAwsKeyManagementParams().getAwsKmsKeyId());
+
+        String csv = new String(IOUtils.toByteArray(new GZIPInputStream(request.getInputStream())), StandardCharsets.UTF_8);
+        assertEquals("\"test_record\"\n", csv);
+    }
+
+    @Test
+    public void testWriteCsvRecordsFromIteratorInParts() throws Exception {
+        mockBucketEncryption();
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId("upload-id");
+        when(s3Client.initiateMultipartUpload(Mockito.any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+        List<Integer> partSizes = new CopyOnWriteArrayList<>();
+        when(s3Client.uploadPart(Mockito.any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0, UploadPartRequest.class);
+            partSizes.add(IOUtils.toByteArray(request.getInputStream()).length);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return result;
+        });
+
+        // Generated lazily, the rows are never all in memory
+        int rows = 120_000;
+        Iterator<String[]> records = new Iterator<String[]>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                next++;
+                return new String[]{String.valueOf(next), "ABC Inc", "a comment long enough to fill a few parts quickly"};
+            }
+        };
+        new CsvWriter(s3Client, S3MultipartOutputStream.MIN_PART_SIZE, 1).writeRecordsToS3(BUCKET, KEY, EXPECTED_BUCKET_OWNER, records);
+
+        Mockito.verify(s3Client, Mockito.times(1)).completeMultipartUpload(Mockito.any(CompleteMultipartUploadRequest.class));
+        Mockito.verify(s3Client, Mockito.never()).putObject(Mockito.any(PutObjectRequest.class));
+        assertEquals(2, partSizes.size());
+        assertEquals(S3MultipartOutputStream.MIN_PART_SIZE, (int) partSizes.get(0));
+    }
+
+    @Test
+    public void testWriteCsvRecordsFromStream() throws Exception {
+        mockBucketEncryption();
+
+        csvWriter.writeRecordsToS3(BUCKET, KEY, EXPECTED_BUCKET_OWNER, IntStream.range(0, 3).mapToObj(i -> new String[]{"row" + i}));
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        String csv = new String(IOUtils.toByteArray(captor.getValue().getInputStream()), StandardCharsets.UTF_8);
+        assertEquals("\"row0\"\n\"row1\"\n\"row2\"\n", csv);
+    }
+
+    @Test
+    public void testFailingProducerWritesNothing() throws Exception {
+        mockBucketEncryption();
+
+        assertThrows(IllegalStateException.class, () -> csvWriter.writeRecordsToS3(BUCKET, KEY, EXPECTED_BUCKET_OWNER, sink -> {
+            sink.accept(RECORD_ROW);
+            throw new IllegalStateException("source failed");
+        }));
+        Mockito.verify(s3Client, Mockito.never()).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testWriteCsvRecordsAsync() throws Exception {
+        mockBucketEncryption();
+
+        csvWriter.writeRecordsToS3Async(BUCKET, KEY, EXPECTED_BUCKET_OWNER, RECORDS).get(5, TimeUnit.SECONDS);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testS3CsvWriterWriteAsyncCompletesWithResult() throws Exception {
+        mockBucketEncryption();
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectResult result = new PutObjectResult();
+            result.setETag("etag");
+            return result;
+        });
+
+        S3CsvWriter writer = new S3CsvWriter(s3Client, BUCKET, KEY, EXPECTED_BUCKET_OWNER);
+        writer.append(RECORD_ROW);
+        S3WriteResult result = writer.writeAsync().get(5, TimeUnit.SECONDS);
+
+        assertEquals("etag", result.getETag());
+        assertEquals("\"test_record\"\n".length(), result.getLength());
+        assertEquals(result, writer.getWriteResult());
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testS3CsvWriterWriteAsyncFailsWithThePutFailure() throws Exception {
+        mockBucketEncryption();
+        AmazonS3Exception failure = new AmazonS3Exception("put failed");
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenThrow(failure);
+
+        S3CsvWriter writer = new S3CsvWriter(s3Client, BUCKET, KEY, EXPECTED_BUCKET_OWNER);
+        writer.append(RECORD_ROW);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> writer.writeAsync().get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    public void testMultipartS3CsvWriterWriteAsyncAbortsOnFailure() throws Exception {
+        mockBucketEncryption();
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId("upload-id");
+        when(s3Client.initiateMultipartUpload(Mockito.any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+        when(s3Client.uploadPart(Mockito.any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0, UploadPartRequest.class);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return result;
+        });
+        AmazonS3Exception failure = new AmazonS3Exception("complete failed");
+        when(s3Client.completeMultipartUpload(Mockito.any(CompleteMultipartUploadRequest.class))).thenThrow(failure);
+
+        S3CsvWriter writer = new S3CsvWriter(s3Client, BUCKET, KEY, EXPECTED_BUCKET_OWNER, CsvCompression.NONE,
+                S3MultipartOutputStream.MIN_PART_SIZE, 1);
+        // More than one part, so the object goes through the multipart upload
+        char[] value = new char[S3MultipartOutputStream.MIN_PART_SIZE];
+        Arrays.fill(value, 'x');
+        writer.append(new String[]{new String(value)});
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> writer.writeAsync().get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+        ArgumentCaptor<AbortMultipartUploadRequest> captor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).abortMultipartUpload(captor.capture());
+        assertEquals("upload-id", captor.getValue().getUploadId());
+    }
 
+    @Test
+    public void testStagedS3CsvWriterSpillsPastBudget() throws Exception {
+        mockBucketEncryption();
+        StagingMemoryBudget budget = new StagingMemoryBudget(16, 8);
+
+        S3CsvWriter writer = new S3CsvWriter(s3Client, BUCKET, KEY, EXPECTED_BUCKET_OWNER, CsvCompression.NONE, budget);
+        for (int i = 0; i < 10; i++) {
+            writer.append(new String[]{"row" + i});
+        }
+        writer.write();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            expected.append("\"row").append(i).append("\"\n");
+        }
+        assertEquals(expected.length(), captor.getValue().getMetadata().getContentLength());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testWriteCsvRecordsStagedWhenGivenABudget() throws Exception {
+        mockBucketEncryption();
+        StagingMemoryBudget budget = new StagingMemoryBudget(16, 8);
+        for (int i = 0; i < 10; i++) {
+            RECORDS.add(new String[]{"row" + i});
+        }
+
+        new CsvWriter(s3Client, S3MultipartOutputStream.DEFAULT_PART_SIZE, S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS,
+                AsyncUploadExecutor.getDefault(), budget).writeRecordsToS3(BUCKET, KEY, EXPECTED_BUCKET_OWNER, RECORDS);
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        StringBuilder expected = new StringBuilder("\"test_record\"\n");
+        for (int i = 0; i < 10; i++) {
+            expected.append("\"row").append(i).append("\"\n");
+        }
+        assertEquals(expected.length(), captor.getValue().getMetadata().getContentLength());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    private void mockBucketEncryption() {
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(getBucketEncryptionResult);
+        when(getBucketEncryptionResult.getServerSideEncryptionConfiguration()).thenReturn(serverSideEncryptionConfiguration);
+        when(serverSideEncryptionConfiguration.getRules()).thenReturn(RULES);
+        when(serverSideEncryptionRule.getApplyServerSideEncryptionByDefault()).thenReturn(serverSideEncryptionByDefault);
+        when(serverSideEncryptionByDefault.getSSEAlgorithm()).thenReturn("algorithm");
+        when(serverSideEncryptionByDefault.getKMSMasterKeyID()).thenReturn("kms_key");
+    }
+}
@@ -1,25 +1,45 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.excel.poi.ExcelEngine;
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import com.amazon.aws.monetization.filemgmt.model.RowFilter;
+import com.amazon.aws.monetization.filemgmt.utils.S3ObjectDiskCache;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -86,6 +106,276 @@ public class ExcelReaderTest {
         assertEquals(ImmutableList.of("ABC Inc", "XYZ Inc", "LMN Inc"), data.get("Account: Account Name"));
         assertEquals(ImmutableList.of("CA-20170101-aaaa-SNA", "CA-20170101-bbbb-SNA", "CA-20170101-cccc-SNA"), data.get("Agreement Request Name"));
     }
-}
 
+    @Test
+    public void testExcelRows() throws Exception {
+        File initialFile = new File("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.xlsx");
+        InputStream targetStream = new FileInputStream(initialFile);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(targetStream, null));
+        List<IndexedRow> data = excelReader.getExcelRowsFromS3("test_bucket", "key", "");
+        assertEquals(3, data.size());
+        assertEquals("111111111111", data.get(1).get("AWS Account ID"));
+        assertEquals(ImmutableMap.<String, String>builder()
+                .put("AWS Account ID", "222222222222")
+                .put("Account: Account Name", "LMN Inc")
+                .put("Agreement Request Name", "CA-20170101-cccc-SNA")
+                .build(), data.get(2).asMap());
+    }
+
+    @Test
+    public void testFilteredExcelRecords() throws Exception {
+        File initialFile = new File("src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.xlsx");
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent())
+                .thenReturn(new S3ObjectInputStream(new FileInputStream(initialFile), null))
+                .thenReturn(new S3ObjectInputStream(new FileInputStream(initialFile), null));
+
+        List<Map<String, String>> data = excelReader.getExcelRecordsFromS3("test_bucket", "key", "",
+                RowFilter.in("Account: Account Name", ImmutableList.of("ABC Inc", "LMN Inc")));
+        assertEquals(2, data.size());
+        assertEquals("CA-20170101-aaaa-SNA", data.get(0).get("Agreement Request Name"));
+        assertEquals("CA-20170101-cccc-SNA", data.get(1).get("Agreement Request Name"));
+
+        data = excelReader.getExcelRecordsFromS3("test_bucket", "key", "", "Sheet1",
+                RowFilter.startsWith("Agreement Request Name", "CA-20170101-b"));
+        assertEquals(1, data.size());
+        assertEquals("XYZ Inc", data.get(0).get("Account: Account Name"));
+    }
+
+    @Test
+    public void testStreamingEngineMatchesDom() throws Exception {
+        AtomicReference<byte[]> workbook = new AtomicReference<>(workbookWithGaps());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenAnswer(invocation -> new S3ObjectInputStream(new ByteArrayInputStream(workbook.get()), null));
+        ExcelReader streamingReader = new ExcelReader(s3Client, ExcelEngine.STREAMING, 16);
+
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", ""),
+                streamingReader.getExcelRecordsFromS3("test_bucket", "key", ""));
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", "", "Data", RowFilter.in("id", ImmutableList.of("1", "3"))),
+                streamingReader.getExcelRecordsFromS3("test_bucket", "key", "", "Data", RowFilter.in("id", ImmutableList.of("1", "3"))));
+        assertEquals(excelReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""),
+                streamingReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""));
+        assertEquals(excelReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""),
+                streamingReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""));
+        assertNull(streamingReader.getExcelRecordsFromS3("test_bucket", "key", "", "Missing"));
 
+        List<List<String>> rows = streamingReader.getExcelRecordsRowsFromS3("test_bucket", "key", "");
+        assertEquals(ImmutableList.of("2", "", ""), rows.get(2));
+        assertEquals(ImmutableList.of(), rows.get(3));
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", "", "Offset"),
+                streamingReader.getExcelRecordsFromS3("test_bucket", "key", "", "Offset"));
+
+        com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader poiReader =
+                new com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader(s3Client, "test_bucket", "");
+        com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader poiStreamingReader =
+                new com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader(s3Client, "test_bucket", "", ExcelEngine.STREAMING, 16);
+        assertPoiEnginesMatch(poiReader, poiStreamingReader, "Data");
+        Map<String, List<String>> offsetColumns = poiStreamingReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", "Offset", "");
+        assertEquals(poiReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", "Offset", ""), offsetColumns);
+        assertEquals(ImmutableMap.of("id", ImmutableList.of("1", "2"), "name", ImmutableList.of("x", "y")), offsetColumns);
+
+        // Formula cells hold a cached result, but the DOM reads their text or evaluates them
+        workbook.set(workbookWithFormulas());
+        assertEquals("3", streamingReader.getExcelRecordsFromS3("test_bucket", "key", "").get(0).get("sum"));
+        assertEquals(ImmutableList.of("1", "2", "3", "ta"),
+                streamingReader.getExcelRecordsRowsFromS3("test_bucket", "key", "").get(1));
+        assertEquals(ImmutableList.of("3"),
+                poiStreamingReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", "Formulas", "").get("sum"));
+
+        ExcelReader domFormulaReader = new ExcelReader(s3Client, ExcelEngine.STREAMING, 16, null, true);
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", ""),
+                domFormulaReader.getExcelRecordsFromS3("test_bucket", "key", ""));
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", "", "Formulas"),
+                domFormulaReader.getExcelRecordsFromS3("test_bucket", "key", "", "Formulas"));
+        assertEquals(excelReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", ImmutableList.of("Formulas")),
+                domFormulaReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", ImmutableList.of("Formulas")));
+        assertEquals(excelReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""),
+                domFormulaReader.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""));
+        assertEquals(excelReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""),
+                domFormulaReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""));
+        assertPoiEnginesMatch(poiReader, new com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader(
+                s3Client, "test_bucket", "", ExcelEngine.STREAMING, 16, null, true), "Formulas");
+
+        assertEquals("A2+B2", domFormulaReader.getExcelRecordsFromS3("test_bucket", "key", "").get(0).get("sum"));
+        assertEquals(ImmutableList.of("1", "2", "3.0", "\"ta\""),
+                domFormulaReader.getExcelRecordsRowsFromS3("test_bucket", "key", "").get(1));
+    }
+
+    private static void assertPoiEnginesMatch(com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader dom,
+                                              com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader streaming,
+                                              String sheetName) throws Exception {
+        assertEquals(dom.getExcelRecordsFromS3("test_bucket", "key", ""),
+                streaming.getExcelRecordsFromS3("test_bucket", "key", ""));
+        assertEquals(dom.getExcelRecordsFromS3("test_bucket", "key", "", sheetName),
+                streaming.getExcelRecordsFromS3("test_bucket", "key", "", sheetName));
+        assertEquals(dom.getExcelRecordsBySheetFromS3("test_bucket", "key", "", ImmutableList.of(sheetName)),
+                streaming.getExcelRecordsBySheetFromS3("test_bucket", "key", "", ImmutableList.of(sheetName)));
+        assertEquals(dom.getExcelRecordsByColumnsFromS3("test_bucket", "key", sheetName, ""),
+                streaming.getExcelRecordsByColumnsFromS3("test_bucket", "key", sheetName, ""));
+        assertEquals(dom.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""),
+                streaming.getExcelRecordsByColumnsFromS3("test_bucket", "key", ""));
+        assertEquals(dom.getExcelRecordsRowsFromS3("test_bucket", "key", ""),
+                streaming.getExcelRecordsRowsFromS3("test_bucket", "key", ""));
+    }
+
+    @Test
+    public void testDiskSharedStringsEngineMatchesDom() throws Exception {
+        byte[] workbook = workbookWithGaps();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenAnswer(invocation -> new S3ObjectInputStream(new ByteArrayInputStream(workbook), null));
+        ExcelReader diskStringsReader = new ExcelReader(s3Client, ExcelEngine.STREAMING_DISK_STRINGS, 0);
+
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", ""),
+                diskStringsReader.getExcelRecordsFromS3("test_bucket", "key", ""));
+        assertEquals(excelReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""),
+                diskStringsReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""));
+    }
+
+    @Test
+    public void testReadsSeveralSheetsFromOneDownload() throws Exception {
+        byte[] workbook = workbookWithSheets(6);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenAnswer(invocation -> new S3ObjectInputStream(new ByteArrayInputStream(workbook), null));
+        List<String> sheetNames = ImmutableList.of("Sheet5", "Missing", "Sheet0", "Sheet3");
+
+        Map<String, List<Map<String, String>>> dom = excelReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", sheetNames);
+        assertEquals(ImmutableList.of("Sheet5", "Sheet0", "Sheet3"), ImmutableList.copyOf(dom.keySet()));
+        assertEquals(excelReader.getExcelRecordsFromS3("test_bucket", "key", "", "Sheet3"), dom.get("Sheet3"));
+        assertEquals(50, dom.get("Sheet5").size());
+        assertEquals(ImmutableMap.of("id", "5-7", "value", "7"), dom.get("Sheet5").get(7));
+
+        ExcelReader streamingReader = new ExcelReader(s3Client, ExcelEngine.STREAMING, 0);
+        assertEquals(dom, streamingReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", sheetNames));
+        RowFilter filter = RowFilter.in("value", ImmutableList.of("1", "2"));
+        assertEquals(excelReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", sheetNames, filter),
+                streamingReader.getExcelRecordsBySheetFromS3("test_bucket", "key", "", sheetNames, filter));
+    }
+
+    @Test
+    public void testPoiReaderReadsWorkbooksThroughTheDiskCache(@TempDir Path cacheDirectory) throws Exception {
+        byte[] workbook = workbookWithGaps();
+        // Unchanged after the first GET, so the conditional GETs return null as on 304 Not Modified
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation ->
+                ((GetObjectRequest) invocation.getArgument(0)).getNonmatchingETagConstraints().isEmpty()
+                        ? cachedObject("v1", workbook)
+                        : null);
+        S3ObjectDiskCache objectCache = new S3ObjectDiskCache(cacheDirectory, 1024 * 1024);
+        com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader domReader =
+                new com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader(s3Client, "test_bucket", "",
+                        ExcelEngine.DOM, 0, null, objectCache, false);
+        com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader streamingReader =
+                new com.amazon.aws.monetization.filemgmt.excel.poi.ExcelReader(s3Client, "test_bucket", "",
+                        ExcelEngine.STREAMING, 16, null, objectCache, false);
+
+        List<Map<String, String>> records = domReader.getExcelRecordsFromS3("test_bucket", "key", "");
+        assertEquals(records, streamingReader.getExcelRecordsFromS3("test_bucket", "key", ""));
+        assertEquals(domReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""),
+                streamingReader.getExcelRecordsRowsFromS3("test_bucket", "key", ""));
+        try (XSSFWorkbook loaded = domReader.getWorkBook("key")) {
+            assertEquals("Data", loaded.getSheetAt(0).getSheetName());
+        }
+
+        // Only the first GET transferred the workbook, the others read the cached file
+        ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(5)).getObject(requests.capture());
+        assertEquals(Collections.emptyList(), requests.getAllValues().get(0).getNonmatchingETagConstraints());
+        for (GetObjectRequest request : requests.getAllValues().subList(1, 5)) {
+            assertEquals(Collections.singletonList("v1"), request.getNonmatchingETagConstraints());
+        }
+    }
+
+    private static S3Object cachedObject(String eTag, byte[] content) {
+        S3Object cached = new S3Object();
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", eTag);
+        cached.setObjectMetadata(metadata);
+        cached.setObjectContent(new ByteArrayInputStream(content));
+        return cached;
+    }
+
+    private static byte[] workbookWithSheets(int sheets) throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            for (int sheetIndex = 0; sheetIndex < sheets; sheetIndex++) {
+                Sheet sheet = workbook.createSheet("Sheet" + sheetIndex);
+                Row header = sheet.createRow(0);
+                header.createCell(0).setCellValue("id");
+                header.createCell(1).setCellValue("value");
+                for (int rowIndex = 0; rowIndex < 50; rowIndex++) {
+                    Row row = sheet.createRow(rowIndex + 1);
+                    row.createCell(0).setCellValue(sheetIndex + "-" + rowIndex);
+                    row.createCell(1).setCellValue(rowIndex);
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A numeric and a string formula, with their results cached in the file as Excel saves them.
+     */
+    private static byte[] workbookWithFormulas() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Formulas");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("a");
+            header.createCell(1).setCellValue("b");
+            header.createCell(2).setCellValue("sum");
+            header.createCell(3).setCellValue("label");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue(1);
+            row.createCell(1).setCellValue(2);
+            row.createCell(2).setCellFormula("A2+B2");
+            row.createCell(3).setCellFormula("\"t\"&\"a\"");
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Header with an empty name, a row ending in a blank styled cell, a missing row and a row of blank cells.
+     */
+    private static byte[] workbookWithGaps() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Data");
+            CellStyle filled = workbook.createCellStyle();
+            filled.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("id");
+            header.createCell(1).setCellValue("");
+            header.createCell(2).setCellValue(" name ");
+            Row first = sheet.createRow(1);
+            first.createCell(0).setCellValue(1);
+            first.createCell(1).setCellValue("a");
+            first.createCell(2).setCellValue("ABC Inc");
+            Row second = sheet.createRow(2);
+            second.createCell(0).setCellValue(2);
+            second.createCell(2).setCellStyle(filled);
+            sheet.createRow(4).createCell(1).setCellStyle(filled);
+            Row third = sheet.createRow(5);
+            third.createCell(0).setCellValue(3);
+            third.createCell(1).setCellValue(0.5);
+
+            Sheet offset = workbook.createSheet("Offset");
+            Row offsetHeader = offset.createRow(0);
+            offsetHeader.createCell(1).setCellValue("id");
+            offsetHeader.createCell(2).setCellValue("name");
+            Row offsetFirst = offset.createRow(1);
+            offsetFirst.createCell(1).setCellValue(1);
+            offsetFirst.createCell(2).setCellValue("x");
+            Row offsetSecond = offset.createRow(2);
+            offsetSecond.createCell(1).setCellValue(2);
+            offsetSecond.createCell(2).setCellValue("y");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazon.aws.monetization.filemgmt.utils.S3MultipartOutputStream;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ExcelToCsvConverterTest {
+    private static final String WORKBOOK = "src/test/java/com/amazon/aws/monetization/filemgmt/resources/202201101500.xlsx";
+    private static final String BUCKET = "test_bucket";
+    private static final String EXPECTED_CSV = "\"Agreement Request Name\",\"AWS Account ID\",\"Account: Account Name\"\n"
+            + "\"CA-20170101-aaaa-SNA\",\"006666660000\",\"ABC Inc\"\n"
+            + "\"CA-20170101-bbbb-SNA\",\"111111111111\",\"XYZ Inc\"\n"
+            + "\"CA-20170101-cccc-SNA\",\"222222222222\",\"LMN Inc\"\n";
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @Mock
+    S3Object s3Object;
+
+    private byte[] uploaded;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        BucketEncryptionCache.getDefault().invalidateAll();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+        when(s3Object.getObjectContent()).thenReturn(new S3ObjectInputStream(new FileInputStream(WORKBOOK), null));
+        ServerSideEncryptionByDefault byDefault = new ServerSideEncryptionByDefault()
+                .withSSEAlgorithm("aws:kms")
+                .withKMSMasterKeyID("kms_key");
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(new GetBucketEncryptionResult().withServerSideEncryptionConfiguration(
+                new ServerSideEncryptionConfiguration().withRules(new ServerSideEncryptionRule().withApplyServerSideEncryptionByDefault(byDefault))));
+    }
+
+    @Test
+    public void testConvertsFirstSheet() throws Exception {
+        mockPut();
+        S3WriteResult result = new ExcelToCsvConverter(s3Client).convert(BUCKET, "report.xlsx", BUCKET, "report.csv", "owner");
+
+        assertEquals(EXPECTED_CSV, new String(uploaded, StandardCharsets.UTF_8));
+        assertEquals("report.csv", result.getKey());
+        assertEquals(Md5Utils.md5AsBase64(uploaded), result.getContentMd5());
+    }
+
+    @Test
+    public void testConvertsSheetByNameWithCompression() throws Exception {
+        mockPut();
+        new ExcelToCsvConverter(s3Client).convert(BUCKET, "report.xlsx", "Sheet1", BUCKET, "report.csv.gz", "owner");
+
+        String csv = new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(uploaded))), StandardCharsets.UTF_8);
+        assertEquals(EXPECTED_CSV, csv);
+    }
+
+    @Test
+    public void testConvertsWithSharedStringsOnDisk() throws Exception {
+        mockPut();
+        new ExcelToCsvConverter(s3Client, S3MultipartOutputStream.DEFAULT_PART_SIZE,
+                S3MultipartOutputStream.DEFAULT_MAX_IN_FLIGHT_PARTS, 2).convert(BUCKET, "report.xlsx", BUCKET, "report.csv", "owner");
+
+        assertEquals(EXPECTED_CSV, new String(uploaded, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMissingSheetWritesNothing() throws Exception {
+        assertNull(new ExcelToCsvConverter(s3Client).convert(BUCKET, "report.xlsx", "Missing", BUCKET, "report.csv", "owner"));
+        Mockito.verify(s3Client, Mockito.never()).putObject(any(PutObjectRequest.class));
+        Mockito.verify(s3Client, Mockito.never()).initiateMultipartUpload(any());
+    }
+
+    private void mockPut() {
+        when(s3Client.putObject(any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            uploaded = IOUtils.toByteArray(invocation.getArgument(0, PutObjectRequest.class).getInputStream());
+            return new PutObjectResult();
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package com.amazon.aws.monetization.filemgmt;
 
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -48,6 +49,7 @@ public class ExcelWriterTest {
 
     @BeforeEach
     public void setup() {
+        BucketEncryptionCache.getDefault().invalidateAll();
         excelWriter = new ExcelWriter(s3Client);
         workbook = new XSSFWorkbook();
         RECORDS.add(RECORD_ROW);
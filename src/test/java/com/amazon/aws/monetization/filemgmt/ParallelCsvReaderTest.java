@@ -0,0 +1,96 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParallelCsvReaderTest {
+
+    private static final String CSV = "id,name,comment\r\n"
+            + "1,ABC Inc,\"multi\nline, quoted\"\r\n"
+            + ",,\r\n"
+            + "2,\"XYZ \"\"Holdings\"\"\",plain\r\n"
+            + "3,\"esc \\\" quote\",\"trailing\"\r\n"
+            + "4,LMN Inc,last";
+
+    @Mock
+    AmazonS3 s3Client;
+
+    private final byte[] content = CSV.getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    public void setup() {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setHeader("ETag", "etag");
+        when(s3Client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            long[] range = invocation.getArgument(0, GetObjectRequest.class).getRange();
+            S3Object s3Object = new S3Object();
+            s3Object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(
+                    Arrays.copyOfRange(content, (int) range[0], (int) range[1] + 1)), null));
+            return s3Object;
+        });
+    }
+
+    @Test
+    public void testRecordsMatchSequentialParseForEveryRangeSize() {
+        List<Map<String, String>> expected = null;
+        ForkJoinPool parsePool = new ForkJoinPool(3);
+        try {
+            for (int rangeSize = 1; rangeSize <= content.length; rangeSize++) {
+                ParallelCsvReader reader = new ParallelCsvReader(s3Client, parsePool, rangeSize);
+                List<Map<String, String>> records = reader.getCsvRecordsFromS3("test_bucket", "key", null);
+                if (expected == null) {
+                    expected = records;
+                }
+                assertEquals(expected, records, "range size " + rangeSize);
+            }
+        } finally {
+            parsePool.shutdown();
+        }
+
+        assertEquals(4, expected.size());
+        assertEquals("multi\nline, quoted", expected.get(0).get("comment"));
+        assertEquals("XYZ \"Holdings\"", expected.get(1).get("name"));
+        assertEquals("esc \" quote", expected.get(2).get("name"));
+        assertEquals("last", expected.get(3).get("comment"));
+    }
+
+    @Test
+    public void testUnorderedRecords() {
+        ForkJoinPool parsePool = new ForkJoinPool(4);
+        List<String> ids = Collections.synchronizedList(new ArrayList<>());
+        try {
+            ParallelCsvReader reader = new ParallelCsvReader(s3Client, parsePool, 5);
+            reader.forEachCsvRecordFromS3("test_bucket", "key", null, record -> ids.add(record.get("id")), false);
+        } finally {
+            parsePool.shutdown();
+        }
+
+        Collections.sort(ids);
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids);
+    }
+}
@@ -0,0 +1,115 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.amazonaws.util.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParallelCsvWriterTest {
+    private static final String BUCKET = "fake_bucket";
+    private static final String OWNER = "fake_owner";
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @Mock
+    GetBucketEncryptionResult getBucketEncryptionResult;
+
+    @Mock
+    ServerSideEncryptionConfiguration serverSideEncryptionConfiguration;
+
+    @Mock
+    ServerSideEncryptionByDefault serverSideEncryptionByDefault;
+
+    @Mock
+    ServerSideEncryptionRule serverSideEncryptionRule;
+
+    private final List<String[]> records = new ArrayList<>();
+
+    private final ForkJoinPool encodePool = new ForkJoinPool(3);
+
+    @BeforeEach
+    public void setup() {
+        BucketEncryptionCache.getDefault().invalidateAll();
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(getBucketEncryptionResult);
+        when(getBucketEncryptionResult.getServerSideEncryptionConfiguration()).thenReturn(serverSideEncryptionConfiguration);
+        when(serverSideEncryptionConfiguration.getRules()).thenReturn(Collections.singletonList(serverSideEncryptionRule));
+        when(serverSideEncryptionRule.getApplyServerSideEncryptionByDefault()).thenReturn(serverSideEncryptionByDefault);
+        when(serverSideEncryptionByDefault.getSSEAlgorithm()).thenReturn("algorithm");
+        when(serverSideEncryptionByDefault.getKMSMasterKeyID()).thenReturn("kms_key");
+
+        records.clear();
+        records.add(new String[]{"id", "name", "comment"});
+        for (int i = 0; i < 257; i++) {
+            records.add(new String[]{String.valueOf(i), "XYZ \"Holdings\" " + i, i % 3 == 0 ? "multi\nline, ünïcödé" : null});
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        encodePool.shutdown();
+    }
+
+    @Test
+    public void testOutputMatchesSerialEncodingForEveryChunkSize() throws Exception {
+        new CsvWriter(s3Client).writeRecordsToS3(BUCKET, "serial", OWNER, records);
+        byte[] expected = IOUtils.toByteArray(capturePut().getInputStream());
+
+        for (int chunkRows : new int[]{1, 2, 7, 100, 1000}) {
+            Mockito.clearInvocations(s3Client);
+            new ParallelCsvWriter(s3Client, encodePool, chunkRows).writeRecordsToS3(BUCKET, "parallel", OWNER, records.iterator());
+            assertArrayEquals(expected, IOUtils.toByteArray(capturePut().getInputStream()), "chunk rows " + chunkRows);
+        }
+    }
+
+    @Test
+    public void testCompressedOutputMatchesSerialEncoding() throws Exception {
+        new CsvWriter(s3Client).writeRecordsToS3(BUCKET, "serial", OWNER, records);
+        byte[] expected = IOUtils.toByteArray(capturePut().getInputStream());
+
+        Mockito.clearInvocations(s3Client);
+        new ParallelCsvWriter(s3Client, encodePool, 10).writeRecordsToS3(BUCKET, "parallel.csv.gz", OWNER, records.stream());
+        PutObjectRequest request = capturePut();
+        assertEquals("gzip", request.getMetadata().getContentEncoding());
+        assertArrayEquals(expected, IOUtils.toByteArray(new GZIPInputStream(request.getInputStream())));
+    }
+
+    @Test
+    public void testFailingProducerWritesNothing() {
+        ParallelCsvWriter writer = new ParallelCsvWriter(s3Client, encodePool, 10);
+
+        assertThrows(IllegalStateException.class, () -> writer.writeRecordsToS3(BUCKET, "parallel", OWNER, sink -> {
+            for (String[] record : records) {
+                sink.accept(record);
+            }
+            throw new IllegalStateException("source failed");
+        }));
+        Mockito.verify(s3Client, Mockito.never()).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    private PutObjectRequest capturePut() {
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,180 @@
+package com.amazon.aws.monetization.filemgmt;
+
+import com.amazon.aws.monetization.filemgmt.csv.CsvCompression;
+import com.amazon.aws.monetization.filemgmt.model.CsvManifest;
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.amazonaws.util.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PartitionedCsvWriterTest {
+    private static final String BUCKET = "fake_bucket";
+    private static final String[] HEADER = {"id", "country"};
+
+    @Mock
+    AmazonS3 s3Client;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setup() {
+        BucketEncryptionCache.getDefault().invalidateAll();
+        objects.clear();
+    }
+
+    private void mockUploads() {
+        ServerSideEncryptionByDefault byDefault = new ServerSideEncryptionByDefault()
+                .withSSEAlgorithm("aws:kms")
+                .withKMSMasterKeyID("kms_key");
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(new GetBucketEncryptionResult().withServerSideEncryptionConfiguration(
+                new ServerSideEncryptionConfiguration().withRules(new ServerSideEncryptionRule().withApplyServerSideEncryptionByDefault(byDefault))));
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0, PutObjectRequest.class);
+            objects.put(request.getKey(), IOUtils.toByteArray(request.getInputStream()));
+            return new PutObjectResult();
+        });
+    }
+
+    @Test
+    public void testRoutesByColumnAndRollsFiles() throws Exception {
+        mockUploads();
+        PartitionedCsvWriter writer = PartitionedCsvWriter.builder()
+                .s3Client(s3Client)
+                .bucket(BUCKET)
+                .keyPrefix("export/")
+                .header(HEADER)
+                .partitioner(PartitionedCsvWriter.byColumn(HEADER, "country"))
+                .maxRowsPerFile(2)
+                .build();
+        try (PartitionedCsvWriter w = writer) {
+            for (String[] record : Arrays.asList(
+                    new String[]{"1", "US"}, new String[]{"2", "DE"}, new String[]{"3", "US"},
+                    new String[]{"4", "US"}, new String[]{"5", ""})) {
+                w.append(record);
+            }
+        }
+
+        CsvManifest manifest = writer.getManifest();
+        assertEquals(Arrays.asList("export/country=US/part-00000.csv", "export/country=DE/part-00000.csv",
+                "export/country=US/part-00001.csv", "export/country=_empty_/part-00000.csv"), manifest.getKeys());
+        assertEquals(5, manifest.getTotalRows());
+        assertEquals(objects.keySet(), new HashSet<>(manifest.getKeys()));
+        for (CsvManifest.Entry entry : manifest.getEntries()) {
+            assertEquals(objects.get(entry.getKey()).length, entry.getByteCount());
+        }
+        assertEquals("\"id\",\"country\"\n\"1\",\"US\"\n\"3\",\"US\"\n",
+                new String(objects.get("export/country=US/part-00000.csv"), StandardCharsets.UTF_8));
+        assertEquals("\"id\",\"country\"\n\"4\",\"US\"\n",
+                new String(objects.get("export/country=US/part-00001.csv"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHashShardsWithCompression() throws Exception {
+        mockUploads();
+        PartitionedCsvWriter writer = PartitionedCsvWriter.builder()
+                .s3Client(s3Client)
+                .bucket(BUCKET)
+                .keyPrefix("export/")
+                .partitioner(PartitionedCsvWriter.byHash(HEADER, "id", 4))
+                .compression(CsvCompression.GZIP)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            writer.append(new String[]{String.valueOf(i), "US"});
+        }
+        writer.close();
+
+        CsvManifest manifest = writer.getManifest();
+        assertEquals(4, manifest.getEntries().size());
+        assertEquals(100, manifest.getTotalRows());
+        for (CsvManifest.Entry entry : manifest.getEntries()) {
+            String csv = new String(IOUtils.toByteArray(new GZIPInputStream(
+                    new ByteArrayInputStream(objects.get(entry.getKey())))), StandardCharsets.UTF_8);
+            assertEquals(entry.getRowCount(), csv.split("\n").length);
+            assertEquals("export/" + entry.getPartition() + "/part-00000.csv.gz", entry.getKey());
+        }
+    }
+
+    @Test
+    public void testRollsFilesBySize() throws Exception {
+        mockUploads();
+        PartitionedCsvWriter writer = PartitionedCsvWriter.builder()
+                .s3Client(s3Client)
+                .bucket(BUCKET)
+                .keyPrefix("export/")
+                .header(HEADER)
+                .maxBytesPerFile(50_000)
+                .build();
+        try (PartitionedCsvWriter w = writer) {
+            for (int i = 0; i < 20_000; i++) {
+                w.append(new String[]{String.valueOf(i), "US"});
+            }
+        }
+
+        CsvManifest manifest = writer.getManifest();
+        List<CsvManifest.Entry> entries = manifest.getEntries();
+        assertTrue(entries.size() > 1);
+        assertEquals(20_000, manifest.getTotalRows());
+        for (int i = 0; i < entries.size(); i++) {
+            CsvManifest.Entry entry = entries.get(i);
+            assertEquals(String.format("export/part-%05d.csv", i), entry.getKey());
+            // Rows still in the encoder's buffer are only counted once it flushes
+            assertTrue(entry.getByteCount() <= 50_000 + 8192);
+            assertTrue(i == entries.size() - 1 || entry.getByteCount() >= 50_000);
+            assertTrue(new String(objects.get(entry.getKey()), StandardCharsets.UTF_8).startsWith("\"id\",\"country\"\n"));
+        }
+    }
+
+    @Test
+    public void testFailedWriteAbortsTheOpenFiles() throws Exception {
+        ServerSideEncryptionByDefault byDefault = new ServerSideEncryptionByDefault()
+                .withSSEAlgorithm("aws:kms")
+                .withKMSMasterKeyID("kms_key");
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(new GetBucketEncryptionResult().withServerSideEncryptionConfiguration(
+                new ServerSideEncryptionConfiguration().withRules(new ServerSideEncryptionRule().withApplyServerSideEncryptionByDefault(byDefault))));
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenThrow(new AmazonS3Exception("Service unavailable"));
+        PartitionedCsvWriter writer = PartitionedCsvWriter.builder()
+                .s3Client(s3Client)
+                .bucket(BUCKET)
+                .keyPrefix("export/")
+                .partitioner(PartitionedCsvWriter.byColumn(HEADER, "country"))
+                .maxRowsPerFile(2)
+                .build();
+
+        // DE stays open until the US file fails to complete
+        writer.append(new String[]{"1", "DE"});
+        writer.append(new String[]{"2", "US"});
+        assertThrows(Exception.class, () -> writer.append(new String[]{"3", "US"}));
+        assertThrows(IOException.class, () -> writer.append(new String[]{"4", "DE"}));
+        writer.close();
+
+        assertEquals(0, writer.getManifest().getEntries().size());
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testUnknownPartitionColumnIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PartitionedCsvWriter.byColumn(HEADER, "missing"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.HeaderIndex;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CsvBinderTest {
+
+    private static final String CSV = "Account ID,Name,Units,Price,Active,Start Date,Tier,Ignored\n"
+            + "006666660000,ABC Inc,12,19.99,true,01/02/2022,GOLD,x\n"
+            + "111111111111,XYZ Inc,,0.5,false,,SILVER,y\n";
+
+    enum Tier { GOLD, SILVER }
+
+    static class Agreement {
+        @CsvColumn("Account ID")
+        private long accountId;
+        @CsvColumn("Name")
+        private String name;
+        @CsvColumn("Units")
+        private Integer units;
+        @CsvColumn("Price")
+        private BigDecimal price;
+        @CsvColumn("Active")
+        private boolean active;
+        @CsvColumn(value = "Start Date", format = "MM/dd/yyyy")
+        private LocalDate startDate;
+        @CsvColumn("Tier")
+        private Tier tier;
+        @CsvColumn(value = "Region", required = false)
+        private String region;
+        private String notBound;
+    }
+
+    static class Plain {
+        private String name;
+        private double price;
+        private String missing;
+    }
+
+    static class Required {
+        @CsvColumn("Region")
+        private String region;
+    }
+
+    record AgreementRecord(@CsvColumn("Account ID") long accountId,
+                           @CsvColumn("Units") int units,
+                           @CsvColumn("Price") BigDecimal price,
+                           @CsvColumn(value = "Start Date", format = "MM/dd/yyyy") LocalDate startDate,
+                           @CsvColumn(value = "Region", required = false) String region,
+                           String notBound) {
+    }
+
+    record PlainRecord(String name, double price) {
+    }
+
+    @Test
+    public void testBindsAnnotatedFields() throws IOException {
+        for (CsvEngine engine : new CsvEngine[]{CsvEngine.OPENCSV, CsvEngine.UTF8_BYTES}) {
+            List<Agreement> agreements = bind(engine, CsvBinder.of(Agreement.class));
+            assertEquals(2, agreements.size());
+
+            Agreement first = agreements.get(0);
+            assertEquals(6666660000L, first.accountId);
+            assertEquals("ABC Inc", first.name);
+            assertEquals(12, first.units);
+            assertEquals(new BigDecimal("19.99"), first.price);
+            assertEquals(true, first.active);
+            assertEquals(LocalDate.of(2022, 1, 2), first.startDate);
+            assertEquals(Tier.GOLD, first.tier);
+            assertNull(first.region);
+            assertNull(first.notBound);
+
+            Agreement second = agreements.get(1);
+            assertNull(second.units);
+            assertNull(second.startDate);
+            assertEquals(Tier.SILVER, second.tier);
+        }
+    }
+
+    @Test
+    public void testBindsUnannotatedFieldsByName() throws IOException {
+        String csv = "name,price\nABC Inc,1.25\n";
+        CsvRecordIterator<Plain> iterator = new CsvRecordIterator<>(open(CsvEngine.UTF8_BYTES, csv),
+                "bucket", "key", CsvBinder.of(Plain.class)::bind);
+        Plain plain = iterator.next();
+        assertEquals("ABC Inc", plain.name);
+        assertEquals(1.25, plain.price);
+        assertNull(plain.missing);
+    }
+
+    @Test
+    public void testBindsRecordsThroughTheirCanonicalConstructor() throws IOException {
+        for (CsvEngine engine : new CsvEngine[]{CsvEngine.OPENCSV, CsvEngine.UTF8_BYTES}) {
+            List<AgreementRecord> agreements = bind(engine, CsvBinder.of(AgreementRecord.class));
+            assertEquals(ImmutableList.of(
+                    new AgreementRecord(6666660000L, 12, new BigDecimal("19.99"), LocalDate.of(2022, 1, 2), null, null),
+                    new AgreementRecord(111111111111L, 0, new BigDecimal("0.5"), null, null, null)), agreements);
+        }
+
+        String csv = "name,price\nABC Inc,1.25\n";
+        CsvRecordIterator<PlainRecord> iterator = new CsvRecordIterator<>(open(CsvEngine.UTF8_BYTES, csv),
+                "bucket", "key", CsvBinder.of(PlainRecord.class)::bind);
+        assertEquals(new PlainRecord("ABC Inc", 1.25), iterator.next());
+    }
+
+    @Test
+    public void testRejectsMissingRequiredColumns() {
+        CsvBinder<Required> binder = CsvBinder.of(Required.class);
+        assertThrows(IllegalArgumentException.class, () -> binder.bind(HeaderIndex.of("Name")));
+    }
+
+    @Test
+    public void testReportsUnparseableValues() throws IOException {
+        String csv = "Account ID,Name,Units,Price,Active,Start Date,Tier,Ignored\nnot a number,,,,,,,\n";
+        CsvRecordIterator<Agreement> iterator = new CsvRecordIterator<>(open(CsvEngine.UTF8_BYTES, csv),
+                "bucket", "key", CsvBinder.of(Agreement.class)::bind);
+        assertThrows(RuntimeException.class, iterator::next);
+    }
+
+    private static <T> List<T> bind(CsvEngine engine, CsvBinder<T> binder) throws IOException {
+        List<T> objects = new ArrayList<>();
+        CsvRecordIterator<T> iterator = new CsvRecordIterator<>(open(engine, CSV), "bucket", "key", binder::bind);
+        iterator.forEachRemaining(objects::add);
+        iterator.close();
+        return objects;
+    }
+
+    private static CsvCursor open(CsvEngine engine, String csv) {
+        return engine.open(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,114 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import com.amazon.aws.monetization.filemgmt.model.IndexedRow;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResumableCsvIteratorTest {
+
+    private static final String CSV = "id,comment\r\n"
+            + "1,\"multi\nline\"\r\n"
+            + ",\r\n"
+            + "2,plain\r\n"
+            + "3,\"quoted, comma\"\r\n"
+            + "4,last";
+
+    private static final byte[] CONTENT = CSV.getBytes(StandardCharsets.UTF_8);
+
+    private static final CsvCheckpoint START = new CsvCheckpoint("bucket", "key", "etag", 0, 0, null);
+
+    @Test
+    public void testRecoversFromFailuresMidStream() {
+        AtomicInteger opens = new AtomicInteger();
+        // Every other stream breaks after a few bytes
+        Function<CsvCheckpoint, InputStream> opener = checkpoint -> {
+            InputStream stream = open(checkpoint);
+            return opens.getAndIncrement() % 2 == 0 ? new FailingInputStream(stream, 7) : stream;
+        };
+
+        List<String> ids = new ArrayList<>();
+        try (ResumableCsvIterator iterator = new ResumableCsvIterator(START, opener, 1)) {
+            iterator.forEachRemaining(row -> ids.add(row.get("id")));
+            assertEquals(CONTENT.length, iterator.getCheckpoint().getOffset());
+            assertEquals(6, iterator.getCheckpoint().getRecordNumber());
+        }
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids);
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() {
+        CsvCheckpoint checkpoint;
+        try (ResumableCsvIterator iterator = new ResumableCsvIterator(START, ResumableCsvIteratorTest::open, 0)) {
+            iterator.next();
+            iterator.next();
+            checkpoint = iterator.getCheckpoint();
+        }
+        assertEquals(CSV.indexOf("3,"), checkpoint.getOffset());
+        assertEquals(4, checkpoint.getRecordNumber());
+        assertEquals(Arrays.asList("id", "comment"), checkpoint.getHeader());
+
+        try (ResumableCsvIterator iterator = new ResumableCsvIterator(checkpoint, ResumableCsvIteratorTest::open, 0)) {
+            IndexedRow row = iterator.next();
+            assertEquals("quoted, comma", row.get("comment"));
+            assertEquals("4", iterator.next().get("id"));
+            assertEquals(false, iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testFailsOnceRetriesAreExhausted() {
+        AtomicInteger opens = new AtomicInteger();
+        // The first stream breaks after the first row, every reopen breaks straight away
+        Function<CsvCheckpoint, InputStream> opener = checkpoint ->
+                new FailingInputStream(open(checkpoint), opens.getAndIncrement() == 0 ? 30 : 0);
+        ResumableCsvIterator iterator = new ResumableCsvIterator(START, opener, 2);
+        iterator.next();
+        assertThrows(RuntimeException.class, iterator::hasNext);
+        assertEquals(3, opens.get());
+    }
+
+    private static InputStream open(CsvCheckpoint checkpoint) {
+        int offset = (int) checkpoint.getOffset();
+        return new ByteArrayInputStream(CONTENT, offset, CONTENT.length - offset);
+    }
+
+    private static final class FailingInputStream extends InputStream {
+        private final InputStream delegate;
+        private int remaining;
+
+        private FailingInputStream(InputStream delegate, int failAfter) {
+            this.delegate = delegate;
+            this.remaining = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining-- <= 0) {
+                throw new IOException("Connection reset");
+            }
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Connection reset");
+            }
+            int read = delegate.read(b, off, Math.min(len, remaining));
+            remaining -= Math.max(read, 0);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.amazon.aws.monetization.filemgmt.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Utf8CsvTokenizerTest {
+
+    private static final List<String> INPUTS = Arrays.asList(
+            "a,b,c\r\n1,2,3\r\n",
+            "a,b,c\n1,2,3",
+            "plain,\"quoted, with comma\",\"multi\nline\"\n",
+            "crlf,\"multi\r\nline\"\r\nnext,row\r\n",
+            "dq,\"say \"\"hi\"\"\",x\n",
+            "embedded,abc\"d\"ef,g\n",
+            "ab\"c\"d,e\n",
+            "lead,   \"padded\",  trailing  \n",
+            "esc,\"a\\\"b\",c\\,d,e\\\\f,g\\h\n",
+            "utf8,été,\"日本\"\n",
+            ",,\n   ,  ,\n",
+            "\n\nx\n",
+            "\"\",\"\"\"\",\"\"\"\"\"\"\n");
+
+    @Test
+    public void testMatchesOpenCsv() throws IOException {
+        for (String input : INPUTS) {
+            assertEquals(tokenize(CsvEngine.OPENCSV, input), tokenize(CsvEngine.UTF8_BYTES, input), input);
+        }
+    }
+
+    @Test
+    public void testNumbersMatchJdkParsing() throws IOException {
+        String[] values = {"0", "-17", " 42 ", "+8", "9223372036854775807", "-9223372036854775808",
+                "3.14", "-0.0", "0.1", ".5", "1.", "123456789.123456", "1e10", "2.5E-3", "0.30000000000000004"};
+        Utf8CsvTokenizer tokenizer = new Utf8CsvTokenizer(new ByteArrayInputStream(
+                String.join(",", values).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(tokenizer.next());
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].trim();
+            assertEquals(Double.parseDouble(value), tokenizer.getDouble(i), value);
+            if (value.matches("[+-]?\\d+")) {
+                assertEquals(Long.parseLong(value), tokenizer.getLong(i), value);
+            }
+        }
+        assertEquals(-17, tokenizer.getInt(1));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getInt(4));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getLong(6));
+    }
+
+    @Test
+    public void testBlankFieldsAreDetectedWithoutDecoding() throws IOException {
+        Utf8CsvTokenizer tokenizer = new Utf8CsvTokenizer(
+                new ByteArrayInputStream("  ,\t,x\n".getBytes(StandardCharsets.UTF_8)), 4);
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.isBlank(0));
+        assertTrue(tokenizer.isBlank(1));
+        assertFalse(tokenizer.isBlank(2));
+        assertEquals(7, tokenizer.getPosition());
+        assertFalse(tokenizer.next());
+    }
+
+    private static List<List<String>> tokenize(CsvEngine engine, String input) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvCursor cursor = engine.open(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))) {
+            while (cursor.next()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < cursor.getFieldCount(); i++) {
+                    fields.add(cursor.getField(i));
+                }
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+}
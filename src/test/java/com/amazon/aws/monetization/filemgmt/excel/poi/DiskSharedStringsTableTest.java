@@ -0,0 +1,64 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DiskSharedStringsTableTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testResolvesTheSameStringsAsTheInMemoryTable() throws Exception {
+        File xlsx = tempDir.resolve("strings.xlsx").toFile();
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = new FileOutputStream(xlsx)) {
+            XSSFSheet sheet = workbook.createSheet("Data");
+            XSSFFont bold = workbook.createFont();
+            bold.setBold(true);
+            for (int rowIndex = 0; rowIndex < 200; rowIndex++) {
+                Row row = sheet.createRow(rowIndex);
+                row.createCell(0).setCellValue("value " + rowIndex);
+                row.createCell(1).setCellValue(rowIndex % 3 == 0 ? "" : "répété €");
+                XSSFRichTextString rich = new XSSFRichTextString("bold then plain " + rowIndex);
+                rich.applyFont(0, 4, bold);
+                row.createCell(2).setCellValue(rich);
+            }
+            workbook.write(out);
+        }
+
+        OPCPackage pkg = OPCPackage.open(xlsx, PackageAccess.READ);
+        try {
+            ReadOnlySharedStringsTable expected = new ReadOnlySharedStringsTable(pkg);
+            try (DiskSharedStringsTable table = new DiskSharedStringsTable(pkg, 8)) {
+                assertEquals(expected.getCount(), table.getCount());
+                assertEquals(expected.getUniqueCount(), table.getUniqueCount());
+                // Forwards then backwards, so most lookups miss the small cache
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int i = 0; i < expected.getUniqueCount(); i++) {
+                        int idx = pass == 0 ? i : expected.getUniqueCount() - 1 - i;
+                        assertEquals(expected.getItemAt(idx).getString(), table.getItemAt(idx).getString());
+                    }
+                }
+                assertThrows(IndexOutOfBoundsException.class, () -> table.getItemAt(expected.getUniqueCount()));
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExcelCellFormatterTest {
+    private static final String[] FORMATS = {
+            null, "0.00", "#,##0", "0%", "\"$\"#,##0.00", "@", "0.00;[Red]-0.00", "yyyy-mm-dd", "m/d/yy h:mm",
+            "[h]:mm:ss", "0.00E+00", "# ?/?"
+    };
+    private static final double[] VALUES = {0, 1, -1.5, 0.125, 1234567.891, 45000.75, -2, 3000000};
+
+    @Test
+    public void testMatchesDataFormatterForEveryStyle() throws Exception {
+        assertMatchesDataFormatter(false);
+    }
+
+    @Test
+    public void testMatchesDataFormatterFor1904Dates() throws Exception {
+        assertMatchesDataFormatter(true);
+    }
+
+    private static void assertMatchesDataFormatter(boolean date1904) throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.getCTWorkbook().addNewWorkbookPr().setDate1904(date1904);
+            XSSFSheet sheet = workbook.createSheet("Sheet1");
+            List<Cell> cells = new ArrayList<>();
+            for (int rowIndex = 0; rowIndex < VALUES.length; rowIndex++) {
+                Row row = sheet.createRow(rowIndex);
+                for (int colIndex = 0; colIndex < FORMATS.length; colIndex++) {
+                    Cell cell = row.createCell(colIndex);
+                    cell.setCellValue(VALUES[rowIndex]);
+                    if (FORMATS[colIndex] != null) {
+                        // A style per cell, so the formatter sees the same format behind many style indexes
+                        CellStyle style = workbook.createCellStyle();
+                        style.setDataFormat(workbook.createDataFormat().getFormat(FORMATS[colIndex]));
+                        cell.setCellStyle(style);
+                    }
+                    cells.add(cell);
+                }
+                row.createCell(FORMATS.length).setCellValue("text " + rowIndex);
+                row.createCell(FORMATS.length + 1).setCellValue(rowIndex % 2 == 0);
+                row.createCell(FORMATS.length + 2).setCellFormula("A1+" + rowIndex);
+                cells.add(row.getCell(FORMATS.length));
+                cells.add(row.getCell(FORMATS.length + 1));
+                cells.add(row.getCell(FORMATS.length + 2));
+            }
+
+            DataFormatter expected = new DataFormatter();
+            ExcelCellFormatter formatter = new ExcelCellFormatter();
+            // Twice, so the second pass formats from the cached styles
+            for (int pass = 0; pass < 2; pass++) {
+                for (Cell cell : cells) {
+                    assertEquals(expected.formatCellValue(cell), formatter.formatCellValue(cell),
+                            cell.getAddress().formatAsString());
+                }
+            }
+            assertEquals("", formatter.formatCellValue(null));
+        }
+    }
+}
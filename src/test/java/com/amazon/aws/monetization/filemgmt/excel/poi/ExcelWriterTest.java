@@ -0,0 +1,130 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import com.amazon.aws.monetization.filemgmt.utils.BucketEncryptionCache;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ExcelWriterTest {
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @Mock
+    GetBucketEncryptionResult getBucketEncryptionResult;
+
+    @Mock
+    ServerSideEncryptionConfiguration serverSideEncryptionConfiguration;
+
+    @Mock
+    ServerSideEncryptionByDefault serverSideEncryptionByDefault;
+
+    @Mock
+    ServerSideEncryptionRule serverSideEncryptionRule;
+
+    ExcelWriter excelWriter;
+
+    private static final String FROM_BUCKET = "fake_bucket";
+    private static final String FROM_KEY = "fake_key";
+    private static final String TO_BUCKET = "fake_bucket_2";
+    private static final String TO_KEY = "fake_key_2";
+    private static final String EXPECTED_BUCKET_OWNER = "fake_bucket_owner";
+
+    @BeforeEach
+    public void setup() {
+        BucketEncryptionCache.getDefault().invalidateAll();
+        excelWriter = new ExcelWriter(s3Client);
+    }
+
+    @Test
+    public void testWriteAsyncUploadsWorkbook() throws Exception {
+        mockBucketEncryption();
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet("Data").createRow(0).createCell(0).setCellValue("value");
+            excelWriter.writeAsync(TO_BUCKET, TO_KEY, workbook, EXPECTED_BUCKET_OWNER).get(5, TimeUnit.SECONDS);
+        }
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(captor.capture());
+        assertEquals(TO_KEY, captor.getValue().getKey());
+        assertEquals(EXPECTED_BUCKET_OWNER, captor.getValue().getExpectedBucketOwner());
+    }
+
+    @Test
+    public void testWriteAsyncFailsWithTheUploadFailure() throws Exception {
+        mockBucketEncryption();
+        AmazonS3Exception failure = new AmazonS3Exception("put failed");
+        when(s3Client.putObject(Mockito.any(PutObjectRequest.class))).thenThrow(failure);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet("Data");
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> excelWriter.writeAsync(TO_BUCKET, TO_KEY, workbook, EXPECTED_BUCKET_OWNER).get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testCopyAsyncUploadsSourceWorkbook() throws Exception {
+        mockBucketEncryption();
+        S3Object source = new S3Object();
+        source.setObjectContent(new ByteArrayInputStream(workbookBytes()));
+        when(s3Client.getObject(Mockito.any(GetObjectRequest.class))).thenReturn(source);
+
+        excelWriter.writeAsync(FROM_BUCKET, FROM_KEY, TO_BUCKET, TO_KEY, EXPECTED_BUCKET_OWNER).get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<GetObjectRequest> read = ArgumentCaptor.forClass(GetObjectRequest.class);
+        Mockito.verify(s3Client).getObject(read.capture());
+        assertEquals(FROM_KEY, read.getValue().getKey());
+        Mockito.verify(s3Client, Mockito.times(1)).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testCopyAsyncWritesNothingWhenTheSourceFails() {
+        AmazonS3Exception failure = new AmazonS3Exception("get failed");
+        when(s3Client.getObject(Mockito.any(GetObjectRequest.class))).thenThrow(failure);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> excelWriter.writeAsync(FROM_BUCKET, FROM_KEY, TO_BUCKET, TO_KEY, EXPECTED_BUCKET_OWNER).get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+        Mockito.verify(s3Client, Mockito.never()).putObject(Mockito.any(PutObjectRequest.class));
+    }
+
+    private static byte[] workbookBytes() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet("Data").createRow(0).createCell(0).setCellValue("value");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private void mockBucketEncryption() {
+        when(s3Client.getBucketEncryption(TO_BUCKET)).thenReturn(getBucketEncryptionResult);
+        when(getBucketEncryptionResult.getServerSideEncryptionConfiguration()).thenReturn(serverSideEncryptionConfiguration);
+        when(serverSideEncryptionConfiguration.getRules()).thenReturn(Collections.singletonList(serverSideEncryptionRule));
+        when(serverSideEncryptionRule.getApplyServerSideEncryptionByDefault()).thenReturn(serverSideEncryptionByDefault);
+        when(serverSideEncryptionByDefault.getSSEAlgorithm()).thenReturn("algorithm");
+        when(serverSideEncryptionByDefault.getKMSMasterKeyID()).thenReturn("kms_key");
+    }
+}
@@ -0,0 +1,112 @@
+package com.amazon.aws.monetization.filemgmt.excel.poi;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class WorkbookCacheTest {
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @Test
+    public void testRevalidatesWithETagAndReloadsChangedWorkbooks() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(
+                s3Object("v1", workbook("first")), null, s3Object("v2", workbook("second")));
+        WorkbookCache cache = new WorkbookCache(WorkbookCache.DEFAULT_MAX_RETAINED_BYTES);
+
+        XSSFWorkbook loaded = cache.read(s3Client, "bucket", "key", null, workbook -> workbook);
+        assertEquals("first", firstCell(loaded));
+        // Not modified, so the parsed workbook is reused
+        assertSame(loaded, cache.read(s3Client, "bucket", "key", null, workbook -> workbook));
+        // Changed, so it is loaded again
+        assertEquals("second", cache.read(s3Client, "bucket", "key", null, WorkbookCacheTest::firstCell));
+
+        ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(3)).getObject(requests.capture());
+        assertEquals(Collections.emptyList(), requests.getAllValues().get(0).getNonmatchingETagConstraints());
+        assertEquals(Collections.singletonList("v1"), requests.getAllValues().get(1).getNonmatchingETagConstraints());
+        assertEquals(Collections.singletonList("v1"), requests.getAllValues().get(2).getNonmatchingETagConstraints());
+    }
+
+    @Test
+    public void testCopiesAreIndependentOfTheCachedWorkbook() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object("v1", workbook("first")), (S3Object) null);
+        WorkbookCache cache = new WorkbookCache(WorkbookCache.DEFAULT_MAX_RETAINED_BYTES);
+
+        try (XSSFWorkbook copy = cache.copy(s3Client, "bucket", "key", null)) {
+            copy.getSheetAt(0).getRow(0).getCell(0).setCellValue("changed");
+            assertEquals("first", cache.read(s3Client, "bucket", "key", null, WorkbookCacheTest::firstCell));
+            assertNotSame(copy, cache.read(s3Client, "bucket", "key", null, workbook -> workbook));
+        }
+    }
+
+    @Test
+    public void testEvictsPastTheMaximumWeight() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(
+                invocation -> s3Object("v1", workbook(((GetObjectRequest) invocation.getArgument(0)).getKey())));
+        // Room for about one small workbook
+        WorkbookCache cache = new WorkbookCache(32 * 1024);
+
+        cache.read(s3Client, "bucket", "a", null, WorkbookCacheTest::firstCell);
+        cache.read(s3Client, "bucket", "b", null, WorkbookCacheTest::firstCell);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCopiedWorkbooksKeepOnlyTheFile() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(
+                invocation -> s3Object("v1", workbook(((GetObjectRequest) invocation.getArgument(0)).getKey())));
+        // Room for several small files, but not for one parsed workbook
+        WorkbookCache cache = new WorkbookCache(16 * 1024);
+
+        try (XSSFWorkbook a = cache.copy(s3Client, "bucket", "a", null);
+             XSSFWorkbook b = cache.copy(s3Client, "bucket", "b", null)) {
+            assertEquals("a", firstCell(a));
+            assertEquals("b", firstCell(b));
+        }
+        assertEquals(2, cache.size());
+    }
+
+    private static String firstCell(XSSFWorkbook workbook) {
+        return workbook.getSheetAt(0).getRow(0).getCell(0).getStringCellValue();
+    }
+
+    private static S3Object s3Object(String eTag, byte[] content) {
+        S3Object s3Object = new S3Object();
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", eTag);
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new ByteArrayInputStream(content));
+        return s3Object;
+    }
+
+    private static byte[] workbook(String value) throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet("Data").createRow(0).createCell(0).setCellValue(value);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
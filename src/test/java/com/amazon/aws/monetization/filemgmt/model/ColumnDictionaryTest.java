@@ -0,0 +1,61 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnDictionaryTest {
+
+    @Test
+    public void testSharesRepeatedStringsPerColumn() {
+        ColumnDictionary dictionary = new ColumnDictionary(2);
+        String usd = dictionary.intern(0, new String("USD"));
+
+        assertSame(usd, dictionary.intern(0, new String("USD")));
+        assertNotSame(usd, dictionary.intern(1, new String("USD")));
+        assertFalse(dictionary.isDisabled(0));
+    }
+
+    @Test
+    public void testSharesRepeatedBytesWithoutDecoding() {
+        ColumnDictionary dictionary = new ColumnDictionary(1000);
+        byte[] row = "xx,EUR,été,EUR".getBytes(StandardCharsets.UTF_8);
+
+        String eur = dictionary.intern(3, row, 3, 3);
+        assertEquals("EUR", eur);
+        assertSame(eur, dictionary.intern(3, row, row.length - 3, 3));
+        assertEquals("été", dictionary.intern(3, row, 7, 5));
+
+        // enough distinct values to resize the table
+        for (int i = 0; i < 100; i++) {
+            byte[] value = ("v" + i).getBytes(StandardCharsets.UTF_8);
+            assertEquals("v" + i, dictionary.intern(3, value, 0, value.length));
+        }
+        assertSame(eur, dictionary.intern(3, row, 3, 3));
+    }
+
+    @Test
+    public void testFallsBackOncePastTheThreshold() {
+        ColumnDictionary dictionary = new ColumnDictionary(2);
+        dictionary.intern(0, "a");
+        dictionary.intern(0, "b");
+        dictionary.intern(0, "c");
+        assertTrue(dictionary.isDisabled(0));
+
+        String a = new String("a");
+        assertSame(a, dictionary.intern(0, a));
+
+        byte[] bytes = "a".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 3; i++) {
+            dictionary.intern(1, new byte[]{(byte) ('a' + i)}, 0, 1);
+        }
+        assertTrue(dictionary.isDisabled(1));
+        assertNotSame(dictionary.intern(1, bytes, 0, 1), dictionary.intern(1, bytes, 0, 1));
+    }
+}
@@ -0,0 +1,58 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IndexedRowTest {
+
+    @Test
+    public void testMapViewMatchesHeader() {
+        HeaderIndex header = HeaderIndex.of("id", "name", "region");
+        IndexedRow row = new IndexedRow(header, new String[]{"1", "ABC Inc", "us-east-1"});
+
+        assertEquals("ABC Inc", row.get("name"));
+        assertEquals("us-east-1", row.get(2));
+        assertNull(row.get("missing"));
+        assertEquals(ImmutableMap.of("id", "1", "name", "ABC Inc", "region", "us-east-1"), row.asMap());
+    }
+
+    @Test
+    public void testCopiesAreMutableAndDetached() {
+        HeaderIndex header = HeaderIndex.of("id", "name");
+        IndexedRow row = new IndexedRow(header, new String[]{"1", "ABC Inc"});
+        Map<String, String> copy = row.toMap();
+
+        copy.put("name", "changed");
+        copy.remove("id");
+        assertEquals(ImmutableMap.of("name", "changed"), copy);
+        assertEquals("ABC Inc", row.get("name"));
+        assertThrows(UnsupportedOperationException.class, () -> row.asMap().put("name", "changed"));
+    }
+
+    @Test
+    public void testShortRowsLeaveOutMissingColumns() {
+        HeaderIndex header = HeaderIndex.of("id", "name", "region");
+        Map<String, String> values = new IndexedRow(header, new String[]{"1"}).asMap();
+
+        assertEquals(1, values.size());
+        assertFalse(values.containsKey("name"));
+    }
+
+    @Test
+    public void testRepeatedColumnsResolveToLastOccurrence() {
+        HeaderIndex header = HeaderIndex.of("id", "name", "id");
+        IndexedRow row = new IndexedRow(header, new String[]{"1", "ABC Inc", "2"});
+
+        assertEquals("2", row.get("id"));
+        assertEquals(ImmutableMap.of("name", "ABC Inc", "id", "2"), row.asMap());
+        assertThrows(IllegalArgumentException.class, () -> HeaderIndex.ofUnique(Arrays.asList("id", "id")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.amazon.aws.monetization.filemgmt.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RowFilterTest {
+
+    private static final HeaderIndex HEADER = HeaderIndex.of("marketplace", "period", "amount");
+
+    @Test
+    public void testMatchesColumnPredicates() {
+        FieldSource row = fields("ATVPDKIKX0DER", "2022-03", " 12.50 ");
+
+        assertTrue(test(RowFilter.equalTo("marketplace", "ATVPDKIKX0DER"), row));
+        assertFalse(test(RowFilter.equalTo("marketplace", "A1F83G8C2ARO7P"), row));
+        assertTrue(test(RowFilter.in("marketplace", Arrays.asList("A1F83G8C2ARO7P", "ATVPDKIKX0DER")), row));
+        assertTrue(test(RowFilter.startsWith("period", "2022-"), row));
+        assertTrue(test(RowFilter.between("period", "2022-01", "2022-03"), row));
+        assertFalse(test(RowFilter.between("period", "2022-04", "2022-12"), row));
+        assertTrue(test(RowFilter.between("amount", 10, 20), row));
+        assertFalse(test(RowFilter.between("amount", 0, 10), row));
+        assertTrue(test(RowFilter.allOf(RowFilter.startsWith("period", "2022"), RowFilter.between("amount", 12.5, 12.5)), row));
+        assertFalse(test(RowFilter.allOf(RowFilter.startsWith("period", "2022"), RowFilter.equalTo("amount", "0")), row));
+    }
+
+    @Test
+    public void testLargeSetsAndNonNumericValues() {
+        RowFilter largeSet = RowFilter.in("period",
+                IntStream.rangeClosed(1, 12).mapToObj(m -> String.format("2022-%02d", m)).collect(Collectors.toList()));
+
+        assertTrue(test(largeSet, fields("x", "2022-11", "")));
+        assertFalse(test(largeSet, fields("x", "2023-01", "")));
+        assertFalse(test(RowFilter.between("amount", 0, 100), fields("x", "2022-11", "")));
+    }
+
+    @Test
+    public void testRejectsUnknownColumns() {
+        assertThrows(IllegalArgumentException.class, () -> RowFilter.equalTo("missing", "x").bind(HEADER));
+    }
+
+    private static boolean test(RowFilter filter, FieldSource row) {
+        Predicate<FieldSource> predicate = filter.bind(HEADER);
+        return predicate.test(row);
+    }
+
+    private static FieldSource fields(String... values) {
+        return index -> values[index];
+    }
+}
@@ -0,0 +1,70 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncUploadExecutorTest {
+
+    @Test
+    public void testLimitsUploadsInFlight() throws Exception {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            AsyncUploadExecutor executor = new AsyncUploadExecutor(pool, 2);
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+
+            List<CompletableFuture<Integer>> uploads = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                int upload = i;
+                uploads.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    started.countDown();
+                    release.await();
+                    running.decrementAndGet();
+                    return upload;
+                }));
+            }
+            // The first two hold both permits until released, so the rest stay queued
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(2, running.get());
+            assertEquals(4, executor.getWaitingCount());
+
+            release.countDown();
+            for (int i = 0; i < uploads.size(); i++) {
+                assertEquals(i, uploads.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(2, maxRunning.get());
+            assertEquals(0, executor.getWaitingCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedUploadCompletesExceptionally() {
+        CompletableFuture<Object> upload = AsyncUploadExecutor.getDefault().submit(() -> {
+            throw new IOException("put failed");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> upload.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertTrue(upload.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,106 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetBucketEncryptionResult;
+import com.amazonaws.services.s3.model.ServerSideEncryptionByDefault;
+import com.amazonaws.services.s3.model.ServerSideEncryptionConfiguration;
+import com.amazonaws.services.s3.model.ServerSideEncryptionRule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BucketEncryptionCacheTest {
+    private static final String BUCKET = "fake_bucket";
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @Test
+    public void testLookupIsCachedUntilInvalidated() {
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(encryptionResult("kms_key"));
+        BucketEncryptionCache cache = new BucketEncryptionCache(Duration.ofMinutes(1), 10);
+
+        BucketEncryptionCache.BucketEncryption encryption = cache.get(s3Client, BUCKET);
+        assertEquals("aws:kms", encryption.getSseAlgorithm());
+        assertEquals("kms_key", encryption.getKmsMasterKeyId());
+        assertSame(encryption, cache.get(s3Client, BUCKET));
+        Mockito.verify(s3Client, Mockito.times(1)).getBucketEncryption(BUCKET);
+
+        cache.invalidate(BUCKET);
+        cache.get(s3Client, BUCKET);
+        Mockito.verify(s3Client, Mockito.times(2)).getBucketEncryption(BUCKET);
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        when(s3Client.getBucketEncryption(BUCKET)).thenReturn(encryptionResult("old_key"), encryptionResult("new_key"));
+        BucketEncryptionCache cache = new BucketEncryptionCache(Duration.ofMillis(20), 10);
+
+        assertEquals("old_key", cache.get(s3Client, BUCKET).getKmsMasterKeyId());
+        Thread.sleep(50);
+        assertEquals("new_key", cache.get(s3Client, BUCKET).getKmsMasterKeyId());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneRequest() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        when(s3Client.getBucketEncryption(BUCKET)).thenAnswer(invocation -> {
+            loading.await();
+            return encryptionResult("kms_key");
+        });
+        BucketEncryptionCache cache = new BucketEncryptionCache(Duration.ofMinutes(1), 10);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BucketEncryptionCache.BucketEncryption>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(pool.submit(() -> cache.get(s3Client, BUCKET)));
+            }
+            Thread.sleep(50);
+            loading.countDown();
+            for (Future<BucketEncryptionCache.BucketEncryption> lookup : lookups) {
+                assertEquals("kms_key", lookup.get().getKmsMasterKeyId());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Mockito.verify(s3Client, Mockito.times(1)).getBucketEncryption(BUCKET);
+    }
+
+    @Test
+    public void testFailuresAreRethrownAndNotCached() {
+        when(s3Client.getBucketEncryption(BUCKET))
+                .thenThrow(new AmazonS3Exception("denied"))
+                .thenReturn(encryptionResult("kms_key"));
+        BucketEncryptionCache cache = new BucketEncryptionCache(Duration.ofMinutes(1), 10);
+
+        assertThrows(AmazonS3Exception.class, () -> cache.get(s3Client, BUCKET));
+        assertEquals("kms_key", cache.get(s3Client, BUCKET).getKmsMasterKeyId());
+    }
+
+    private static GetBucketEncryptionResult encryptionResult(String kmsKey) {
+        ServerSideEncryptionByDefault byDefault = new ServerSideEncryptionByDefault()
+                .withSSEAlgorithm("aws:kms")
+                .withKMSMasterKeyID(kmsKey);
+        ServerSideEncryptionConfiguration configuration = new ServerSideEncryptionConfiguration()
+                .withRules(new ServerSideEncryptionRule().withApplyServerSideEncryptionByDefault(byDefault));
+        return new GetBucketEncryptionResult().withServerSideEncryptionConfiguration(configuration);
+    }
+}
@@ -0,0 +1,171 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazon.aws.monetization.filemgmt.model.S3WriteResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.Md5Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class S3MultipartOutputStreamTest {
+    private static final String BUCKET = "fake_bucket";
+    private static final String KEY = "fake_key";
+    private static final String OWNER = "fake_owner";
+    private static final int PART_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    @Mock
+    AmazonS3 s3Client;
+
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setup() {
+        uploadedParts.clear();
+    }
+
+    @Test
+    public void testSmallOutputIsSinglePut() throws Exception {
+        byte[] content = "id,name\n1,ABC Inc\n".getBytes();
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, BUCKET, KEY, OWNER, new ObjectMetadata(), "kms_key");
+        out.write(content);
+        out.close();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(s3Client).putObject(captor.capture());
+        assertArrayEquals(content, IOUtils.toByteArray(captor.getValue().getInputStream()));
+        assertEquals(content.length, captor.getValue().getMetadata().getContentLength());
+        assertEquals("kms_key", captor.getValue().getSSEAwsKeyManagementParams().getAwsKmsKeyId());
+        assertEquals(OWNER, captor.getValue().getExpectedBucketOwner());
+        assertNull(out.getUploadId());
+        Mockito.verify(s3Client, Mockito.never()).initiateMultipartUpload(any());
+
+        assertEquals(Md5Utils.md5AsBase64(content), captor.getValue().getMetadata().getContentMD5());
+        S3WriteResult result = out.getWriteResult();
+        assertEquals(Md5Utils.md5AsBase64(content), result.getContentMd5());
+        assertEquals(crc32c(content, 0, content.length), result.getCrc32c());
+        assertEquals(content.length, result.getLength());
+        assertFalse(result.isMultipart());
+    }
+
+    @Test
+    public void testLargeOutputIsUploadedInOrderedParts() throws Exception {
+        mockUpload();
+        byte[] content = new byte[PART_SIZE * 2 + 123];
+        new Random(7).nextBytes(content);
+
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, BUCKET, KEY, OWNER, new ObjectMetadata(), "kms_key", PART_SIZE, 2);
+        // Odd sized writes so parts are cut in the middle of a write
+        for (int offset = 0; offset < content.length; offset += 1000003) {
+            out.write(content, offset, Math.min(1000003, content.length - offset));
+        }
+        out.close();
+
+        ArgumentCaptor<InitiateMultipartUploadRequest> initiate = ArgumentCaptor.forClass(InitiateMultipartUploadRequest.class);
+        Mockito.verify(s3Client).initiateMultipartUpload(initiate.capture());
+        assertEquals("kms_key", initiate.getValue().getSSEAwsKeyManagementParams().getAwsKmsKeyId());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        Mockito.verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals("upload-id", complete.getValue().getUploadId());
+        assertEquals(Arrays.asList(1, 2, 3),
+                complete.getValue().getPartETags().stream().map(PartETag::getPartNumber).collect(Collectors.toList()));
+
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        for (int part = 1; part <= 3; part++) {
+            uploaded.write(uploadedParts.get(part));
+        }
+        assertArrayEquals(content, uploaded.toByteArray());
+        Mockito.verify(s3Client, Mockito.never()).putObject(any(PutObjectRequest.class));
+        Mockito.verify(s3Client, Mockito.never()).abortMultipartUpload(any());
+
+        S3WriteResult result = out.getWriteResult();
+        assertEquals(Md5Utils.md5AsBase64(content), result.getContentMd5());
+        assertEquals(crc32c(content, 0, content.length), result.getCrc32c());
+        assertEquals(3, result.getParts().size());
+        for (S3WriteResult.Part part : result.getParts()) {
+            byte[] bytes = uploadedParts.get(part.getPartNumber());
+            assertEquals("etag-" + part.getPartNumber(), part.getETag());
+            assertEquals(bytes.length, part.getLength());
+            assertEquals(Md5Utils.md5AsBase64(bytes), part.getContentMd5());
+            assertEquals(crc32c(bytes, 0, bytes.length), part.getCrc32c());
+        }
+    }
+
+    @Test
+    public void testFailedPartAbortsUpload() throws Exception {
+        when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult());
+        when(s3Client.uploadPart(any(UploadPartRequest.class))).thenThrow(new AmazonServiceException("part failed"));
+
+        S3MultipartOutputStream out = new S3MultipartOutputStream(s3Client, BUCKET, KEY, OWNER, new ObjectMetadata(), "kms_key", PART_SIZE, 1);
+        out.write(new byte[PART_SIZE + 1]);
+
+        assertThrows(IOException.class, out::close);
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        Mockito.verify(s3Client).abortMultipartUpload(abort.capture());
+        assertEquals("upload-id", abort.getValue().getUploadId());
+        Mockito.verify(s3Client, Mockito.never()).completeMultipartUpload(any());
+        assertThrows(IOException.class, () -> out.write(1));
+    }
+
+    private void mockUpload() {
+        when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult());
+        when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0, UploadPartRequest.class);
+            byte[] bytes = IOUtils.toByteArray(request.getInputStream());
+            assertEquals(request.getPartSize(), bytes.length);
+            assertEquals(Md5Utils.md5AsBase64(bytes), request.getMd5Digest());
+            uploadedParts.put(request.getPartNumber(), bytes);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+    }
+
+    private static String crc32c(byte[] bytes, int offset, int length) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes, offset, length);
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc32c.getValue()).array());
+    }
+
+    private static InitiateMultipartUploadResult initiateResult() {
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setUploadId("upload-id");
+        return result;
+    }
+}
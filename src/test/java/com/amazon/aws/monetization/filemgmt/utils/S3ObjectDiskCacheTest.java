@@ -0,0 +1,101 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class S3ObjectDiskCacheTest {
+
+    @Mock
+    AmazonS3 s3Client;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRevalidatesWithETagAndReplacesChangedObjects() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(
+                s3Object("v1", "first"), null, s3Object("v2", "second"));
+        S3ObjectDiskCache cache = new S3ObjectDiskCache(tempDir, 1024);
+
+        assertEquals("first", read(cache.getObject(s3Client, "bucket", "key", null)));
+        // Not modified, so it is read from disk
+        assertEquals("first", read(cache.getObject(s3Client, "bucket", "key", null)));
+        // Changed, so it is downloaded again and replaces the cached file
+        assertEquals("second", read(cache.getObject(s3Client, "bucket", "key", null)));
+        assertEquals("second".length(), cache.getCachedBytes());
+        assertEquals(1, Files.list(tempDir).count());
+
+        ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(3)).getObject(requests.capture());
+        assertEquals(Collections.emptyList(), requests.getAllValues().get(0).getNonmatchingETagConstraints());
+        assertEquals(Collections.singletonList("v1"), requests.getAllValues().get(1).getNonmatchingETagConstraints());
+        assertEquals(Collections.singletonList("v1"), requests.getAllValues().get(2).getNonmatchingETagConstraints());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedPastTheMaximumSize() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(
+                invocation -> s3Object("v1", ((GetObjectRequest) invocation.getArgument(0)).getKey() + "-0123456789"));
+        S3ObjectDiskCache cache = new S3ObjectDiskCache(tempDir, 30);
+
+        read(cache.getObject(s3Client, "bucket", "a", null));
+        read(cache.getObject(s3Client, "bucket", "b", null));
+        read(cache.getObject(s3Client, "bucket", "c", null));
+
+        assertEquals(24, cache.getCachedBytes());
+        assertEquals(2, Files.list(tempDir).count());
+    }
+
+    @Test
+    public void testServesHitsAsMappableChannels() throws Exception {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(s3Object("v1", "mapped"), (S3Object) null);
+        S3ObjectDiskCache cache = new S3ObjectDiskCache(tempDir, 1024);
+        read(cache.getObject(s3Client, "bucket", "key", null));
+
+        try (FileChannel channel = cache.openChannel(s3Client, "bucket", "key", null)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            assertEquals("mapped", new String(content, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String read(S3Object s3Object) throws Exception {
+        try (S3Object object = s3Object) {
+            return new String(IOUtils.toByteArray(object.getObjectContent()), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static S3Object s3Object(String eTag, String content) {
+        S3Object s3Object = new S3Object();
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", eTag);
+        s3Object.setObjectMetadata(metadata);
+        s3Object.setObjectContent(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return s3Object;
+    }
+}
@@ -0,0 +1,92 @@
+package com.amazon.aws.monetization.filemgmt.utils;
+
+import com.amazonaws.util.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StagingBufferTest {
+
+    @Test
+    public void testStagesInMemoryWithinBudget() throws Exception {
+        StagingMemoryBudget budget = new StagingMemoryBudget(64, 16);
+        byte[] content = randomBytes(50);
+
+        StagingBuffer buffer = new StagingBuffer(budget);
+        buffer.write(content, 0, 7);
+        buffer.write(content[7]);
+        buffer.write(content, 8, content.length - 8);
+        // Closed by encoders as they finish, which must not drop the staged bytes
+        buffer.close();
+        assertThrows(IOException.class, () -> buffer.write(1));
+
+        assertFalse(buffer.isSpilled());
+        assertEquals(content.length, buffer.size());
+        assertEquals(64, budget.getUsedBytes());
+        try (InputStream in = buffer.openInputStream()) {
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+
+        buffer.release();
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(64, budget.getAllocatedBytes());
+    }
+
+    @Test
+    public void testSpillsPastBudgetAndRereadsAfterReset() throws Exception {
+        StagingMemoryBudget budget = new StagingMemoryBudget(32, 16);
+        byte[] content = randomBytes(100);
+
+        StagingBuffer buffer = new StagingBuffer(budget);
+        for (int offset = 0; offset < content.length; offset += 9) {
+            buffer.write(content, offset, Math.min(9, content.length - offset));
+        }
+        assertTrue(buffer.isSpilled());
+
+        try (InputStream in = buffer.openInputStream()) {
+            assertTrue(in.markSupported());
+            in.mark(Integer.MAX_VALUE);
+            byte[] partial = new byte[40];
+            assertEquals(16, in.read(partial, 0, 40));
+            in.reset();
+            assertArrayEquals(content, IOUtils.toByteArray(in));
+        }
+
+        buffer.release();
+        assertEquals(0, budget.getUsedBytes());
+        assertThrows(IOException.class, buffer::openInputStream);
+    }
+
+    @Test
+    public void testBudgetIsSharedAndChunksAreReused() {
+        StagingMemoryBudget budget = new StagingMemoryBudget(32, 16);
+        assertNotNull(budget.acquire());
+        ByteBuffer second = budget.acquire();
+        assertNotNull(second);
+        assertNull(budget.acquire());
+
+        second.put((byte) 1);
+        budget.release(second);
+        ByteBuffer reused = budget.acquire();
+        assertEquals(second, reused);
+        assertEquals(0, reused.position());
+        assertEquals(32, budget.getAllocatedBytes());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}